@@ -0,0 +1,107 @@
+package org.example.bench;
+
+import org.apache.commons.lang3.SerializationUtils;
+import com.google.protobuf.ByteString;
+import org.example.grpc.EncryptedPacket;
+import org.example.model.EncryptedMessage;
+import org.example.model.Flight;
+import org.example.model.FlightBatch;
+import org.example.protocol.Compression;
+import org.example.protocol.DictionaryDecoder;
+import org.example.protocol.DictionaryEncoder;
+import org.example.protocol.FlightProto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Кодирование пачки рейсов: Java-сериализация (SOCKET, RabbitMQ) против protobuf FlightBatch (NIO, gRPC)
+// и protobuf со словарем. Основной результат - пачек в секунду, records - записей в секунду,
+// bytesPerRecord - размер закодированной (и сжатой) пачки на запись.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    @Param({"1", "200"})
+    public int batchSize;
+
+    @Param({"NONE", "DEFLATE"})
+    public String compression;
+
+    private List<Flight> batch;
+    private Compression codec;
+    private byte[] javaBytes;
+    private byte[] protoBytes;
+    private byte[] dictBytes;
+
+    @Setup
+    public void setUp() {
+        batch = Fixtures.flights(batchSize);
+        codec = Compression.valueOf(compression);
+        javaBytes = codec.compress(SerializationUtils.serialize(new FlightBatch(batch)));
+        protoBytes = codec.compress(FlightProto.encodeBatch(batch));
+        dictBytes = codec.compress(new DictionaryEncoder(0).encode(batch));
+    }
+
+    @Benchmark
+    public byte[] javaSerializationEncode(Records records, WireSize size) {
+        byte[] bytes = codec.compress(SerializationUtils.serialize(new FlightBatch(batch)));
+        records.records += batchSize;
+        size.record(bytes.length, batchSize);
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] protobufEncode(Records records, WireSize size) {
+        byte[] bytes = codec.compress(FlightProto.encodeBatch(batch));
+        records.records += batchSize;
+        size.record(bytes.length, batchSize);
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] dictionaryEncode(Records records, WireSize size) {
+        byte[] bytes = codec.compress(new DictionaryEncoder(0).encode(batch));
+        records.records += batchSize;
+        size.record(bytes.length, batchSize);
+        return bytes;
+    }
+
+    // Конверт зашифрованной пачки: EncryptedMessage через Java-сериализацию (SOCKET, RabbitMQ)
+    // против EncryptedPacket (gRPC); IV и шифротекст - заглушки размера реальной пачки
+    @Benchmark
+    public byte[] javaEnvelope() {
+        return SerializationUtils.serialize(new EncryptedMessage(new byte[12], protoBytes));
+    }
+
+    @Benchmark
+    public byte[] protobufEnvelope() {
+        return EncryptedPacket.newBuilder()
+                .setIv(ByteString.copyFrom(new byte[12]))
+                .setEncryptedData(ByteString.copyFrom(protoBytes))
+                .setBatch(true)
+                .build()
+                .toByteArray();
+    }
+
+    @Benchmark
+    public FlightBatch javaSerializationDecode(Records records) throws Exception {
+        records.records += batchSize;
+        return SerializationUtils.deserialize(codec.decompress(javaBytes));
+    }
+
+    @Benchmark
+    public List<Flight> protobufDecode(Records records) throws Exception {
+        records.records += batchSize;
+        return FlightProto.decodeBatch(codec.decompress(protoBytes));
+    }
+
+    @Benchmark
+    public List<Flight> dictionaryDecode(Records records) throws Exception {
+        records.records += batchSize;
+        return FlightProto.decodeBatch(codec.decompress(dictBytes), new DictionaryDecoder());
+    }
+}
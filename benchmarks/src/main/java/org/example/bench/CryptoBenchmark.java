@@ -0,0 +1,55 @@
+package org.example.bench;
+
+import org.example.crypto.CryptoUtils;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// CryptoUtils: AES на пачку, CBC против GCM (стоимость handshake - в HandshakeBenchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CryptoBenchmark {
+    @Param({"CBC", "GCM"})
+    public String mode;
+
+    // Типичные размеры пачки: одиночная запись, 200 записей, крупная пачка COPY
+    @Param({"256", "32768", "1048576"})
+    public int payloadSize;
+
+    private SecretKey key;
+    private byte[] payload;
+    private byte[] encrypted;
+    private byte[] encryptedIv;
+    private long nonce;
+
+    @Setup
+    public void setUp() throws Exception {
+        key = CryptoUtils.generateAESKey();
+        payload = CryptoUtils.randomBytes(payloadSize);
+        encryptedIv = nextIv();
+        encrypted = CryptoUtils.encryptData(payload, key, encryptedIv);
+    }
+
+    // GCM запрещает повтор IV с тем же ключом - IV новый на каждую операцию (счетчик, как в CryptoUtils)
+    private byte[] nextIv() {
+        byte[] iv = new byte["GCM".equals(mode) ? 12 : 16];
+        ByteBuffer.wrap(iv, iv.length - 8, 8).putLong(++nonce);
+        return iv;
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return CryptoUtils.encryptData(payload, key, nextIv());
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return CryptoUtils.decryptData(encrypted, key, encryptedIv);
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.bench;
+
+import org.example.model.Flight;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Синтетические рейсы с распределением значений как в raw_flights: справочников мало, пассажиров много
+final class Fixtures {
+    private static final String[] AIRLINES = {"Аэрофлот", "S7 Airlines", "Уральские авиалинии", "Победа", "Россия", "Utair"};
+    private static final String[] AIRCRAFTS = {"Airbus A320neo", "Boeing 737-800", "Sukhoi Superjet 100", "Airbus A321", "Boeing 777-300ER"};
+    private static final String[][] AIRPORTS = {
+            {"Москва", "SVO"}, {"Санкт-Петербург", "LED"}, {"Екатеринбург", "SVX"}, {"Новосибирск", "OVB"},
+            {"Казань", "KZN"}, {"Сочи", "AER"}, {"Калининград", "KGD"}, {"Владивосток", "VVO"}};
+
+    private Fixtures() {
+    }
+
+    static List<Flight> flights(int count) {
+        Random random = new Random(42);
+        List<Flight> flights = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] dep = AIRPORTS[random.nextInt(AIRPORTS.length)];
+            String[] arr = AIRPORTS[random.nextInt(AIRPORTS.length)];
+            flights.add(new Flight(
+                    "SU" + (1000 + random.nextInt(9000)),
+                    AIRLINES[random.nextInt(AIRLINES.length)],
+                    AIRCRAFTS[random.nextInt(AIRCRAFTS.length)],
+                    dep[0], dep[1], arr[0], arr[1],
+                    "Пассажир " + i,
+                    String.format("%04d %06d", random.nextInt(10000), i),
+                    "2024-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(10) + " 1" + random.nextInt(10) + ":00:00"));
+        }
+        return flights;
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.bench;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.example.client.GrpcUploader;
+import org.example.crypto.CryptoUtils;
+import org.example.grpc.EncryptedPacket;
+import org.example.grpc.FlightServiceGrpc;
+import org.example.grpc.StatusResponse;
+import org.example.model.EncryptedMessage;
+import org.example.model.Flight;
+import org.example.protocol.Compression;
+import org.example.protocol.DictionaryDecoder;
+import org.example.protocol.FlightProto;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// gRPC через loopback: клиентская часть - GrpcUploader (несколько StreamFlights, отправка по isReady),
+// серверная - упрощенный FlightService, который расшифровывает и разбирает пачки без записи в БД.
+// Операция = batchesPerOp пачек и ожидание ответов всех вызовов.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class GrpcTransportBenchmark {
+    private static final int BATCHES_PER_OP = 20;
+
+    @Param({"50", "500"})
+    public int batchSize;
+
+    @Param({"1", "4"})
+    public int streams;
+
+    private SecretKey key;
+    private List<List<Flight>> batches;
+    private Server server;
+    private ManagedChannel channel;
+    private FlightServiceGrpc.FlightServiceStub stub;
+    private final AtomicLong received = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        key = CryptoUtils.generateAESKey();
+        batches = Payloads.batches(batchSize, BATCHES_PER_OP);
+        server = ServerBuilder.forPort(0).addService(new CountingService()).build().start();
+        channel = ManagedChannelBuilder.forAddress("127.0.0.1", ((InetSocketAddress) server.getListenSockets().get(0)).getPort())
+                .usePlaintext()
+                .build();
+        stub = FlightServiceGrpc.newStub(channel);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void streamFlights(Records records, WireSize size) throws Exception {
+        long before = received.get();
+        GrpcUploader uploader = new GrpcUploader(stub, streams, 16);
+        long bytes = 0;
+        for (List<Flight> batch : batches) {
+            byte[] payload = FlightProto.encodeBatch(batch);
+            EncryptedMessage msg = Payloads.encrypt(payload, Compression.NONE, key);
+            EncryptedPacket packet = EncryptedPacket.newBuilder()
+                    .setIv(ByteString.copyFrom(msg.iv()))
+                    .setEncryptedData(ByteString.copyFrom(msg.encryptedData()))
+                    .setBatch(true)
+                    .build();
+            uploader.send(packet);
+            bytes += packet.getSerializedSize();
+        }
+        StatusResponse result = uploader.finish(1, TimeUnit.MINUTES);
+        if (!result.getSuccess()) throw new IllegalStateException(result.getMessage());
+
+        long count = received.get() - before;
+        if (count != (long) batchSize * BATCHES_PER_OP) throw new IllegalStateException("Получено записей: " + count);
+        records.records += count;
+        size.record(bytes, batchSize * BATCHES_PER_OP);
+    }
+
+    // Горячий путь FlightGrpcService без сессий и записи: ключ общий, пакеты разбираются в потоке gRPC
+    private class CountingService extends FlightServiceGrpc.FlightServiceImplBase {
+        @Override
+        public StreamObserver<EncryptedPacket> streamFlights(StreamObserver<StatusResponse> responseObserver) {
+            DictionaryDecoder decoder = new DictionaryDecoder();
+            return new StreamObserver<>() {
+                private long count;
+
+                @Override
+                public void onNext(EncryptedPacket packet) {
+                    try {
+                        byte[] plain = CryptoUtils.decryptData(packet.getEncryptedData().toByteArray(), key, packet.getIv().toByteArray());
+                        count += FlightProto.decodeBatch(plain, decoder).size();
+                    } catch (Exception e) {
+                        responseObserver.onError(e);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                    received.addAndGet(count);
+                    responseObserver.onNext(StatusResponse.newBuilder().setSuccess(true).setMessage(count + " records").build());
+                    responseObserver.onCompleted();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.bench;
+
+import org.example.crypto.CryptoUtils;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+// Стоимость handshake: RSA wrap на клиенте, unwrap на сервере и генерация пары
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HandshakeBenchmark {
+    private SecretKey key;
+    private KeyPair rsa;
+    private byte[] wrappedKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        key = CryptoUtils.generateAESKey();
+        rsa = CryptoUtils.generateRSAKeys();
+        wrappedKey = CryptoUtils.wrapAESKey(key, rsa.getPublic());
+    }
+
+    @Benchmark
+    public byte[] rsaWrap() throws Exception {
+        return CryptoUtils.wrapAESKey(key, rsa.getPublic());
+    }
+
+    @Benchmark
+    public SecretKey rsaUnwrap() throws Exception {
+        return CryptoUtils.unwrapAESKey(wrappedKey, rsa.getPrivate());
+    }
+
+    // Цена генерации пары на каждое подключение (до ServerKeyManager)
+    @Benchmark
+    public KeyPair rsaGenerate() throws Exception {
+        return CryptoUtils.generateRSAKeys();
+    }
+}
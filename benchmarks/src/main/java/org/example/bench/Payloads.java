@@ -0,0 +1,33 @@
+package org.example.bench;
+
+import org.example.crypto.CryptoUtils;
+import org.example.model.EncryptedMessage;
+import org.example.model.Flight;
+import org.example.protocol.Compression;
+
+import javax.crypto.SecretKey;
+import java.util.ArrayList;
+import java.util.List;
+
+// Общая часть транспортных бенчмарков: данные, разложенные по пачкам, и шифрование как в FlightExporter
+final class Payloads {
+    // Режим по умолчанию из application.conf
+    private static final CryptoUtils.Mode MODE = CryptoUtils.Mode.CBC;
+
+    private Payloads() {
+    }
+
+    static List<List<Flight>> batches(int batchSize, int batchCount) {
+        List<Flight> flights = Fixtures.flights(batchSize * batchCount);
+        List<List<Flight>> batches = new ArrayList<>(batchCount);
+        for (int i = 0; i < batchCount; i++) {
+            batches.add(new ArrayList<>(flights.subList(i * batchSize, (i + 1) * batchSize)));
+        }
+        return batches;
+    }
+
+    static EncryptedMessage encrypt(byte[] payload, Compression compression, SecretKey key) throws Exception {
+        byte[] iv = CryptoUtils.generateIV(MODE);
+        return new EncryptedMessage(iv, CryptoUtils.encryptData(compression.compress(payload), key, iv));
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Доп. счетчик JMH: записей в секунду, когда одна операция бенчмарка обрабатывает пачку
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class Records {
+    public long records;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        records = 0;
+    }
+}
@@ -0,0 +1,172 @@
+package org.example.bench;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.example.crypto.CryptoUtils;
+import org.example.model.EncryptedMessage;
+import org.example.model.Flight;
+import org.example.model.FlightBatch;
+import org.example.protocol.Compression;
+import org.example.protocol.FlightProto;
+import org.example.protocol.Frames;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Сокет через loopback, от пачки рейсов у клиента до разобранных рейсов у получателя:
+// кадры Frames + protobuf (режим NIO) против ObjectStream + Java-сериализации (режим SOCKET).
+// Получатель повторяет горячий путь сервера без записи в БД. Операция = batchesPerOp пачек.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class SocketTransportBenchmark {
+    private static final int BATCHES_PER_OP = 20;
+
+    @Param({"50", "500"})
+    public int batchSize;
+
+    @Param({"NONE", "DEFLATE"})
+    public String compression;
+
+    private SecretKey key;
+    private Compression codec;
+    private List<List<Flight>> batches;
+
+    private Receiver framesReceiver;
+    private DataOutputStream framesOut;
+    private Receiver objectsReceiver;
+    private ObjectOutputStream objectsOut;
+
+    @Setup
+    public void setUp() throws Exception {
+        key = CryptoUtils.generateAESKey();
+        codec = Compression.valueOf(compression);
+        batches = Payloads.batches(batchSize, BATCHES_PER_OP);
+
+        framesReceiver = new Receiver(in -> {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+            return () -> {
+                Frames.Frame frame = Frames.read(data);
+                java.nio.ByteBuffer body = java.nio.ByteBuffer.wrap(frame.body());
+                byte[] iv = Frames.readIv(body);
+                byte[] encrypted = new byte[body.remaining()];
+                body.get(encrypted);
+                return FlightProto.decodeBatch(codec.decompress(CryptoUtils.decryptData(encrypted, key, iv))).size();
+            };
+        });
+        framesOut = new DataOutputStream(new BufferedOutputStream(framesReceiver.connect().getOutputStream(), 64 * 1024));
+
+        objectsReceiver = new Receiver(in -> {
+            ObjectInputStream objects = new ObjectInputStream(new BufferedInputStream(in, 64 * 1024));
+            return () -> {
+                EncryptedMessage msg = (EncryptedMessage) objects.readObject();
+                FlightBatch batch = SerializationUtils.deserialize(codec.decompress(CryptoUtils.decryptData(msg.encryptedData(), key, msg.iv())));
+                return batch.flights().size();
+            };
+        });
+        objectsOut = new ObjectOutputStream(new BufferedOutputStream(objectsReceiver.connect().getOutputStream(), 64 * 1024));
+        objectsOut.flush();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        framesReceiver.close();
+        objectsReceiver.close();
+    }
+
+    @Benchmark
+    public void frames(Records records, WireSize size) throws Exception {
+        long target = framesReceiver.received.get() + (long) batchSize * BATCHES_PER_OP;
+        long bytes = 0;
+        for (List<Flight> batch : batches) {
+            EncryptedMessage msg = Payloads.encrypt(FlightProto.encodeBatch(batch), codec, key);
+            Frames.writeData(framesOut, msg);
+            bytes += Frames.HEADER_SIZE + 1 + msg.iv().length + msg.encryptedData().length;
+        }
+        framesOut.flush();
+        framesReceiver.await(target);
+        records.records += (long) batchSize * BATCHES_PER_OP;
+        size.record(bytes, batchSize * BATCHES_PER_OP);
+    }
+
+    @Benchmark
+    public void objectStream(Records records, WireSize size) throws Exception {
+        long target = objectsReceiver.received.get() + (long) batchSize * BATCHES_PER_OP;
+        long bytes = 0;
+        for (List<Flight> batch : batches) {
+            EncryptedMessage msg = Payloads.encrypt(SerializationUtils.serialize(new FlightBatch(batch)), codec, key);
+            objectsOut.writeObject(msg);
+            objectsOut.reset();
+            bytes += msg.iv().length + msg.encryptedData().length;
+        }
+        objectsOut.flush();
+        objectsReceiver.await(target);
+        records.records += (long) batchSize * BATCHES_PER_OP;
+        size.record(bytes, batchSize * BATCHES_PER_OP);
+    }
+
+    // Поток-получатель на loopback-сокете: читает сообщения и считает разобранные рейсы
+    static final class Receiver implements Closeable {
+        interface Reader {
+            int next() throws Exception;
+        }
+
+        interface ReaderFactory {
+            Reader open(InputStream in) throws IOException;
+        }
+
+        final AtomicLong received = new AtomicLong();
+        private final ServerSocket server;
+        private final ReaderFactory factory;
+        private volatile Exception error;
+        private Socket client;
+
+        Receiver(ReaderFactory factory) throws IOException {
+            this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            this.factory = factory;
+        }
+
+        Socket connect() throws IOException {
+            client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+            client.setTcpNoDelay(true);
+            Thread thread = new Thread(() -> {
+                try (Socket s = server.accept()) {
+                    Reader reader = factory.open(s.getInputStream());
+                    while (true) {
+                        received.addAndGet(reader.next());
+                    }
+                } catch (EOFException e) {
+                    // клиент закрыл соединение
+                } catch (Exception e) {
+                    error = e;
+                }
+            }, "bench-receiver");
+            thread.setDaemon(true);
+            thread.start();
+            return client;
+        }
+
+        void await(long target) throws Exception {
+            while (received.get() < target) {
+                if (error != null) throw error;
+                LockSupport.parkNanos(10_000);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            client.close();
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// Доп. счетчик JMH: байт на запись в последней закодированной/отправленной пачке
+@AuxCounters(AuxCounters.Type.EVENTS)
+@State(Scope.Thread)
+public class WireSize {
+    public double bytesPerRecord;
+
+    void record(long bytes, int records) {
+        bytesPerRecord = (double) bytes / records;
+    }
+}
@@ -66,13 +66,20 @@ class FlightService(service_pb2_grpc.FlightServiceServicer):
                 pad_len = decrypted_padded[-1]
                 decrypted_bytes = decrypted_padded[:-pad_len]
 
-                flight_data = service_pb2.FlightData()
-                flight_data.ParseFromString(decrypted_bytes)
+                if packet.batch:
+                    batch = service_pb2.FlightBatch()
+                    batch.ParseFromString(decrypted_bytes)
+                    flights = batch.flights
+                else:
+                    flight_data = service_pb2.FlightData()
+                    flight_data.ParseFromString(decrypted_bytes)
+                    flights = [flight_data]
 
-                self.save_flight(cursor, flight_data)
-                count += 1
-                if count % 10 == 0:
-                    print(f"Processed {count}...")
+                for flight_data in flights:
+                    self.save_flight(cursor, flight_data)
+                    count += 1
+                    if count % 10 == 0:
+                        print(f"Processed {count}...")
             
             self.conn.commit()
             cursor.close()
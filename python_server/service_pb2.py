@@ -24,7 +24,7 @@ _sym_db = _symbol_database.Default()
 
 
 
-DESCRIPTOR = _descriptor_pool.Default().AddSerializedFile(b'\n\rservice.proto\x12\x10org.example.grpc\"\x07\n\x05\x45mpty\"#\n\x11PublicKeyResponse\x12\x0e\n\x06pemKey\x18\x01 \x01(\x0c\"\'\n\x11SessionKeyRequest\x12\x12\n\nwrappedKey\x18\x01 \x01(\x0c\"4\n\x0f\x45ncryptedPacket\x12\n\n\x02iv\x18\x01 \x01(\x0c\x12\x15\n\rencryptedData\x18\x02 \x01(\x0c\"2\n\x0eStatusResponse\x12\x0f\n\x07success\x18\x01 \x01(\x08\x12\x0f\n\x07message\x18\x02 \x01(\t\"\xcd\x01\n\nFlightData\x12\x10\n\x08\x66lightNo\x18\x01 \x01(\t\x12\x13\n\x0b\x61irlineName\x18\x02 \x01(\t\x12\x15\n\raircraftModel\x18\x03 \x01(\t\x12\x0f\n\x07\x64\x65pCity\x18\x04 \x01(\t\x12\x0f\n\x07\x64\x65pCode\x18\x05 \x01(\t\x12\x0f\n\x07\x61rrCity\x18\x06 \x01(\t\x12\x0f\n\x07\x61rrCode\x18\x07 \x01(\t\x12\x15\n\rpassengerName\x18\x08 \x01(\t\x12\x12\n\npassportNo\x18\t \x01(\t\x12\x12\n\nflightDate\x18\n \x01(\t2\x8d\x02\n\rFlightService\x12L\n\x0cGetPublicKey\x12\x17.org.example.grpc.Empty\x1a#.org.example.grpc.PublicKeyResponse\x12V\n\rSetSessionKey\x12#.org.example.grpc.SessionKeyRequest\x1a .org.example.grpc.StatusResponse\x12V\n\rStreamFlights\x12!.org.example.grpc.EncryptedPacket\x1a .org.example.grpc.StatusResponse(\x01\x42\x14\n\x10org.example.grpcP\x01\x62\x06proto3')
+DESCRIPTOR = _descriptor_pool.Default().AddSerializedFile(b'\n\rservice.proto\x12\x10org.example.grpc\"\x07\n\x05\x45mpty\"2\n\x11PublicKeyResponse\x12\x0e\n\x06pemKey\x18\x01 \x01(\x0c\x12\r\n\x05keyId\x18\x02 \x01(\x03\"\x85\x01\n\x11SessionKeyRequest\x12\x12\n\nwrappedKey\x18\x01 \x01(\x0c\x12\x11\n\tsessionId\x18\x02 \x01(\t\x12\r\n\x05keyId\x18\x03 \x01(\x03\x12\x13\n\x0b\x63ompression\x18\x04 \x01(\t\x12\x12\n\ndictionary\x18\x05 \x01(\x08\x12\x11\n\tresumable\x18\x06 \x01(\x08\"C\n\x0f\x45ncryptedPacket\x12\n\n\x02iv\x18\x01 \x01(\x0c\x12\x15\n\rencryptedData\x18\x02 \x01(\x0c\x12\r\n\x05\x62\x61tch\x18\x03 \x01(\x08\"\xac\x01\n\x0eStatusResponse\x12\x0f\n\x07success\x18\x01 \x01(\x08\x12\x0f\n\x07message\x18\x02 \x01(\t\x12\x11\n\tsessionId\x18\x03 \x01(\t\x12\x13\n\x0b\x63ompression\x18\x04 \x01(\t\x12\x12\n\ndictionary\x18\x05 \x01(\x08\x12)\n\x04\x61\x63ks\x18\x06 \x03(\x0b\x32\x1b.org.example.grpc.StreamAck\x12\x11\n\tresumable\x18\x07 \x01(\x08\"1\n\tStreamAck\x12\x0e\n\x06stream\x18\x01 \x01(\r\x12\x14\n\x0c\x63ommittedSeq\x18\x02 \x01(\x04\"\xda\x01\n\nFlightData\x12\x10\n\x08\x66lightNo\x18\x01 \x01(\t\x12\x13\n\x0b\x61irlineName\x18\x02 \x01(\t\x12\x15\n\raircraftModel\x18\x03 \x01(\t\x12\x0f\n\x07\x64\x65pCity\x18\x04 \x01(\t\x12\x0f\n\x07\x64\x65pCode\x18\x05 \x01(\t\x12\x0f\n\x07\x61rrCity\x18\x06 \x01(\t\x12\x0f\n\x07\x61rrCode\x18\x07 \x01(\t\x12\x15\n\rpassengerName\x18\x08 \x01(\t\x12\x12\n\npassportNo\x18\t \x01(\t\x12\x12\n\nflightDate\x18\n \x01(\t\x12\x0b\n\x03seq\x18\x0b \x01(\x04\"\xe0\x01\n\x0b\x46lightBatch\x12-\n\x07\x66lights\x18\x01 \x03(\x0b\x32\x1c.org.example.grpc.FlightData\x12\x11\n\tdictScope\x18\x02 \x01(\r\x12)\n\x04\x64ict\x18\x03 \x03(\x0b\x32\x1b.org.example.grpc.DictEntry\x12\x30\n\x07\x65ncoded\x18\x04 \x03(\x0b\x32\x1f.org.example.grpc.EncodedFlight\x12\x32\n\x08position\x18\x05 \x01(\x0b\x32 .org.example.grpc.StreamPosition\"S\n\x0eStreamPosition\x12\x10\n\x08\x65xportId\x18\x01 \x01(\t\x12\x0e\n\x06stream\x18\x02 \x01(\r\x12\x0e\n\x06origin\x18\x03 \x01(\x04\x12\x0f\n\x07prevSeq\x18\x04 \x01(\x04\"&\n\tDictEntry\x12\n\n\x02id\x18\x01 \x01(\r\x12\r\n\x05value\x18\x02 \x01(\t\"\xdd\x01\n\rEncodedFlight\x12\x10\n\x08\x66lightNo\x18\x01 \x01(\t\x12\x13\n\x0b\x61irlineName\x18\x02 \x01(\r\x12\x15\n\raircraftModel\x18\x03 \x01(\r\x12\x0f\n\x07\x64\x65pCity\x18\x04 \x01(\r\x12\x0f\n\x07\x64\x65pCode\x18\x05 \x01(\r\x12\x0f\n\x07\x61rrCity\x18\x06 \x01(\r\x12\x0f\n\x07\x61rrCode\x18\x07 \x01(\r\x12\x15\n\rpassengerName\x18\x08 \x01(\t\x12\x12\n\npassportNo\x18\t \x01(\t\x12\x12\n\nflightDate\x18\n \x01(\t\x12\x0b\n\x03seq\x18\x0b \x01(\x04\x32\xe7\x02\n\rFlightService\x12L\n\x0cGetPublicKey\x12\x17.org.example.grpc.Empty\x1a#.org.example.grpc.PublicKeyResponse\x12V\n\rSetSessionKey\x12#.org.example.grpc.SessionKeyRequest\x1a .org.example.grpc.StatusResponse\x12V\n\rStreamFlights\x12!.org.example.grpc.EncryptedPacket\x1a .org.example.grpc.StatusResponse(\x01\x12X\n\rUploadFlights\x12!.org.example.grpc.EncryptedPacket\x1a .org.example.grpc.StatusResponse(\x01\x30\x01\x42\x14\n\x10org.example.grpcP\x01\x62\x06proto3')
 
 _globals = globals()
 _builder.BuildMessageAndEnumDescriptors(DESCRIPTOR, _globals)
@@ -35,15 +35,25 @@ if not _descriptor._USE_C_DESCRIPTORS:
   _globals['_EMPTY']._serialized_start=35
   _globals['_EMPTY']._serialized_end=42
   _globals['_PUBLICKEYRESPONSE']._serialized_start=44
-  _globals['_PUBLICKEYRESPONSE']._serialized_end=79
-  _globals['_SESSIONKEYREQUEST']._serialized_start=81
-  _globals['_SESSIONKEYREQUEST']._serialized_end=120
-  _globals['_ENCRYPTEDPACKET']._serialized_start=122
-  _globals['_ENCRYPTEDPACKET']._serialized_end=174
-  _globals['_STATUSRESPONSE']._serialized_start=176
-  _globals['_STATUSRESPONSE']._serialized_end=226
-  _globals['_FLIGHTDATA']._serialized_start=229
-  _globals['_FLIGHTDATA']._serialized_end=434
-  _globals['_FLIGHTSERVICE']._serialized_start=437
-  _globals['_FLIGHTSERVICE']._serialized_end=706
+  _globals['_PUBLICKEYRESPONSE']._serialized_end=94
+  _globals['_SESSIONKEYREQUEST']._serialized_start=97
+  _globals['_SESSIONKEYREQUEST']._serialized_end=230
+  _globals['_ENCRYPTEDPACKET']._serialized_start=232
+  _globals['_ENCRYPTEDPACKET']._serialized_end=299
+  _globals['_STATUSRESPONSE']._serialized_start=302
+  _globals['_STATUSRESPONSE']._serialized_end=474
+  _globals['_STREAMACK']._serialized_start=476
+  _globals['_STREAMACK']._serialized_end=525
+  _globals['_FLIGHTDATA']._serialized_start=528
+  _globals['_FLIGHTDATA']._serialized_end=746
+  _globals['_FLIGHTBATCH']._serialized_start=749
+  _globals['_FLIGHTBATCH']._serialized_end=973
+  _globals['_STREAMPOSITION']._serialized_start=975
+  _globals['_STREAMPOSITION']._serialized_end=1058
+  _globals['_DICTENTRY']._serialized_start=1060
+  _globals['_DICTENTRY']._serialized_end=1098
+  _globals['_ENCODEDFLIGHT']._serialized_start=1101
+  _globals['_ENCODEDFLIGHT']._serialized_end=1322
+  _globals['_FLIGHTSERVICE']._serialized_start=1325
+  _globals['_FLIGHTSERVICE']._serialized_end=1684
 # @@protoc_insertion_point(module_scope)
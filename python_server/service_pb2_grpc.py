@@ -49,6 +49,11 @@ class FlightServiceStub(object):
                 request_serializer=service__pb2.EncryptedPacket.SerializeToString,
                 response_deserializer=service__pb2.StatusResponse.FromString,
                 _registered_method=True)
+        self.UploadFlights = channel.stream_stream(
+                '/org.example.grpc.FlightService/UploadFlights',
+                request_serializer=service__pb2.EncryptedPacket.SerializeToString,
+                response_deserializer=service__pb2.StatusResponse.FromString,
+                _registered_method=True)
 
 
 class FlightServiceServicer(object):
@@ -76,6 +81,14 @@ class FlightServiceServicer(object):
         context.set_details('Method not implemented!')
         raise NotImplementedError('Method not implemented!')
 
+    def UploadFlights(self, request_iterator, context):
+        """Возобновляемая выгрузка: сервер по ходу потока шлет StatusResponse с acks (сохраненные позиции
+        потоков FlightBatch.position), последний ответ - итог вызова. Только если SetSessionKey вернул resumable
+        """
+        context.set_code(grpc.StatusCode.UNIMPLEMENTED)
+        context.set_details('Method not implemented!')
+        raise NotImplementedError('Method not implemented!')
+
 
 def add_FlightServiceServicer_to_server(servicer, server):
     rpc_method_handlers = {
@@ -94,6 +107,11 @@ def add_FlightServiceServicer_to_server(servicer, server):
                     request_deserializer=service__pb2.EncryptedPacket.FromString,
                     response_serializer=service__pb2.StatusResponse.SerializeToString,
             ),
+            'UploadFlights': grpc.stream_stream_rpc_method_handler(
+                    servicer.UploadFlights,
+                    request_deserializer=service__pb2.EncryptedPacket.FromString,
+                    response_serializer=service__pb2.StatusResponse.SerializeToString,
+            ),
     }
     generic_handler = grpc.method_handlers_generic_handler(
             'org.example.grpc.FlightService', rpc_method_handlers)
@@ -185,3 +203,30 @@ class FlightService(object):
             timeout,
             metadata,
             _registered_method=True)
+
+    @staticmethod
+    def UploadFlights(request_iterator,
+            target,
+            options=(),
+            channel_credentials=None,
+            call_credentials=None,
+            insecure=False,
+            compression=None,
+            wait_for_ready=None,
+            timeout=None,
+            metadata=None):
+        return grpc.experimental.stream_stream(
+            request_iterator,
+            target,
+            '/org.example.grpc.FlightService/UploadFlights',
+            service__pb2.EncryptedPacket.SerializeToString,
+            service__pb2.StatusResponse.FromString,
+            options,
+            channel_credentials,
+            insecure,
+            call_credentials,
+            compression,
+            wait_for_ready,
+            timeout,
+            metadata,
+            _registered_method=True)
@@ -9,29 +9,144 @@ public class AppConfig {
     public final String pgUrl;
     public final String pgUser;
     public final String pgPass;
+    public final String dbSink;
+    public final String dbWriteMode;
+    public final int dbPoolSize;
+    public final int dbQueueCapacity;
+    public final int dbBatchSize;
+    public final long dbBatchFlushMs;
+    public final int cachePassengerCapacity;
+    public final boolean cacheWarmUp;
+    public final boolean dedupEnabled;
+    public final int dedupMemoryMb;
+    public final int dedupHashes;
+    public final boolean journalEnabled;
+    public final String journalDir;
+    public final int journalSegmentMb;
+    public final int journalMaxSegments;
+    public final long journalGroupCommitMs;
+    public final int journalMaxRetries;
+    public final long journalRetryMs;
+    public final int clientFetchSize;
+    public final int clientExportWorkers;
+    public final int clientBatchSize;
+    public final long clientBatchFlushMs;
+    public final String clientSessionCacheFile;
+    public final boolean clientDictionaryEncoding;
+    public final String clientCheckpointFile;
+    public final boolean clientTail;
+    public final long clientTailPollMs;
     public final String socketHost;
     public final int socketPort;
+    public final int socketWorkerThreads;
+    public final boolean socketVirtualThreads;
+    public final int socketMaxSessions;
+    public final int socketConnectionQueue;
+    public final long ingestAckIntervalMs;
+    public final int ingestMaxRetries;
+    public final String ingestDeadLetterFile;
+    public final int grpcDecryptThreads;
+    public final int grpcInboundWindow;
+    public final int grpcClientStreams;
+    public final int grpcClientWindow;
+    public final String cryptoCipherMode;
+    public final String compressionCodec;
+    public final int compressionLevel;
+    public final long rsaRotationMinutes;
+    public final long sessionTicketTtlMinutes;
+    public final int maxSessionTickets;
     public final String rmqHost;
     public final String rmqQueue;
     public final String rmqUser;
     public final String rmqPass;
+    public final int rmqPrefetch;
+    public final int rmqPartitions;
+    public final int rmqConfirmWindow;
+    public final int rmqMaxDeliveries;
+    public final String rmqSessionDir;
+    public final String rmqSessionSecret;
+    public final long rmqSessionRetentionHours;
+    public final long rmqUnknownSessionRetryMs;
+    public final long metricsReportSeconds;
+    public final int metricsServerHttpPort;
+    public final int metricsClientHttpPort;
 
     private static AppConfig INSTANCE;
 
     private AppConfig() {
-        Config cfg = ConfigFactory.load().getConfig("app");
+        this(ConfigFactory.load());
+    }
+
+    // Настройки из готового Config (например, переопределения поверх application.conf)
+    public AppConfig(Config root) {
+        Config cfg = root.getConfig("app");
 
         this.transportMode = cfg.getString("transportMode");
         this.sqlitePath = cfg.getString("database.sqlitePath");
         this.pgUrl = cfg.getString("database.postgresUrl");
         this.pgUser = cfg.getString("database.postgresUser");
         this.pgPass = cfg.getString("database.postgresPass");
+        this.dbSink = cfg.getString("database.sink");
+        this.dbWriteMode = cfg.getString("database.writeMode");
+        this.dbPoolSize = cfg.getInt("database.poolSize");
+        this.dbQueueCapacity = cfg.getInt("database.queueCapacity");
+        this.dbBatchSize = cfg.getInt("database.batchSize");
+        this.dbBatchFlushMs = cfg.getLong("database.batchFlushMs");
+        this.cachePassengerCapacity = cfg.getInt("database.cache.passengerCapacity");
+        this.cacheWarmUp = cfg.getBoolean("database.cache.warmUp");
+        this.dedupEnabled = cfg.getBoolean("database.dedup.enabled");
+        this.dedupMemoryMb = cfg.getInt("database.dedup.memoryMb");
+        this.dedupHashes = cfg.getInt("database.dedup.hashes");
+        this.journalEnabled = cfg.getBoolean("database.journal.enabled");
+        this.journalDir = cfg.getString("database.journal.dir");
+        this.journalSegmentMb = cfg.getInt("database.journal.segmentMb");
+        this.journalMaxSegments = cfg.getInt("database.journal.maxSegments");
+        this.journalGroupCommitMs = cfg.getLong("database.journal.groupCommitMs");
+        this.journalMaxRetries = cfg.getInt("database.journal.maxRetries");
+        this.journalRetryMs = cfg.getLong("database.journal.retryMs");
+        this.clientFetchSize = cfg.getInt("client.fetchSize");
+        this.clientExportWorkers = cfg.getInt("client.exportWorkers");
+        this.clientBatchSize = cfg.getInt("client.batchSize");
+        this.clientBatchFlushMs = cfg.getLong("client.batchFlushMs");
+        this.clientSessionCacheFile = cfg.getString("client.sessionCacheFile");
+        this.clientDictionaryEncoding = cfg.getBoolean("client.dictionaryEncoding");
+        this.clientCheckpointFile = cfg.getString("client.checkpointFile");
+        this.clientTail = cfg.getBoolean("client.tail.enabled");
+        this.clientTailPollMs = cfg.getLong("client.tail.pollMs");
         this.socketHost = cfg.getString("socketServer.host");
         this.socketPort = cfg.getInt("socketServer.port");
+        this.socketWorkerThreads = cfg.getInt("socketServer.workerThreads");
+        this.socketVirtualThreads = cfg.getBoolean("socketServer.virtualThreads");
+        this.socketMaxSessions = cfg.getInt("socketServer.maxSessions");
+        this.socketConnectionQueue = cfg.getInt("socketServer.connectionQueue");
+        this.ingestAckIntervalMs = cfg.getLong("ingest.ackIntervalMs");
+        this.ingestMaxRetries = cfg.getInt("ingest.maxRetries");
+        this.ingestDeadLetterFile = cfg.getString("ingest.deadLetterFile");
+        this.grpcDecryptThreads = cfg.getInt("grpcServer.decryptThreads");
+        this.grpcInboundWindow = cfg.getInt("grpcServer.inboundWindow");
+        this.grpcClientStreams = cfg.getInt("grpcClient.streams");
+        this.grpcClientWindow = cfg.getInt("grpcClient.inFlightWindow");
+        this.cryptoCipherMode = cfg.getString("crypto.cipherMode");
+        this.compressionCodec = cfg.getString("compression.codec");
+        this.compressionLevel = cfg.getInt("compression.level");
+        this.rsaRotationMinutes = cfg.getLong("security.rsaRotationMinutes");
+        this.sessionTicketTtlMinutes = cfg.getLong("security.sessionTicketTtlMinutes");
+        this.maxSessionTickets = cfg.getInt("security.maxSessionTickets");
         this.rmqHost = cfg.getString("rabbitMq.host");
         this.rmqQueue = cfg.getString("rabbitMq.queueName");
         this.rmqUser = cfg.getString("rabbitMq.username");
         this.rmqPass = cfg.getString("rabbitMq.password");
+        this.rmqPrefetch = cfg.getInt("rabbitMq.prefetch");
+        this.rmqPartitions = cfg.getInt("rabbitMq.partitions");
+        this.rmqConfirmWindow = cfg.getInt("rabbitMq.confirmWindow");
+        this.rmqMaxDeliveries = cfg.getInt("rabbitMq.maxDeliveries");
+        this.rmqSessionDir = cfg.getString("rabbitMq.sessions.dir");
+        this.rmqSessionSecret = cfg.getString("rabbitMq.sessions.secret");
+        this.rmqSessionRetentionHours = cfg.getLong("rabbitMq.sessions.retentionHours");
+        this.rmqUnknownSessionRetryMs = cfg.getLong("rabbitMq.sessions.unknownRetryMs");
+        this.metricsReportSeconds = cfg.getLong("metrics.reportSeconds");
+        this.metricsServerHttpPort = cfg.getInt("metrics.serverHttpPort");
+        this.metricsClientHttpPort = cfg.getInt("metrics.clientHttpPort");
     }
 
     public static synchronized AppConfig get() {
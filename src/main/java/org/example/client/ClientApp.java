@@ -1,85 +1,180 @@
 package org.example.client;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.ConnectionFactory;
 import org.apache.commons.lang3.SerializationUtils;
 import org.example.AppConfig;
 import org.example.crypto.CryptoUtils;
-import org.example.model.EncryptedMessage;
-import org.example.model.Flight;
+import org.example.metrics.Metrics;
+import org.example.model.IngestAck;
+import org.example.protocol.Compression;
+import org.example.protocol.DictionaryEncoder;
+import org.example.protocol.FlightProto;
+import org.example.protocol.Frames;
+import org.example.protocol.Partitions;
 
 import javax.crypto.SecretKey;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.io.*;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
 import java.security.PublicKey;
-import java.util.List;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClientApp {
     public static void main(String[] args) {
         try {
             AppConfig config = AppConfig.get();
-            System.out.println("Клиент запущен. Чтение SQLite...");
-
-            // 1. Читаем данные
-            List<Flight> data = new SqliteReader().readAll();
-            if (data.isEmpty()) {
-                System.out.println("SQLite пуст или не найден. Проверьте путь в application.conf");
-                return;
-            }
-            System.out.println("Загружено записей: " + data.size());
-
-            // 2. Генерируем ключ сессии
-            SecretKey aesKey = CryptoUtils.generateAESKey();
+            System.out.println("Клиент запущен. Данные SQLite читаются потоково...");
+            Metrics.start(config, "клиент", config.metricsClientHttpPort);
 
+            // Ключ сессии согласуется (или берется из билета прошлой сессии) в начале каждого транспорта;
+            // строки SQLite читаются по мере отправки (при exportWorkers > 1 - параллельно)
             if ("SOCKET".equalsIgnoreCase(config.transportMode)) {
-                sendViaSocket(data, aesKey, config);
+                sendViaSocket(config);
+            } else if ("NIO".equalsIgnoreCase(config.transportMode)) {
+                sendViaFrames(config);
             } else {
-                sendViaRabbitMq(data, aesKey, config);
+                sendViaRabbitMq(config);
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private static void sendViaSocket(List<Flight> data, SecretKey aesKey, AppConfig config) {
+    private static void sendViaSocket(AppConfig config) {
         try (Socket socket = new Socket(config.socketHost, config.socketPort);
              ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
              ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream())) {
 
-            // Handshake: Получаем Public Key
-            PublicKey serverPublic = (PublicKey) ois.readObject();
+            // Handshake: билет прошлой сессии или AES ключ, обернутый публичным ключом сервера
+            SocketHandshake.Result session = SocketHandshake.perform(ois, oos, endpoint(config), proposedCompression(config));
+            SqliteReader reader = new SqliteReader();
+            ExportCheckpoint checkpoint = ExportCheckpoint.open(config, reader, endpoint(config));
+            FlightExporter exporter = new FlightExporter(reader, session.key(), session.compression(), checkpoint, config);
+            SendCounters counters = new SendCounters("socket");
 
-            // Отправляем AES ключ
-            byte[] wrapped = CryptoUtils.wrapAESKey(aesKey, serverPublic);
-            oos.writeObject(wrapped);
-            oos.flush();
+            // Подтверждения сервера (IngestAck) читаются параллельно с отправкой до закрытия сокета сервером
+            Thread acks = readAcks(checkpoint, () -> {
+                if (ois.readObject() instanceof IngestAck ack) checkpoint.acked(ack.stream(), ack.committedSeq());
+            });
 
             // Отправка данных
-            for (Flight dto : data) {
-                sendEncrypted(dto, aesKey, oos);
-                System.out.print(".");
-            }
-            System.out.println("\nВсе данные отправлены через Сокет.");
+            long sent = exporter.export(SerializationUtils::serialize, msg -> {
+                oos.writeObject(msg);
+                // Без reset поток держит ссылки на все отправленные объекты
+                oos.reset();
+                oos.flush();
+                counters.sent(msg);
+            });
+            printSummary(sent, "Сокет", counters);
+            awaitAcks(socket, acks, checkpoint);
 
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private static void sendViaRabbitMq(List<Flight> data, SecretKey aesKey, AppConfig config) throws Exception {
+    // Бинарные кадры с длиной вместо Java-сериализации; тело пачки - protobuf FlightBatch
+    private static void sendViaFrames(AppConfig config) {
+        try (Socket socket = new Socket(config.socketHost, config.socketPort);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024))) {
+
+            SocketHandshake.Result session = frameHandshake(in, out, endpoint(config), proposedCompression(config));
+            SqliteReader reader = new SqliteReader();
+            ExportCheckpoint checkpoint = ExportCheckpoint.open(config, reader, endpoint(config));
+            FlightExporter exporter = new FlightExporter(reader, session.key(), session.compression(), checkpoint, config);
+            SendCounters counters = new SendCounters("nio");
+
+            Thread acks = readAcks(checkpoint, () -> {
+                Frames.Frame frame = Frames.read(in);
+                if (frame.type() == Frames.ACK) {
+                    ByteBuffer body = ByteBuffer.wrap(frame.body());
+                    checkpoint.acked(body.getInt(), body.getLong());
+                }
+            });
+
+            // Отправка данных: буфер сбрасывается по заполнению, а не после каждого пакета
+            // (в непрерывной выгрузке - после каждого: новые строки не должны ждать в буфере).
+            // Кадры соединения сервер обрабатывает по порядку, поэтому словарь живет весь поток пачек
+            AtomicInteger scopes = new AtomicInteger();
+            long sent = exporter.exportStreams(() -> encoderFor(config, scopes.incrementAndGet()), msg -> {
+                Frames.writeData(out, msg);
+                if (config.clientTail) out.flush();
+                counters.sent(msg);
+            });
+            out.flush();
+            printSummary(sent, "NIO-сокет", counters);
+            awaitAcks(socket, acks, checkpoint);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Handshake в кадрах: PUBLIC_KEY от сервера, затем RESUME с билетом или SESSION_KEY; сервер отвечает TICKET
+    private static SocketHandshake.Result frameHandshake(DataInputStream in, DataOutputStream out, String endpoint,
+                                                         Compression proposed) throws Exception {
+        Frames.Frame keyFrame = Frames.read(in);
+        if (keyFrame.type() != Frames.PUBLIC_KEY) {
+            throw new IOException("Ожидался публичный ключ, получен кадр типа " + keyFrame.type());
+        }
+
+        ClientSessionCache.Session cached = ClientSessionCache.get(endpoint);
+        if (cached != null) {
+            Frames.write(out, Frames.RESUME, cached.ticket().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            Frames.Frame reply = Frames.read(in);
+            if (reply.type() == Frames.TICKET) {
+                System.out.println("Сессия возобновлена по билету.");
+                return new SocketHandshake.Result(cached.key(), cached.ticket(), Compression.byId(reply.body()[0]));
+            }
+            ClientSessionCache.remove(endpoint);
+        }
+
+        ByteBuffer body = ByteBuffer.wrap(keyFrame.body());
+        long keyId = body.getLong();
+        byte[] x509 = new byte[body.remaining()];
+        body.get(x509);
+        PublicKey serverPublic = KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(x509));
+
+        // Отправляем AES ключ вместе с id ключа сервера, которым он обернут
+        SecretKey aesKey = CryptoUtils.generateAESKey();
+        Frames.write(out, Frames.SESSION_KEY, Frames.sessionKeyBody(keyId, proposed, CryptoUtils.wrapAESKey(aesKey, serverPublic)));
+        out.flush();
+
+        Frames.Frame ticket = Frames.read(in);
+        if (ticket.type() != Frames.TICKET) {
+            throw new IOException("Сервер не принял ключ сессии, кадр типа " + ticket.type());
+        }
+        // TICKET: [byte кодек, подтвержденный сервером][билет]
+        String issued = new String(ticket.body(), 1, ticket.body().length - 1, StandardCharsets.UTF_8);
+        ClientSessionCache.put(endpoint, issued, aesKey);
+        return new SocketHandshake.Result(aesKey, issued, Compression.byId(ticket.body()[0]));
+    }
+
+    private static void sendViaRabbitMq(AppConfig config) throws Exception {
         // 1. Handshake (через сокет, даже если транспорт - очередь)
         System.out.println("Согласование ключей...");
+        SocketHandshake.Result session;
         try (Socket socket = new Socket(config.socketHost, config.socketPort);
              ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
              ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream())) {
 
-            PublicKey serverPublic = (PublicKey) ois.readObject();
-            byte[] wrapped = CryptoUtils.wrapAESKey(aesKey, serverPublic);
-            oos.writeObject(wrapped);
-            oos.flush();
+            session = SocketHandshake.perform(ois, oos, endpoint(config), proposedCompression(config));
         }
+        FlightExporter exporter = new FlightExporter(new SqliteReader(), session.key(), session.compression(), config);
+        // Сервер находит ключ сообщения по билету сессии в заголовке
+        AMQP.BasicProperties props = new AMQP.BasicProperties.Builder()
+                .headers(Map.of("session", session.ticket()))
+                .build();
 
         // 2. Отправка в очередь
         ConnectionFactory factory = new ConnectionFactory();
@@ -90,30 +185,74 @@ public class ClientApp {
         try (com.rabbitmq.client.Connection connection = factory.newConnection();
              Channel channel = connection.createChannel()) {
 
-            channel.queueDeclare(config.rmqQueue, true, false, false, null);
+            // Рейсы раскладываются по очередям-партициям по номеру паспорта (см. Partitions)
+            int partitions = config.rmqPartitions;
+            for (int i = 0; i < partitions; i++) {
+                channel.queueDeclare(Partitions.queueName(config.rmqQueue, i, partitions), true, false, false, null);
+            }
+            // Publisher confirms: не больше confirmWindow сообщений без подтверждения брокера
+            ConfirmingPublisher publisher = new ConfirmingPublisher(channel, config.rmqConfirmWindow);
+            SendCounters counters = new SendCounters("rabbitmq");
 
-            for (Flight dto : data) {
-                // Шифруем
-                byte[] iv = CryptoUtils.generateIV();
-                byte[] payload = SerializationUtils.serialize(dto);
-                byte[] encrypted = CryptoUtils.encryptData(payload, aesKey, iv);
+            long sent = exporter.export(SerializationUtils::serialize, partitions, (partition, msg) -> {
+                byte[] body = SerializationUtils.serialize(msg);
+                publisher.publish(Partitions.queueName(config.rmqQueue, partition, partitions), props, body);
+                counters.sent(body.length);
+            });
+            publisher.awaitConfirms(TimeUnit.MINUTES.toMillis(1));
+            printSummary(sent, "RabbitMQ", counters);
+        }
+    }
 
-                EncryptedMessage msg = new EncryptedMessage(iv, encrypted);
+    @FunctionalInterface
+    private interface AckReader {
+        void readNext() throws Exception;
+    }
 
-                channel.basicPublish("", config.rmqQueue, null, SerializationUtils.serialize(msg));
-                System.out.print(".");
+    // Поток чтения подтверждений сервера; заканчивается, когда сервер закрывает соединение
+    private static Thread readAcks(ExportCheckpoint checkpoint, AckReader reader) {
+        if (checkpoint == null) return null;
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) reader.readNext();
+            } catch (EOFException | SocketException e) {
+                // сервер закрыл соединение
+            } catch (Exception e) {
+                System.err.println("Ошибка чтения подтверждений: " + e.getMessage());
             }
-            System.out.println("\nВсе данные отправлены через RabbitMQ.");
-        }
+        }, "acks");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
     }
 
-    private static void sendEncrypted(Serializable obj, SecretKey key, ObjectOutputStream oos) throws Exception {
-        byte[] iv = CryptoUtils.generateIV();
-        byte[] payload = SerializationUtils.serialize(obj);
-        byte[] encrypted = CryptoUtils.encryptData(payload, key, iv);
+    // Закрываем свою сторону: сервер дописывает наши пачки, шлет последние подтверждения и закрывает соединение
+    private static void awaitAcks(Socket socket, Thread acks, ExportCheckpoint checkpoint) throws Exception {
+        if (checkpoint == null) return;
+        socket.shutdownOutput();
+        acks.join(TimeUnit.MINUTES.toMillis(1));
+        checkpoint.finish();
+    }
 
-        oos.writeObject(new EncryptedMessage(iv, encrypted));
-        oos.flush();
+    private static FlightExporter.Encoder encoderFor(AppConfig config, int scope) {
+        return config.clientDictionaryEncoding ? new DictionaryEncoder(scope)::encode : FlightProto::encodeBatch;
     }
-}
 
+    private static Compression proposedCompression(AppConfig config) {
+        return Compression.byName(config.compressionCodec);
+    }
+
+    private static String endpoint(AppConfig config) {
+        return config.socketHost + ":" + config.socketPort;
+    }
+
+    private static void printSummary(long sent, String transport, SendCounters counters) {
+        counters.exported(sent);
+        if (sent == 0) {
+            System.out.println("SQLite пуст или не найден. Проверьте путь в application.conf");
+        } else {
+            System.out.println("Все данные отправлены через " + transport + ": " + sent + " записей.");
+            Metrics.printTotals("клиент");
+        }
+    }
+}
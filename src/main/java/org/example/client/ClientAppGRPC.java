@@ -3,31 +3,30 @@ package org.example.client;
 import com.google.protobuf.ByteString;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.stub.StreamObserver;
+import io.grpc.Metadata;
+import io.grpc.stub.MetadataUtils;
 import org.example.AppConfig;
 import org.example.crypto.CryptoUtils;
+import org.example.metrics.Metrics;
 import org.example.grpc.*;
-import org.example.model.Flight;
+import org.example.protocol.Compression;
+import org.example.protocol.FlightProto;
 
 import javax.crypto.SecretKey;
 import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.List;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 public class ClientAppGRPC {
+    private static final Metadata.Key<String> SESSION_HEADER =
+            Metadata.Key.of("session-id", Metadata.ASCII_STRING_MARSHALLER);
+
     public static void main(String[] args) {
         try {
             AppConfig config = AppConfig.get();
-            System.out.println("Клиент gRPC запущен. Чтение SQLite...");
-
-            List<Flight> data = new SqliteReader().readAll();
-            if (data.isEmpty()) {
-                System.out.println("Данных нет.");
-                return;
-            }
+            System.out.println("Клиент gRPC запущен. Данные SQLite читаются потоково...");
+            Metrics.start(config, "клиент", config.metricsClientHttpPort);
 
             ManagedChannel channel = ManagedChannelBuilder.forAddress(config.socketHost, config.socketPort)
                     .usePlaintext()
@@ -36,82 +35,97 @@ public class ClientAppGRPC {
             FlightServiceGrpc.FlightServiceBlockingStub blockingStub = FlightServiceGrpc.newBlockingStub(channel);
             FlightServiceGrpc.FlightServiceStub asyncStub = FlightServiceGrpc.newStub(channel);
 
-            System.out.println("Запрос публичного ключа...");
-            PublicKeyResponse pkResponse = blockingStub.getPublicKey(Empty.newBuilder().build());
-            byte[] pkBytes = pkResponse.getPemKey().toByteArray();
-
-            X509EncodedKeySpec spec = new X509EncodedKeySpec(pkBytes);
-            KeyFactory kf = KeyFactory.getInstance("RSA");
-            PublicKey serverPublic = kf.generatePublic(spec);
-
-            SecretKey aesKey = CryptoUtils.generateAESKey();
-            byte[] wrappedKey = CryptoUtils.wrapAESKey(aesKey, serverPublic);
-
-            StatusResponse keyStatus = blockingStub.setSessionKey(SessionKeyRequest.newBuilder()
-                    .setWrappedKey(ByteString.copyFrom(wrappedKey))
-                    .build());
-
-            if (!keyStatus.getSuccess()) {
-                System.err.println("Ошибка согласования ключей: " + keyStatus.getMessage());
-                return;
+            // Сначала пробуем возобновить прошлую сессию: без запроса ключа и RSA
+            String endpoint = config.socketHost + ":" + config.socketPort;
+            SecretKey aesKey = null;
+            StatusResponse keyStatus = null;
+            ClientSessionCache.Session cached = ClientSessionCache.get(endpoint);
+            if (cached != null) {
+                keyStatus = blockingStub.setSessionKey(SessionKeyRequest.newBuilder()
+                        .setSessionId(cached.ticket())
+                        .setCompression(config.compressionCodec)
+                        .setResumable(!config.clientCheckpointFile.isEmpty())
+                        .build());
+                if (keyStatus.getSuccess()) {
+                    aesKey = cached.key();
+                    System.out.println("Сессия возобновлена по билету.");
+                } else {
+                    ClientSessionCache.remove(endpoint);
+                }
             }
-            System.out.println("Ключи согласованы. Начинаем стриминг данных...");
 
-            final CountDownLatch finishLatch = new CountDownLatch(1);
+            if (aesKey == null) {
+                System.out.println("Запрос публичного ключа...");
+                PublicKeyResponse pkResponse = blockingStub.getPublicKey(Empty.newBuilder().build());
+                byte[] pkBytes = pkResponse.getPemKey().toByteArray();
 
-            StreamObserver<EncryptedPacket> requestObserver = asyncStub.streamFlights(new StreamObserver<>() {
-                @Override
-                public void onNext(StatusResponse value) {
-                    System.out.println("Ответ сервера: " + value.getMessage());
-                }
+                X509EncodedKeySpec spec = new X509EncodedKeySpec(pkBytes);
+                KeyFactory kf = KeyFactory.getInstance("RSA");
+                PublicKey serverPublic = kf.generatePublic(spec);
 
-                @Override
-                public void onError(Throwable t) {
-                    System.err.println("Ошибка при отправке: " + t.getMessage());
-                    finishLatch.countDown();
-                }
+                aesKey = CryptoUtils.generateAESKey();
+                byte[] wrappedKey = CryptoUtils.wrapAESKey(aesKey, serverPublic);
+
+                keyStatus = blockingStub.setSessionKey(SessionKeyRequest.newBuilder()
+                        .setWrappedKey(ByteString.copyFrom(wrappedKey))
+                        .setKeyId(pkResponse.getKeyId())
+                        .setCompression(config.compressionCodec)
+                        .setResumable(!config.clientCheckpointFile.isEmpty())
+                        .build());
 
-                @Override
-                public void onCompleted() {
-                    System.out.println("Передача завершена.");
-                    finishLatch.countDown();
+                if (!keyStatus.getSuccess()) {
+                    System.err.println("Ошибка согласования ключей: " + keyStatus.getMessage());
+                    return;
                 }
-            });
+                ClientSessionCache.put(endpoint, keyStatus.getSessionId(), aesKey);
+            }
+            // Сервер без поддержки сжатия (python_server) не вернет кодек - отправляем без сжатия
+            Compression compression = Compression.byName(keyStatus.getCompression());
+            System.out.println("Ключи согласованы, сжатие " + compression + ". Начинаем стриминг данных...");
+
+            // Java-сервер различает клиентов по id сессии из заголовка вызова
+            if (!keyStatus.getSessionId().isEmpty()) {
+                Metadata headers = new Metadata();
+                headers.put(SESSION_HEADER, keyStatus.getSessionId());
+                asyncStub = asyncStub.withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers));
+            }
 
-            for (Flight f : data) {
-                FlightData protoFlight = FlightData.newBuilder()
-                        .setFlightNo(f.flightNo())
-                        .setAirlineName(f.airlineName())
-                        .setAircraftModel(f.aircraftModel())
-                        .setDepCity(f.depCity())
-                        .setDepCode(f.depCode())
-                        .setArrCity(f.arrCity())
-                        .setArrCode(f.arrCode())
-                        .setPassengerName(f.passengerName())
-                        .setPassportNo(f.passportNo())
-                        .setFlightDate(f.flightDate())
-                        .build();
+            // Контрольная точка - только если сервер поддерживает UploadFlights (python_server - нет)
+            SqliteReader reader = new SqliteReader();
+            ExportCheckpoint checkpoint = keyStatus.getResumable() ? ExportCheckpoint.open(config, reader, endpoint) : null;
 
-                byte[] rawBytes = protoFlight.toByteArray();
-                byte[] iv = CryptoUtils.generateIV();
-                byte[] encrypted = CryptoUtils.encryptData(rawBytes, aesKey, iv);
+            // Несколько вызовов StreamFlights делят одно HTTP/2 соединение; отправка идет по isReady()
+            GrpcUploader uploader = new GrpcUploader(asyncStub, config.grpcClientStreams, config.grpcClientWindow, checkpoint);
 
+            FlightExporter exporter = new FlightExporter(reader, aesKey, compression, checkpoint, config);
+            SendCounters counters = new SendCounters("grpc");
+            // Пачки расходятся по нескольким вызовам и разбираются сервером параллельно:
+            // словарь потока на gRPC невозможен, пачки кодируются без словаря
+            long sent = exporter.export(FlightProto::encodeBatch, msg -> {
                 EncryptedPacket packet = EncryptedPacket.newBuilder()
-                        .setIv(ByteString.copyFrom(iv))
-                        .setEncryptedData(ByteString.copyFrom(encrypted))
+                        .setIv(ByteString.copyFrom(msg.iv()))
+                        .setEncryptedData(ByteString.copyFrom(msg.encryptedData()))
+                        .setBatch(true)
                         .build();
 
-                requestObserver.onNext(packet);
-                System.out.print(".");
+                uploader.send(packet);
+                counters.sent(packet.getSerializedSize());
+            });
+            counters.exported(sent);
+            if (sent == 0) {
+                System.out.println("Данных нет.");
             }
 
-            requestObserver.onCompleted();
-
-            finishLatch.await(1, TimeUnit.MINUTES);
+            StatusResponse result = uploader.finish(1, TimeUnit.MINUTES);
+            System.out.println("Ответ сервера (вызовов StreamFlights: " + config.grpcClientStreams + ", "
+                    + (result.getSuccess() ? "успешно" : "с ошибками") + "):" + result.getMessage());
+            System.out.println("Передача завершена.");
+            if (checkpoint != null) checkpoint.finish();
+            Metrics.printTotals("клиент");
             channel.shutdown();
 
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
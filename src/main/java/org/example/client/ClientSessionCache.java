@@ -0,0 +1,143 @@
+package org.example.client;
+
+import org.example.AppConfig;
+import org.example.crypto.CryptoUtils;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// Билеты сессий, выданные серверами: адрес сервера -> билет + AES ключ + число сообщений GCM под ним.
+// Повторное подключение к тому же серверу предъявляет билет вместо нового RSA обмена.
+// Ключ по билету переживает процесс, поэтому сообщения всех процессов суммируются в файле:
+// после лимита CryptoUtils.GCM_MESSAGES_PER_KEY билет не предъявляется и handshake выдает новый ключ.
+public final class ClientSessionCache {
+    public record Session(String ticket, SecretKey key) {}
+
+    private static Properties sessions;
+    // Сессии, взятые этим процессом: адрес -> ключ и счетчик CryptoUtils на момент последней записи в файл
+    private static final Map<String, Usage> used = new HashMap<>();
+
+    private record Usage(SecretKey key, long recorded) {}
+
+    private ClientSessionCache() {
+    }
+
+    public static synchronized Session get(String endpoint) {
+        String[] fields = fields(load().getProperty(endpoint));
+        if (fields == null) return null;
+        SecretKey key = new SecretKeySpec(Base64.getDecoder().decode(fields[1]), "AES");
+        long messages = fields.length > 2 ? Long.parseLong(fields[2]) : 0;
+        if (messages >= CryptoUtils.GCM_MESSAGES_PER_KEY) {
+            System.out.println("Ключ сессии исчерпал лимит сообщений GCM: билет не используется, нужен новый ключ");
+            remove(endpoint);
+            return null;
+        }
+        // Сообщения других процессов под этим ключом идут в лимит и этого процесса
+        if (!used.containsKey(endpoint)) CryptoUtils.addGcmMessages(key, messages);
+        track(endpoint, key);
+        return new Session(fields[0], key);
+    }
+
+    public static synchronized void put(String endpoint, String ticket, SecretKey key) {
+        if (ticket == null || ticket.isEmpty()) return;
+        load().setProperty(endpoint, ticket + " " + Base64.getEncoder().encodeToString(key.getEncoded()) + " 0");
+        save();
+        track(endpoint, key);
+    }
+
+    public static synchronized void remove(String endpoint) {
+        if (load().remove(endpoint) != null) save();
+    }
+
+    // Сообщения, зашифрованные с прошлой записи, добавляются к значению в файле (его мог обновить
+    // другой клиент). Вызывается при остановке процесса
+    public static synchronized void recordUsage() {
+        if (used.isEmpty()) return;
+        sessions = null; // перечитать: файл общий для процессов
+        for (Map.Entry<String, Usage> e : used.entrySet()) {
+            Usage usage = e.getValue();
+            long current = CryptoUtils.gcmMessages(usage.key());
+            String[] fields = fields(load().getProperty(e.getKey()));
+            // Билет уже заменен новым handshake
+            if (fields == null || !fields[1].equals(Base64.getEncoder().encodeToString(usage.key().getEncoded()))) continue;
+            long stored = fields.length > 2 ? Long.parseLong(fields[2]) : 0;
+            sessions.setProperty(e.getKey(), fields[0] + " " + fields[1] + " " + (stored + current - usage.recorded()));
+            e.setValue(new Usage(usage.key(), current));
+        }
+        save();
+    }
+
+    private static void track(String endpoint, SecretKey key) {
+        if (used.isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(ClientSessionCache::recordUsage, "session-usage"));
+        }
+        used.put(endpoint, new Usage(key, CryptoUtils.gcmMessages(key)));
+    }
+
+    // "билет ключ [сообщений]"; старые записи без счетчика - 0 сообщений
+    private static String[] fields(String value) {
+        if (value == null) return null;
+        String[] fields = value.split(" ");
+        return fields.length >= 2 ? fields : null;
+    }
+
+    private static Properties load() {
+        if (sessions == null) {
+            sessions = new Properties();
+            Path file = file();
+            if (file != null && Files.exists(file)) {
+                try (Reader in = Files.newBufferedReader(file)) {
+                    sessions.load(in);
+                } catch (IOException e) {
+                    System.err.println("Не удалось прочитать кэш сессий: " + e.getMessage());
+                }
+            }
+        }
+        return sessions;
+    }
+
+    private static void save() {
+        Path file = file();
+        if (file == null) return;
+        try {
+            store(sessions, file);
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить кэш сессий: " + e.getMessage());
+        }
+    }
+
+    // В файле ключи AES открытым текстом: на POSIX он доступен только владельцу (rw-------).
+    // Запись идет во временный файл с этими правами с самого создания и затем заменяет прежний -
+    // ключ не окажется на диске с правами по umask даже на мгновение, а старый файл с широкими правами исчезнет
+    static void store(Properties props, Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = dir.getFileSystem().supportedFileAttributeViews().contains("posix")
+                ? Files.createTempFile(dir, file.getFileName().toString(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(tmp)) {
+                props.store(out, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Path file() {
+        String path = AppConfig.get().clientSessionCacheFile;
+        return path.isEmpty() ? null : Path.of(path);
+    }
+}
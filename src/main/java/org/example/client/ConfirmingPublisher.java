@@ -0,0 +1,89 @@
+package org.example.client;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Публикация с асинхронными publisher confirms: не больше window неподтвержденных сообщений.
+// Сообщения, на которые брокер ответил nack, публикуются повторно.
+// publish/awaitConfirms вызываются из одного потока; подтверждения приходят в потоке клиента RabbitMQ.
+public class ConfirmingPublisher {
+    private record Outgoing(String routingKey, AMQP.BasicProperties props, byte[] body) {}
+
+    private final Channel channel;
+    private final Semaphore window;
+    private final ConcurrentNavigableMap<Long, Outgoing> outstanding = new ConcurrentSkipListMap<>();
+    private final Queue<Outgoing> retries = new ConcurrentLinkedQueue<>();
+
+    public ConfirmingPublisher(Channel channel, int window) throws IOException {
+        this.channel = channel;
+        this.window = new Semaphore(window);
+        channel.confirmSelect();
+        channel.addConfirmListener(new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) {
+                settle(deliveryTag, multiple, false);
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) {
+                settle(deliveryTag, multiple, true);
+            }
+        });
+    }
+
+    public void publish(String routingKey, AMQP.BasicProperties props, byte[] body) throws IOException, InterruptedException {
+        republishNacked();
+        send(new Outgoing(routingKey, props, body));
+    }
+
+    // Ждет подтверждения всех опубликованных сообщений (с учетом повторов после nack)
+    public void awaitConfirms(long timeoutMs) throws IOException, InterruptedException, TimeoutException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!outstanding.isEmpty() || !retries.isEmpty()) {
+            republishNacked();
+            if (System.currentTimeMillis() > deadline) {
+                throw new TimeoutException("Брокер не подтвердил " + outstanding.size() + " сообщений");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void send(Outgoing msg) throws IOException, InterruptedException {
+        window.acquire();
+        long seqNo = channel.getNextPublishSeqNo();
+        outstanding.put(seqNo, msg);
+        channel.basicPublish("", msg.routingKey(), msg.props(), msg.body());
+    }
+
+    private void republishNacked() throws IOException, InterruptedException {
+        Outgoing msg;
+        while ((msg = retries.poll()) != null) {
+            send(msg);
+        }
+    }
+
+    private void settle(long deliveryTag, boolean multiple, boolean nacked) {
+        Map<Long, Outgoing> confirmed = multiple
+                ? outstanding.headMap(deliveryTag, true)
+                : outstanding.subMap(deliveryTag, true, deliveryTag, true);
+        int released = 0;
+        for (Map.Entry<Long, Outgoing> e : confirmed.entrySet()) {
+            if (outstanding.remove(e.getKey()) != null) {
+                if (nacked) retries.add(e.getValue());
+                released++;
+            }
+        }
+        window.release(released);
+    }
+}
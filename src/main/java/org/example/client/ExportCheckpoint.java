@@ -0,0 +1,152 @@
+package org.example.client;
+
+import org.example.AppConfig;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+// Контрольная точка выгрузки (client.checkpointFile): id выгрузки, диапазоны rowid потоков и seq, до которого
+// сервер подтвердил сохранение каждого потока. Повторный запуск после обрыва продолжает каждый поток
+// с подтвержденного места, а сервер по тому же exportId отбрасывает записи, которые уже успел сохранить.
+// source - откуда и куда шла выгрузка: при смене базы SQLite или сервера начинается новая выгрузка.
+// Непрерывная выгрузка (client.tail) не удаляет точку: следующий запуск продолжит с последнего подтвержденного rowid.
+public class ExportCheckpoint {
+    // Диапазон rowid потока [from, to]
+    public record Range(long from, long to) {}
+
+    private final Path file;
+    private final String exportId;
+    private final String source;
+    private final List<Range> ranges;
+    private final long[] acked;
+    private final long[] sent;
+    private final boolean resumed;
+    private boolean keep;
+
+    private ExportCheckpoint(Path file, String exportId, String source, List<Range> ranges, long[] acked, boolean resumed) {
+        this.file = file;
+        this.exportId = exportId;
+        this.source = source;
+        this.ranges = ranges;
+        this.acked = acked;
+        this.sent = acked.clone();
+        this.resumed = resumed;
+    }
+
+    // Контрольная точка выгрузки в endpoint; null - выключена (client.checkpointFile = "")
+    public static ExportCheckpoint open(AppConfig cfg, SqliteReader reader, String endpoint) throws Exception {
+        if (cfg.clientCheckpointFile.isEmpty()) return null;
+        ExportCheckpoint checkpoint = open(Path.of(cfg.clientCheckpointFile), cfg.sqlitePath + " -> " + endpoint,
+                FlightExporter.planRanges(reader, cfg.clientExportWorkers));
+        checkpoint.keep = cfg.clientTail;
+        if (checkpoint.resumed()) {
+            System.out.println("Выгрузка " + checkpoint.exportId() + " продолжается с контрольной точки " + cfg.clientCheckpointFile);
+        }
+        return checkpoint;
+    }
+
+    // Незавершенная выгрузка из файла или новая по плану диапазонов
+    public static ExportCheckpoint open(Path file, String source, List<Range> plan) throws IOException {
+        if (Files.exists(file)) {
+            Properties p = new Properties();
+            try (Reader in = Files.newBufferedReader(file)) {
+                p.load(in);
+            }
+            if (source.equals(p.getProperty("source"))) {
+                int count = Integer.parseInt(p.getProperty("ranges", "0"));
+                List<Range> ranges = new ArrayList<>(count);
+                long[] acked = new long[count];
+                for (int i = 0; i < count; i++) {
+                    String[] parts = p.getProperty("range." + i).split(",");
+                    ranges.add(new Range(Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+                    acked[i] = Long.parseLong(parts[2]);
+                }
+                return new ExportCheckpoint(file, p.getProperty("exportId"), source, ranges, acked, true);
+            }
+            System.out.println("Контрольная точка относится к другой выгрузке (" + p.getProperty("source") + "), начинаем заново.");
+        }
+        long[] acked = new long[plan.size()];
+        for (int i = 0; i < acked.length; i++) acked[i] = plan.get(i).from() - 1;
+        ExportCheckpoint checkpoint = new ExportCheckpoint(file, UUID.randomUUID().toString(), source, List.copyOf(plan), acked, false);
+        checkpoint.save();
+        return checkpoint;
+    }
+
+    public String exportId() {
+        return exportId;
+    }
+
+    public List<Range> ranges() {
+        return ranges;
+    }
+
+    public boolean resumed() {
+        return resumed;
+    }
+
+    public synchronized long acked(int stream) {
+        return acked[stream];
+    }
+
+    // Последний seq, отправленный в потоке
+    public synchronized void sent(int stream, long seq) {
+        sent[stream] = Math.max(sent[stream], seq);
+    }
+
+    // Подтверждение сервера: сдвигает позицию потока и сразу сохраняет файл
+    public synchronized void acked(int stream, long committedSeq) {
+        if (stream < 0 || stream >= acked.length || committedSeq <= acked[stream]) return;
+        acked[stream] = committedSeq;
+        try {
+            save();
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить контрольную точку: " + e.getMessage());
+        }
+    }
+
+    // Сервер подтвердил все отправленное
+    public synchronized boolean complete() {
+        for (int i = 0; i < acked.length; i++) {
+            if (acked[i] < sent[i]) return false;
+        }
+        return true;
+    }
+
+    // После полной выгрузки файл удаляется: следующий запуск - новая выгрузка
+    public synchronized void finish() throws IOException {
+        if (!complete()) {
+            System.out.println("Сервер подтвердил не все записи: следующий запуск продолжит с контрольной точки " + file);
+            return;
+        }
+        if (keep) {
+            System.out.println("Сервер подтвердил сохранение всех записей, позиция непрерывной выгрузки сохранена в " + file);
+            return;
+        }
+        Files.deleteIfExists(file);
+        System.out.println("Сервер подтвердил сохранение всех записей, контрольная точка удалена.");
+    }
+
+    // Запись во временный файл и атомарная замена: обрыв посреди записи не портит точку
+    private void save() throws IOException {
+        Properties p = new Properties();
+        p.setProperty("exportId", exportId);
+        p.setProperty("source", source);
+        p.setProperty("ranges", String.valueOf(ranges.size()));
+        for (int i = 0; i < ranges.size(); i++) {
+            p.setProperty("range." + i, ranges.get(i).from() + "," + ranges.get(i).to() + "," + acked[i]);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp)) {
+            p.store(out, null);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
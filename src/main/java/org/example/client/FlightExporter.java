@@ -0,0 +1,343 @@
+package org.example.client;
+
+import org.example.AppConfig;
+import org.example.crypto.CryptoUtils;
+import org.example.metrics.Histogram;
+import org.example.metrics.Metrics;
+import org.example.model.EncryptedMessage;
+import org.example.model.Flight;
+import org.example.model.FlightBatch;
+import org.example.model.StreamPosition;
+import org.example.protocol.Compression;
+import org.example.protocol.Partitions;
+
+import javax.crypto.SecretKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Выгрузка raw_flights: чтение -> сериализация -> сжатие -> шифрование -> отправка.
+// Записи упаковываются в пачки (client.batchSize / client.batchFlushMs): один IV,
+// одна инициализация шифра и одно сообщение на пачку вместо каждой записи.
+// При workers > 1 таблица делится на диапазоны rowid, каждый читается своим соединением,
+// сериализация и AES идут в пуле потоков, а отправка остается в вызывающем потоке.
+// С контрольной точкой (ExportCheckpoint) каждый диапазон - поток выгрузки: пачки несут StreamPosition,
+// а чтение диапазона начинается после подтвержденного сервером rowid.
+// В непрерывном режиме (client.tail) после начальной выгрузки последний диапазон продолжается:
+// раз в pollMs дочитываются строки с rowid больше прочитанного и уходят в той же сессии.
+public class FlightExporter {
+    @FunctionalInterface
+    public interface Encoder {
+        byte[] encode(FlightBatch batch) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Sender {
+        void send(EncryptedMessage msg) throws Exception;
+    }
+
+    // Получатель пачек, разложенных по партициям (см. Partitions)
+    @FunctionalInterface
+    public interface PartitionedSender {
+        void send(int partition, EncryptedMessage msg) throws Exception;
+    }
+
+    private record Outgoing(int partition, EncryptedMessage msg) {}
+
+    private static final int RANGES_PER_WORKER = 4;
+    // Сколько хук остановки ждет, пока непрерывная выгрузка отправит хвост и получит подтверждения
+    private static final long SHUTDOWN_WAIT_MS = 90_000;
+
+    private static final Histogram SERIALIZE = Metrics.histogram("client_stage_seconds", "stage", "serialize");
+    private static final Histogram COMPRESS = Metrics.histogram("client_stage_seconds", "stage", "compress");
+    private static final Histogram ENCRYPT = Metrics.histogram("client_stage_seconds", "stage", "encrypt");
+    private static final Histogram SEND = Metrics.histogram("client_stage_seconds", "stage", "send");
+
+    private final SqliteReader reader;
+    private final SecretKey key;
+    private final Compression compression;
+    private final CryptoUtils.Mode cipherMode;
+    private final int workers;
+    private final int batchSize;
+    private final long batchFlushMs;
+    // null - выгрузка без контрольных точек
+    private final ExportCheckpoint checkpoint;
+    private final boolean tail;
+    private final long tailPollMs;
+    private final Object stopSignal = new Object();
+    private volatile boolean stopped;
+
+    public FlightExporter(SqliteReader reader, SecretKey key, Compression compression, AppConfig cfg) {
+        this(reader, key, compression, null, cfg);
+    }
+
+    public FlightExporter(SqliteReader reader, SecretKey key, Compression compression, ExportCheckpoint checkpoint, AppConfig cfg) {
+        this.reader = reader;
+        this.checkpoint = checkpoint;
+        this.key = key;
+        this.compression = compression;
+        this.cipherMode = CryptoUtils.Mode.of(cfg.cryptoCipherMode);
+        this.workers = cfg.clientExportWorkers;
+        this.batchSize = cfg.clientBatchSize;
+        this.batchFlushMs = cfg.clientBatchFlushMs;
+        this.tail = cfg.clientTail;
+        this.tailPollMs = cfg.clientTailPollMs;
+    }
+
+    // Возвращает число выгруженных записей
+    public long export(Encoder encoder, Sender sender) throws Exception {
+        return export(encoder, 1, (partition, msg) -> sender.send(msg));
+    }
+
+    // Каждая пачка содержит рейсы только одной партиции
+    public long export(Encoder encoder, int partitions, PartitionedSender sender) throws Exception {
+        return export(() -> encoder, partitions, sender);
+    }
+
+    // Энкодер со своим состоянием (например, DictionaryEncoder) на каждый поток пачек: пачки одного
+    // энкодера отправляются в том порядке, в котором он их закодировал
+    public long exportStreams(Supplier<Encoder> encoderPerStream, Sender sender) throws Exception {
+        return export(encoderPerStream, 1, (partition, msg) -> sender.send(msg));
+    }
+
+    private long export(Supplier<Encoder> encoders, int partitions, PartitionedSender sender) throws Exception {
+        if (checkpoint == null && workers <= 1 && !tail) {
+            Batcher batcher = new Batcher(encoders.get(), partitions, -1, 0);
+            long count = reader.forEach(f -> {
+                Outgoing out = batcher.add(f);
+                if (out != null) send(sender, out);
+            });
+            for (Outgoing tail : batcher.flushAll()) {
+                send(sender, tail);
+            }
+            return count;
+        }
+        List<ExportCheckpoint.Range> ranges = checkpoint != null ? checkpoint.ranges() : planRanges(reader, workers);
+        Batcher[] batchers = new Batcher[ranges.size()];
+        for (int i = 0; i < batchers.length; i++) {
+            batchers[i] = new Batcher(encoders.get(), partitions, i, firstId(ranges, i) - 1);
+        }
+        long count = 0;
+        if (workers <= 1) {
+            for (int i = 0; i < ranges.size(); i++) {
+                count += readRange(batchers[i], ranges.get(i).to(), sender);
+            }
+        } else {
+            count = exportParallel(batchers, ranges, sender);
+        }
+        // Новые строки получают rowid больше всех прежних (AUTOINCREMENT), поэтому хвост таблицы -
+        // продолжение последнего диапазона
+        if (tail) count += follow(batchers[batchers.length - 1], sender);
+        return count;
+    }
+
+    private long readRange(Batcher batcher, long toId, PartitionedSender sender) throws Exception {
+        long count = reader.forEachInRange(batcher.lastRead + 1, toId, f -> {
+            Outgoing out = batcher.add(f);
+            if (out != null) send(sender, out);
+        });
+        for (Outgoing tail : batcher.flushAll()) {
+            send(sender, tail);
+        }
+        return count;
+    }
+
+    // Непрерывная выгрузка до stop(): опрос новых строк раз в tailPollMs. Пачка уходит в конце каждого опроса,
+    // не дожидаясь batchSize; пока строки находятся, опрос повторяется без паузы
+    private long follow(Batcher batcher, PartitionedSender sender) throws Exception {
+        stopOnShutdown();
+        System.out.println("Непрерывная выгрузка: новые строки после id " + batcher.lastRead + ", опрос раз в " + tailPollMs + " мс");
+        long count = 0;
+        while (!stopped) {
+            long found = readRange(batcher, Long.MAX_VALUE, sender);
+            if (found > 0) {
+                count += found;
+                System.out.println("Новых записей: " + found + " (до id " + batcher.lastRead + ")");
+                continue;
+            }
+            synchronized (stopSignal) {
+                if (!stopped) stopSignal.wait(tailPollMs);
+            }
+        }
+        System.out.println("Непрерывная выгрузка остановлена на id " + batcher.lastRead);
+        return count;
+    }
+
+    // Останавливает непрерывную выгрузку: текущий опрос дочитывается и отправляется, export возвращает управление
+    public void stop() {
+        synchronized (stopSignal) {
+            stopped = true;
+            stopSignal.notifyAll();
+        }
+    }
+
+    // Ctrl+C / SIGTERM: хук ждет, пока вызвавший export поток отправит хвост и дождется подтверждений сервера
+    private void stopOnShutdown() {
+        Thread exporting = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop();
+            try {
+                exporting.join(SHUTDOWN_WAIT_MS);
+            } catch (InterruptedException ignored) {
+            }
+        }));
+    }
+
+    // Деление таблицы на диапазоны rowid: при workers > 1 диапазонов больше, чем потоков,
+    // чтобы неравномерные по плотности куски не тормозили выгрузку.
+    // Для пустой таблицы - один пустой диапазон: непрерывной выгрузке есть что продолжать
+    public static List<ExportCheckpoint.Range> planRanges(SqliteReader reader, int workers) throws Exception {
+        long[] range = reader.idRange();
+        List<ExportCheckpoint.Range> ranges = new ArrayList<>();
+        if (range[1] < range[0]) {
+            ranges.add(new ExportCheckpoint.Range(1, 0));
+            return ranges;
+        }
+        int parts = workers <= 1 ? 1 : workers * RANGES_PER_WORKER;
+        long step = Math.max(1, (range[1] - range[0] + parts) / parts);
+        for (long from = range[0]; from <= range[1]; from += step) {
+            ranges.add(new ExportCheckpoint.Range(from, Math.min(range[1], from + step - 1)));
+        }
+        return ranges;
+    }
+
+    // Продолжение диапазона после подтвержденного rowid
+    private long firstId(List<ExportCheckpoint.Range> ranges, int i) {
+        long from = ranges.get(i).from();
+        return checkpoint != null ? Math.max(from, checkpoint.acked(i) + 1) : from;
+    }
+
+    // Сжатие (если согласовано) до шифрования: шифротекст уже не сжимается
+    private EncryptedMessage encrypt(byte[] payload) throws Exception {
+        long start = System.nanoTime();
+        byte[] compressed = compression.compress(payload);
+        COMPRESS.recordSince(start);
+
+        start = System.nanoTime();
+        byte[] iv = CryptoUtils.generateIV(cipherMode);
+        EncryptedMessage msg = new EncryptedMessage(iv, CryptoUtils.encryptData(compressed, key, iv));
+        ENCRYPT.recordSince(start);
+        return msg;
+    }
+
+    private static void send(PartitionedSender sender, Outgoing out) throws Exception {
+        long start = System.nanoTime();
+        sender.send(out.partition(), out.msg());
+        SEND.recordSince(start);
+    }
+
+    private long exportParallel(Batcher[] batchers, List<ExportCheckpoint.Range> ranges, PartitionedSender sender)
+            throws Exception {
+        BlockingQueue<Outgoing> out = new ArrayBlockingQueue<>(workers * 4);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        AtomicLong count = new AtomicLong();
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                Batcher batcher = batchers[i];
+                long lo = batcher.lastRead + 1;
+                long hi = ranges.get(i).to();
+                tasks.add(pool.submit(() -> {
+                    count.addAndGet(reader.forEachInRange(lo, hi, f -> {
+                        Outgoing msg = batcher.add(f);
+                        if (msg != null) out.put(msg);
+                    }));
+                    for (Outgoing tail : batcher.flushAll()) {
+                        out.put(tail);
+                    }
+                    return null;
+                }));
+            }
+
+            // Слияние: отправка из одного потока, транспорт не обязан быть потокобезопасным.
+            // Пачки одного диапазона попадают в очередь и уходят в порядке создания
+            while (true) {
+                Outgoing msg = out.poll(50, TimeUnit.MILLISECONDS);
+                if (msg != null) {
+                    send(sender, msg);
+                    continue;
+                }
+                if (allDone(tasks) && out.isEmpty()) break;
+            }
+            for (Future<?> task : tasks) {
+                task.get(); // пробрасываем ошибки воркеров
+            }
+            return count.get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static boolean allDone(List<Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            if (!task.isDone()) return false;
+        }
+        return true;
+    }
+
+    // Копит записи (отдельно по каждой партиции) и отдает зашифрованную пачку по размеру или по возрасту первой записи.
+    // stream >= 0 при контрольной точке: пачки получают положение в потоке (диапазоне rowid)
+    private class Batcher {
+        private final Encoder encoder;
+        private final List<Flight>[] batches;
+        private final long[] startedAt;
+        private final int stream;
+        private long prevSeq;
+        // Последний прочитанный rowid диапазона; с него продолжается чтение
+        long lastRead;
+
+        @SuppressWarnings("unchecked")
+        Batcher(Encoder encoder, int partitions, int stream, long lastRead) {
+            this.encoder = encoder;
+            this.batches = new List[Math.max(1, partitions)];
+            this.startedAt = new long[batches.length];
+            for (int i = 0; i < batches.length; i++) batches[i] = new ArrayList<>(batchSize);
+            this.stream = checkpoint != null ? stream : -1;
+            if (this.stream >= 0) prevSeq = checkpoint.acked(stream);
+            this.lastRead = lastRead;
+        }
+
+        Outgoing add(Flight f) throws Exception {
+            int p = Partitions.of(f, batches.length);
+            List<Flight> batch = batches[p];
+            if (batch.isEmpty()) startedAt[p] = System.currentTimeMillis();
+            batch.add(f);
+            lastRead = f.seq();
+            if (batch.size() >= batchSize || System.currentTimeMillis() - startedAt[p] >= batchFlushMs) {
+                return flush(p);
+            }
+            return null;
+        }
+
+        Outgoing flush(int p) throws Exception {
+            if (batches[p].isEmpty()) return null;
+            List<Flight> flights = batches[p];
+            long start = System.nanoTime();
+            byte[] payload = encoder.encode(new FlightBatch(flights, position(flights)));
+            SERIALIZE.recordSince(start);
+            batches[p] = new ArrayList<>(batchSize);
+            return new Outgoing(p, encrypt(payload));
+        }
+
+        // Записи диапазона читаются по порядку id: пачка продолжает поток сразу после предыдущей
+        private StreamPosition position(List<Flight> flights) {
+            if (stream < 0) return null;
+            StreamPosition position = new StreamPosition(checkpoint.exportId(), stream,
+                    checkpoint.ranges().get(stream).from() - 1, prevSeq);
+            prevSeq = flights.get(flights.size() - 1).seq();
+            checkpoint.sent(stream, prevSeq);
+            return position;
+        }
+
+        List<Outgoing> flushAll() throws Exception {
+            List<Outgoing> tails = new ArrayList<>();
+            for (int p = 0; p < batches.length; p++) {
+                Outgoing tail = flush(p);
+                if (tail != null) tails.add(tail);
+            }
+            return tails;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.example.client;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.example.grpc.EncryptedPacket;
+import org.example.grpc.FlightServiceGrpc;
+import org.example.grpc.StatusResponse;
+import org.example.grpc.StreamAck;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Выгрузка через несколько параллельных вызовов StreamFlights на одном канале.
+// Пакет уходит в gRPC только когда вызов isReady(); до этого он ждет в очереди вызова
+// длиной window, а при полных очередях send блокируется - память клиента ограничена.
+// С контрольной точкой вызовы идут через UploadFlights: подтверждения сервера сдвигают ExportCheckpoint.
+public class GrpcUploader {
+    private final List<Stream> streams = new ArrayList<>();
+    private final CountDownLatch finished;
+    private final ExportCheckpoint checkpoint;
+    private int next;
+
+    public GrpcUploader(FlightServiceGrpc.FlightServiceStub stub, int streamCount, int window) {
+        this(stub, streamCount, window, null);
+    }
+
+    public GrpcUploader(FlightServiceGrpc.FlightServiceStub stub, int streamCount, int window, ExportCheckpoint checkpoint) {
+        this.finished = new CountDownLatch(streamCount);
+        this.checkpoint = checkpoint;
+        for (int i = 0; i < streamCount; i++) {
+            Stream stream = new Stream(window);
+            if (checkpoint != null) {
+                stub.uploadFlights(stream);
+            } else {
+                stub.streamFlights(stream);
+            }
+            streams.add(stream);
+        }
+    }
+
+    // Пакет попадает в вызов с самой короткой очередью; при равных очередях - по кругу.
+    // Вызывается из одного потока (отправка FlightExporter)
+    public void send(EncryptedPacket packet) throws Exception {
+        while (true) {
+            Stream target = null;
+            for (int i = 0; i < streams.size(); i++) {
+                Stream s = streams.get((next + i) % streams.size());
+                if (s.error != null) throw new IOException("Поток StreamFlights прерван: " + s.error.getMessage(), s.error);
+                if (s.done) throw new IOException("Сервер досрочно завершил StreamFlights: "
+                        + (s.response != null ? s.response.getMessage() : ""));
+                if (target == null || s.queue.size() < target.queue.size()) target = s;
+            }
+            next = (streams.indexOf(target) + 1) % streams.size();
+            if (target.queue.offer(packet, 50, TimeUnit.MILLISECONDS)) {
+                target.drain();
+                return;
+            }
+        }
+    }
+
+    // Закрывает вызовы после отправки очередей и сводит ответы сервера в один StatusResponse
+    public StatusResponse finish(long timeout, TimeUnit unit) throws InterruptedException {
+        for (Stream s : streams) {
+            s.closing = true;
+            s.drain();
+        }
+        boolean done = finished.await(timeout, unit);
+
+        boolean success = done;
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < streams.size(); i++) {
+            Stream s = streams.get(i);
+            StatusResponse r = s.response;
+            if (s.error != null) {
+                success = false;
+                message.append("\n  #").append(i + 1).append(": ошибка ").append(s.error.getMessage());
+            } else if (r != null) {
+                success &= r.getSuccess();
+                message.append("\n  #").append(i + 1).append(": ").append(r.getMessage());
+            } else {
+                success = false;
+                message.append("\n  #").append(i + 1).append(": нет ответа");
+            }
+        }
+        return StatusResponse.newBuilder().setSuccess(success).setMessage(message.toString()).build();
+    }
+
+    private class Stream implements ClientResponseObserver<EncryptedPacket, StatusResponse> {
+        final BlockingQueue<EncryptedPacket> queue;
+        private ClientCallStreamObserver<EncryptedPacket> call;
+        volatile boolean closing;
+        private boolean completed;
+        volatile StatusResponse response;
+        volatile Throwable error;
+        volatile boolean done;
+
+        Stream(int window) {
+            this.queue = new ArrayBlockingQueue<>(window);
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<EncryptedPacket> requestStream) {
+            this.call = requestStream;
+            requestStream.setOnReadyHandler(this::drain);
+        }
+
+        // Вызывается и отправителем, и потоком gRPC по onReady; CallStreamObserver не потокобезопасен
+        synchronized void drain() {
+            if (completed || error != null) return;
+            EncryptedPacket packet;
+            while (call.isReady() && (packet = queue.poll()) != null) {
+                call.onNext(packet);
+            }
+            if (closing && queue.isEmpty()) {
+                completed = true;
+                call.onCompleted();
+            }
+        }
+
+        // UploadFlights: промежуточные ответы несут только подтверждения, итог вызова - последний ответ
+        @Override
+        public void onNext(StatusResponse value) {
+            if (checkpoint != null) {
+                for (StreamAck ack : value.getAcksList()) {
+                    checkpoint.acked(ack.getStream(), ack.getCommittedSeq());
+                }
+            }
+            response = value;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            queue.clear();
+            finished.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            done = true;
+            finished.countDown();
+        }
+    }
+}
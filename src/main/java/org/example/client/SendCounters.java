@@ -0,0 +1,31 @@
+package org.example.client;
+
+import org.example.metrics.Counter;
+import org.example.metrics.Metrics;
+import org.example.model.EncryptedMessage;
+
+// Счетчики отправки клиента по транспорту: сообщения, байты шифротекста и записи
+final class SendCounters {
+    private final Counter messages;
+    private final Counter bytes;
+    private final Counter records;
+
+    SendCounters(String transport) {
+        this.messages = Metrics.counter("client_messages_total", "transport", transport);
+        this.bytes = Metrics.counter("client_bytes_total", "transport", transport);
+        this.records = Metrics.counter("client_records_total", "transport", transport);
+    }
+
+    void sent(EncryptedMessage msg) {
+        sent(msg.iv().length + msg.encryptedData().length);
+    }
+
+    void sent(long size) {
+        messages.increment();
+        bytes.add(size);
+    }
+
+    void exported(long count) {
+        records.add(count);
+    }
+}
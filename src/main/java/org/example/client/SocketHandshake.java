@@ -0,0 +1,47 @@
+package org.example.client;
+
+import org.example.crypto.CryptoUtils;
+import org.example.model.ClientHello;
+import org.example.model.ServerAccept;
+import org.example.model.ServerHello;
+import org.example.protocol.Compression;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+// Handshake поверх ObjectStream (режим SOCKET и side-channel RabbitMQ).
+// Сначала пробуем билет прошлой сессии; если сервер его не знает - полный обмен ключом через RSA.
+public final class SocketHandshake {
+    // Ключ сессии, билет для переподключения и кодек сжатия, который подтвердил сервер
+    public record Result(SecretKey key, String ticket, Compression compression) {}
+
+    private SocketHandshake() {
+    }
+
+    public static Result perform(ObjectInputStream ois, ObjectOutputStream oos, String endpoint,
+                                 Compression proposed) throws Exception {
+        ServerHello hello = (ServerHello) ois.readObject();
+
+        ClientSessionCache.Session cached = ClientSessionCache.get(endpoint);
+        if (cached != null) {
+            oos.writeObject(new ClientHello(0, null, cached.ticket(), proposed.name()));
+            oos.flush();
+            ServerAccept accept = (ServerAccept) ois.readObject();
+            if (accept.accepted()) {
+                System.out.println("Сессия возобновлена по билету.");
+                return new Result(cached.key(), cached.ticket(), Compression.byName(accept.compression()));
+            }
+            ClientSessionCache.remove(endpoint);
+        }
+
+        SecretKey aesKey = CryptoUtils.generateAESKey();
+        oos.writeObject(new ClientHello(hello.keyId(), CryptoUtils.wrapAESKey(aesKey, hello.publicKey()), null, proposed.name()));
+        oos.flush();
+        ServerAccept accept = (ServerAccept) ois.readObject();
+        if (!accept.accepted()) throw new IOException("Сервер не принял ключ сессии");
+        ClientSessionCache.put(endpoint, accept.ticket(), aesKey);
+        return new Result(aesKey, accept.ticket(), Compression.byName(accept.compression()));
+    }
+}
@@ -1,38 +1,98 @@
 package org.example.client;
 
 import org.example.AppConfig;
+import org.example.metrics.Histogram;
+import org.example.metrics.Metrics;
 import org.example.model.Flight;
+import org.sqlite.SQLiteConfig;
 
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
 
 public class SqliteReader {
-    public List<Flight> readAll() {
-        List<Flight> list = new ArrayList<>();
-        String url = AppConfig.get().sqlitePath;
+    private static final Histogram READ = Metrics.histogram("client_stage_seconds", "stage", "read");
 
-        try (Connection conn = DriverManager.getConnection(url);
+    // Обработчик очередной строки; вызывается по мере чтения курсора
+    @FunctionalInterface
+    public interface FlightHandler {
+        void handle(Flight flight) throws Exception;
+    }
+
+    // id (rowid) уходит в Flight.seq - по нему сервер подтверждает сохраненное
+    private static final String SELECT = "SELECT flight_no, airline_name, aircraft_model, dep_city, dep_code, " +
+            "arr_city, arr_code, passenger_name, passport_no, flight_date, id FROM raw_flights";
+
+    private final String url;
+    private final int fetchSize;
+
+    public SqliteReader() {
+        this(AppConfig.get().sqlitePath, AppConfig.get().clientFetchSize);
+    }
+
+    public SqliteReader(String url, int fetchSize) {
+        this.url = url;
+        this.fetchSize = fetchSize;
+    }
+
+    // Потоковое чтение: строки не копятся в памяти, а сразу уходят в обработчик.
+    // Возвращает число прочитанных записей.
+    public long forEach(FlightHandler handler) throws Exception {
+        return read(SELECT, handler);
+    }
+
+    // Чтение диапазона rowid [fromId, toId] - для параллельной выгрузки
+    public long forEachInRange(long fromId, long toId, FlightHandler handler) throws Exception {
+        return read(SELECT + " WHERE id BETWEEN ? AND ? ORDER BY id", handler, fromId, toId);
+    }
+
+    // Границы rowid таблицы: {min, max}; для пустой таблицы max < min
+    public long[] idRange() throws SQLException {
+        try (Connection conn = openReadOnly();
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM raw_flights")) {
-
-            while (rs.next()) {
-                list.add(new Flight(
-                        rs.getString("flight_no"),
-                        rs.getString("airline_name"),
-                        rs.getString("aircraft_model"),
-                        rs.getString("dep_city"),
-                        rs.getString("dep_code"),
-                        rs.getString("arr_city"),
-                        rs.getString("arr_code"),
-                        rs.getString("passenger_name"),
-                        rs.getString("passport_no"),
-                        rs.getString("flight_date")
-                ));
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MIN(id), 0), COALESCE(MAX(id), -1) FROM raw_flights")) {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2)};
+        }
+    }
+
+    private long read(String sql, FlightHandler handler, Object... params) throws Exception {
+        long count = 0;
+        try (Connection conn = openReadOnly();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setFetchSize(fetchSize);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                // Стадия чтения - курсор и сборка Flight, без времени обработчика
+                long start = System.nanoTime();
+                while (rs.next()) {
+                    Flight flight = new Flight(
+                            rs.getString(1),
+                            rs.getString(2),
+                            rs.getString(3),
+                            rs.getString(4),
+                            rs.getString(5),
+                            rs.getString(6),
+                            rs.getString(7),
+                            rs.getString(8),
+                            rs.getString(9),
+                            rs.getString(10),
+                            rs.getLong(11)
+                    );
+                    READ.recordSince(start);
+                    handler.handle(flight);
+                    count++;
+                    start = System.nanoTime();
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return list;
+        return count;
+    }
+
+    // У каждого потока свое соединение только на чтение
+    private Connection openReadOnly() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        return DriverManager.getConnection(url, config.toProperties());
     }
 }
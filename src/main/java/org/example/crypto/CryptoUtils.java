@@ -3,59 +3,156 @@ package org.example.crypto;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
+import java.nio.ByteBuffer;
 import java.security.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CryptoUtils {
+    // Режим AES для новых сообщений. Получатель определяет режим по длине IV, поэтому
+    // отправитель выбирает его сам (app.crypto.cipherMode), без согласования
+    public enum Mode {
+        CBC, GCM;
+
+        public static Mode of(String name) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) return mode;
+            }
+            throw new IllegalArgumentException("Неизвестный режим шифрования: " + name + " (ожидается CBC или GCM)");
+        }
+    }
+
+    private static final String AES_CBC = "AES/CBC/PKCS5Padding";
+    private static final String AES_GCM = "AES/GCM/NoPadding";
+    private static final int CBC_IV_LENGTH = 16; // AES block size
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    // Один SecureRandom на процесс: создание и сидирование нового на каждый IV дороже самого AES
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // GCM nonce - 96 случайных бит: по билетам сессий один ключ используют разные подключения и процессы,
+    // и счетчик, общий для всех них, вести негде. Вероятность повтора nonce для n сообщений ~ n^2 / 2^97,
+    // поэтому число сообщений на ключ ограничено (NIST SP 800-38D, 8.3): до 2^32 она ниже 2^-32
+    public static final long GCM_MESSAGES_PER_KEY = 1L << 32;
+    // Сообщения GCM, зашифрованные каждым ключом (с учетом других процессов, см. ClientSessionCache)
+    private static final Map<SecretKey, AtomicLong> GCM_USAGE = Collections.synchronizedMap(new WeakHashMap<>());
+    // Cipher.getInstance каждый раз ищет провайдера; Cipher не потокобезопасен - кэш на поток
+    private static final ThreadLocal<Map<String, Cipher>> CIPHERS = ThreadLocal.withInitial(HashMap::new);
 
     // 1. Генерация пары RSA (для сервера) - 2048 бит
     public static KeyPair generateRSAKeys() throws Exception {
         KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
-        kpg.initialize(2048);
+        kpg.initialize(2048, RANDOM);
         return kpg.generateKeyPair();
     }
 
     // 2. Генерация сеансового ключа AES (для клиента) - 256 бит
     public static SecretKey generateAESKey() throws Exception {
         KeyGenerator keyGen = KeyGenerator.getInstance("AES");
-        keyGen.init(256);
+        keyGen.init(256, RANDOM);
         return keyGen.generateKey();
     }
 
     // 3. Шифрование AES ключа с помощью RSA (чтобы передать его серверу)
     public static byte[] wrapAESKey(SecretKey aesKey, PublicKey publicRsaKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
-        cipher.init(Cipher.WRAP_MODE, publicRsaKey);
+        Cipher cipher = cipher("RSA");
+        cipher.init(Cipher.WRAP_MODE, publicRsaKey, RANDOM);
         return cipher.wrap(aesKey);
     }
 
     // 4. Расшифровка AES ключа (на сервере)
     public static SecretKey unwrapAESKey(byte[] wrappedKey, PrivateKey privateRsaKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA");
+        Cipher cipher = cipher("RSA");
         cipher.init(Cipher.UNWRAP_MODE, privateRsaKey);
         return (SecretKey) cipher.unwrap(wrappedKey, "AES", Cipher.SECRET_KEY);
     }
 
-    // 5. Шифрование данных (AES + случайный IV)
+    // 5. Шифрование данных (AES + IV). Режим определяется длиной IV: 12 байт - GCM, 16 - CBC
     public static byte[] encryptData(byte[] data, SecretKey key, byte[] iv) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
-        cipher.init(Cipher.ENCRYPT_MODE, key, ivSpec);
-        return cipher.doFinal(data);
+        countMessage(key, iv);
+        return init(Cipher.ENCRYPT_MODE, key, iv).doFinal(data);
     }
 
     // 6. Дешифрование данных
     public static byte[] decryptData(byte[] encryptedData, SecretKey key, byte[] iv) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
-        cipher.init(Cipher.DECRYPT_MODE, key, ivSpec);
-        return cipher.doFinal(encryptedData);
+        return init(Cipher.DECRYPT_MODE, key, iv).doFinal(encryptedData);
+    }
+
+    // 5a. Шифрование из буфера в буфер без промежуточных byte[]; возвращает число записанных байт
+    public static int encrypt(ByteBuffer input, ByteBuffer output, SecretKey key, byte[] iv) throws Exception {
+        countMessage(key, iv);
+        return init(Cipher.ENCRYPT_MODE, key, iv).doFinal(input, output);
     }
 
-    // 7. Генерация уникального IV для каждого сообщения
-    public static byte[] generateIV() {
-        byte[] iv = new byte[16]; // AES block size
-        new SecureRandom().nextBytes(iv);
+    // 6a. Дешифрование из буфера в буфер
+    public static int decrypt(ByteBuffer input, ByteBuffer output, SecretKey key, byte[] iv) throws Exception {
+        return init(Cipher.DECRYPT_MODE, key, iv).doFinal(input, output);
+    }
+
+    // Верхняя граница размера результата для буферного API (padding CBC или тег GCM)
+    public static int maxOutputSize(int inputLength) {
+        return inputLength + 16;
+    }
+
+    // 7. Генерация уникального IV для каждого сообщения в заданном режиме
+    public static byte[] generateIV(Mode mode) {
+        byte[] iv = new byte[mode == Mode.GCM ? GCM_IV_LENGTH : CBC_IV_LENGTH];
+        RANDOM.nextBytes(iv);
         return iv;
     }
-}
\ No newline at end of file
+
+    // Число сообщений GCM, зашифрованных ключом
+    public static long gcmMessages(SecretKey key) {
+        return usage(key).get();
+    }
+
+    // Ключ уже использовали другие процессы (сессия по билету): их сообщения тоже идут в лимит
+    public static void addGcmMessages(SecretKey key, long messages) {
+        usage(key).addAndGet(messages);
+    }
+
+    private static AtomicLong usage(SecretKey key) {
+        return GCM_USAGE.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    // Лимит исчерпан - шифровать этим ключом дальше нельзя, нужен новый handshake
+    private static void countMessage(SecretKey key, byte[] iv) throws GeneralSecurityException {
+        if (iv.length != GCM_IV_LENGTH) return;
+        if (usage(key).incrementAndGet() > GCM_MESSAGES_PER_KEY) {
+            throw new GeneralSecurityException("Ключ сессии исчерпал лимит сообщений GCM (" + GCM_MESSAGES_PER_KEY
+                    + "), нужен новый handshake");
+        }
+    }
+
+    public static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Cipher init(int mode, SecretKey key, byte[] iv) throws GeneralSecurityException {
+        if (iv.length == GCM_IV_LENGTH) {
+            Cipher cipher = cipher(AES_GCM);
+            cipher.init(mode, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            return cipher;
+        }
+        Cipher cipher = cipher(AES_CBC);
+        cipher.init(mode, key, new IvParameterSpec(iv));
+        return cipher;
+    }
+
+    private static Cipher cipher(String transformation) throws GeneralSecurityException {
+        Map<String, Cipher> cache = CIPHERS.get();
+        Cipher cipher = cache.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            cache.put(transformation, cipher);
+        }
+        return cipher;
+    }
+}
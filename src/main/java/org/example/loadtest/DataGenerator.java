@@ -0,0 +1,159 @@
+package org.example.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Генератор синтетических строк raw_flights для нагрузочных тестов.
+// Кардинальность как в жизни: десяток авиакомпаний, несколько десятков аэропортов и моделей,
+// сотни рейсов у каждой компании и много пассажиров (по умолчанию - четверть числа строк).
+// Популярные рейсы встречаются чаще (квадратичный перекос), имя пассажира привязано к паспорту.
+//
+// Запуск: DataGenerator <файл.sqlite> <строк> [пассажиров] [seed]
+// Строки дописываются в raw_flights (таблица создается при отсутствии).
+public class DataGenerator {
+    private static final int INSERT_BATCH = 10_000;
+    private static final int COMMIT_EVERY = 200_000;
+
+    private static final String[][] AIRLINES = {
+            {"SU", "Aeroflot"}, {"S7", "S7 Airlines"}, {"U6", "Ural Airlines"}, {"DP", "Pobeda"},
+            {"UT", "UTair"}, {"FV", "Rossiya"}, {"N4", "Nordwind"}, {"5N", "Smartavia"},
+            {"YC", "Yamal"}, {"ZF", "Azur Air"}, {"R3", "Yakutia"}, {"WZ", "Red Wings"}
+    };
+    private static final String[][] AIRPORTS = {
+            {"Moscow", "SVO"}, {"Moscow", "DME"}, {"Moscow", "VKO"}, {"St. Petersburg", "LED"},
+            {"Novosibirsk", "OVB"}, {"Yekaterinburg", "SVX"}, {"Kazan", "KZN"}, {"Sochi", "AER"},
+            {"Krasnodar", "KRR"}, {"Samara", "KUF"}, {"Ufa", "UFA"}, {"Rostov-on-Don", "ROV"},
+            {"Kaliningrad", "KGD"}, {"Krasnoyarsk", "KJA"}, {"Irkutsk", "IKT"}, {"Vladivostok", "VVO"},
+            {"Khabarovsk", "KHV"}, {"Yakutsk", "YKS"}, {"Murmansk", "MMK"}, {"Arkhangelsk", "ARH"},
+            {"Perm", "PEE"}, {"Omsk", "OMS"}, {"Tyumen", "TJM"}, {"Chelyabinsk", "CEK"},
+            {"Volgograd", "VOG"}, {"Mineralnye Vody", "MRV"}, {"Makhachkala", "MCX"}, {"Barnaul", "BAX"},
+            {"Tomsk", "TOF"}, {"Surgut", "SGC"}, {"Magadan", "GDX"}, {"Petropavlovsk-Kamchatsky", "PKC"}
+    };
+    private static final String[] AIRCRAFT = {
+            "Airbus A319", "Airbus A320", "Airbus A320neo", "Airbus A321", "Airbus A330-300",
+            "Boeing 737-800", "Boeing 737 MAX 8", "Boeing 777-300ER", "Sukhoi Superjet 100",
+            "Embraer E170", "Bombardier CRJ200", "ATR 72", "Irkut MC-21"
+    };
+    private static final String[] MALE_FIRST = {
+            "Ivan", "Petr", "Sergey", "Alexey", "Dmitry", "Andrey", "Mikhail", "Nikolay", "Pavel", "Artem",
+            "Maxim", "Roman", "Egor", "Kirill", "Oleg", "Vladimir", "Yuri", "Denis", "Anton", "Igor"
+    };
+    private static final String[] FEMALE_FIRST = {
+            "Anna", "Maria", "Elena", "Olga", "Natalia", "Tatiana", "Irina", "Svetlana", "Ekaterina", "Daria",
+            "Anastasia", "Polina", "Sofia", "Ksenia", "Yulia", "Victoria", "Alina", "Marina", "Vera", "Galina"
+    };
+    private static final String[] LAST = {
+            "Ivanov", "Petrov", "Smirnov", "Kuznetsov", "Popov", "Vasiliev", "Sokolov", "Mikhailov", "Novikov",
+            "Fedorov", "Morozov", "Volkov", "Alekseev", "Lebedev", "Semenov", "Egorov", "Pavlov", "Kozlov",
+            "Stepanov", "Nikolaev", "Orlov", "Andreev", "Makarov", "Nikitin", "Zakharov", "Zaitsev", "Soloviev",
+            "Borisov", "Yakovlev", "Grigoriev", "Romanov", "Vorobiev", "Sergeev", "Kuzmin", "Frolov", "Belov"
+    };
+
+    private static final String DDL = "CREATE TABLE IF NOT EXISTS raw_flights (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, flight_no TEXT, airline_name TEXT, aircraft_model TEXT, " +
+            "dep_city TEXT, dep_code TEXT, arr_city TEXT, arr_code TEXT, passenger_name TEXT, passport_no TEXT, " +
+            "flight_date TEXT)";
+    private static final String INSERT = "INSERT INTO raw_flights (flight_no, airline_name, aircraft_model, " +
+            "dep_city, dep_code, arr_city, arr_code, passenger_name, passport_no, flight_date) VALUES (?,?,?,?,?,?,?,?,?,?)";
+
+    // Рейс компании: номер, маршрут и самолет постоянны
+    private record Route(String flightNo, String airline, String aircraft, String[] from, String[] to) {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Использование: DataGenerator <файл.sqlite> <строк> [пассажиров] [seed]");
+            System.exit(2);
+        }
+        String path = args[0];
+        long rows = Long.parseLong(args[1]);
+        long passengers = args.length > 2 ? Long.parseLong(args[2]) : Math.max(1, rows / 4);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Route> routes = routes(random);
+        System.out.println("Генерация " + rows + " строк: рейсов " + routes.size() + ", пассажиров " + passengers
+                + ", файл " + path);
+        generate("jdbc:sqlite:" + path, rows, passengers, routes, random);
+    }
+
+    private static List<Route> routes(SplittableRandom random) {
+        List<Route> routes = new ArrayList<>();
+        for (String[] airline : AIRLINES) {
+            int count = 50 + random.nextInt(250);
+            for (int i = 0; i < count; i++) {
+                String[] from = AIRPORTS[random.nextInt(AIRPORTS.length)];
+                String[] to;
+                do {
+                    to = AIRPORTS[random.nextInt(AIRPORTS.length)];
+                } while (to[0].equals(from[0]));
+                routes.add(new Route(airline[0] + "-" + (100 + i), airline[1], AIRCRAFT[random.nextInt(AIRCRAFT.length)], from, to));
+            }
+        }
+        return routes;
+    }
+
+    private static void generate(String url, long rows, long passengers, List<Route> routes, SplittableRandom random)
+            throws SQLException {
+        LocalDate firstDate = LocalDate.of(2025, 1, 1);
+        long started = System.nanoTime();
+        try (Connection conn = DriverManager.getConnection(url)) {
+            try (Statement st = conn.createStatement()) {
+                st.execute(DDL);
+                // Файл одноразовый: журнал и fsync только замедляют загрузку
+                st.execute("PRAGMA journal_mode = OFF");
+                st.execute("PRAGMA synchronous = OFF");
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement insert = conn.prepareStatement(INSERT)) {
+                for (long n = 1; n <= rows; n++) {
+                    // Квадратичный перекос: первые рейсы списка - самые загруженные
+                    double r = random.nextDouble();
+                    Route route = routes.get((int) (r * r * routes.size()));
+                    long passenger = random.nextLong(passengers);
+
+                    insert.setString(1, route.flightNo());
+                    insert.setString(2, route.airline());
+                    insert.setString(3, route.aircraft());
+                    insert.setString(4, route.from()[0]);
+                    insert.setString(5, route.from()[1]);
+                    insert.setString(6, route.to()[0]);
+                    insert.setString(7, route.to()[1]);
+                    insert.setString(8, passengerName(passenger));
+                    insert.setString(9, passport(passenger));
+                    insert.setString(10, firstDate.plusDays(random.nextInt(365)).toString());
+                    insert.addBatch();
+
+                    if (n % INSERT_BATCH == 0) insert.executeBatch();
+                    if (n % COMMIT_EVERY == 0) {
+                        conn.commit();
+                        double seconds = (System.nanoTime() - started) / 1e9;
+                        System.out.printf("  %d строк, %.0f строк/с%n", n, n / seconds);
+                    }
+                }
+                insert.executeBatch();
+                conn.commit();
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("Готово: %d строк за %.1f с%n", rows, seconds);
+    }
+
+    // Имя и паспорт однозначно определяются номером пассажира
+    private static String passengerName(long passenger) {
+        boolean female = (passenger & 1) == 1;
+        String[] first = female ? FEMALE_FIRST : MALE_FIRST;
+        String last = LAST[(int) ((passenger >>> 1) % LAST.length)];
+        return (female ? last + "a" : last) + " " + first[(int) ((passenger >>> 1) / LAST.length % first.length)];
+    }
+
+    private static String passport(long passenger) {
+        return String.format("%04d %06d", 1000 + passenger / 1_000_000, passenger % 1_000_000);
+    }
+}
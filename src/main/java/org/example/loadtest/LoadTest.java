@@ -0,0 +1,289 @@
+package org.example.loadtest;
+
+import org.example.AppConfig;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Нагрузочный прогон: для каждого режима транспорта поднимает ServerApp отдельным процессом,
+// запускает K процессов клиента (ClientApp или ClientAppGRPC) и раз в секунду снимает /metrics сервера.
+// Отчет: устойчивая скорость записи (медиана посекундных скоростей), пик, время клиентов и
+// перцентили стадий сервера по гистограммам server_stage_seconds.
+//
+// Запуск: LoadTest <клиентов> [режимы через запятую, по умолчанию SOCKET,NIO,GRPC,RABBITMQ]
+// Все -Dapp.* передаются серверу и клиентам, например:
+//   -Dapp.database.sqlitePath=jdbc:sqlite:big.sqlite -Dapp.database.sink=STUB
+// Для записи в локальный PostgreSQL - sink = "POSTGRES" и postgresUrl/postgresUser/postgresPass.
+public class LoadTest {
+    private static final List<String> ALL_MODES = List.of("SOCKET", "NIO", "GRPC", "RABBITMQ");
+    private static final long STARTUP_TIMEOUT_MS = 60_000;
+    // Клиенты завершились, а запись стоит столько секунд - остаток уже не придет
+    private static final int STALL_SECONDS = 15;
+    private static final long RUN_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final Pattern SAMPLE = Pattern.compile("^(\\w+)(\\{[^}]*})?\\s+(\\S+)$");
+    private static final Pattern LE = Pattern.compile(",?le=\"([^\"]+)\"");
+
+    private record Result(String mode, long expected, long written, double seconds, double sustained, double peak,
+                          long[] clientMillis, int clientErrors, Map<String, double[]> stages) {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Использование: LoadTest <клиентов> [SOCKET,NIO,GRPC,RABBITMQ]");
+            System.exit(2);
+        }
+        int clients = Integer.parseInt(args[0]);
+        List<String> modes = args.length > 1 ? Arrays.asList(args[1].toUpperCase().split(",")) : ALL_MODES;
+
+        AppConfig cfg = AppConfig.get();
+        long rows = countRows(cfg.sqlitePath);
+        int metricsPort = cfg.metricsServerHttpPort > 0 ? cfg.metricsServerHttpPort : 9464;
+        Path logs = Files.createTempDirectory("loadtest");
+        System.out.println("Нагрузочный прогон: " + clients + " клиентов x " + rows + " строк, БД " + cfg.dbSink
+                + ", логи процессов в " + logs);
+
+        List<Result> results = new ArrayList<>();
+        for (String mode : modes) {
+            results.add(run(mode, clients, rows, cfg, metricsPort, logs));
+        }
+
+        System.out.println("\nИтог (записей в секунду):");
+        System.out.printf("  %-9s %12s %12s %12s %10s%n", "режим", "устойчиво", "пик", "в среднем", "записано");
+        for (Result r : results) {
+            System.out.printf("  %-9s %12.0f %12.0f %12.0f %10s%n", r.mode(), r.sustained(), r.peak(),
+                    r.written() / r.seconds(), r.written() + "/" + r.expected());
+        }
+    }
+
+    private static Result run(String mode, int clients, long rows, AppConfig cfg, int metricsPort, Path logs)
+            throws Exception {
+        System.out.println("\n=== " + mode + " ===");
+        List<String> props = passThroughProperties(mode, metricsPort);
+        Process server = start(props, "org.example.server.ServerApp", logs.resolve(mode + "-server.log"));
+        try {
+            awaitServer(server, cfg.socketPort, metricsPort);
+
+            String clientClass = "GRPC".equals(mode) ? "org.example.client.ClientAppGRPC" : "org.example.client.ClientApp";
+            long startedAt = System.nanoTime();
+            List<Process> running = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                // Своя контрольная точка у каждого клиента: общий файл склеил бы их выгрузки в одну
+                List<String> clientProps = new ArrayList<>(props);
+                clientProps.add("-Dapp.client.checkpointFile=" + logs.resolve(mode + "-client-" + i + ".checkpoint"));
+                running.add(start(clientProps, clientClass, logs.resolve(mode + "-client-" + i + ".log")));
+            }
+
+            long expected = rows * clients;
+            long[] clientMillis = new long[clients];
+            List<double[]> samples = new ArrayList<>(); // {секунды с начала, записано}
+            long written = 0;
+            long lastProgress = System.nanoTime();
+            while (true) {
+                Thread.sleep(1000);
+                long now = System.nanoTime();
+                for (int i = 0; i < clients; i++) {
+                    if (clientMillis[i] == 0 && !running.get(i).isAlive()) {
+                        clientMillis[i] = TimeUnit.NANOSECONDS.toMillis(now - startedAt);
+                    }
+                }
+                long current = (long) counter(scrape(metricsPort), "server_written_total");
+                if (current > written) lastProgress = now;
+                written = current;
+                samples.add(new double[]{(now - startedAt) / 1e9, written});
+
+                boolean clientsDone = Arrays.stream(clientMillis).allMatch(ms -> ms > 0);
+                if (written >= expected) break;
+                if (clientsDone && now - lastProgress > TimeUnit.SECONDS.toNanos(STALL_SECONDS)) {
+                    System.err.println("Запись остановилась на " + written + " из " + expected);
+                    break;
+                }
+                if (now - startedAt > TimeUnit.MILLISECONDS.toNanos(RUN_TIMEOUT_MS)) {
+                    System.err.println("Превышено время прогона");
+                    break;
+                }
+            }
+
+            int errors = 0;
+            for (int i = 0; i < clients; i++) {
+                Process p = running.get(i);
+                if (!p.waitFor(STALL_SECONDS, TimeUnit.SECONDS)) p.destroyForcibly().waitFor();
+                if (clientMillis[i] == 0) clientMillis[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                if (p.exitValue() != 0) errors++;
+            }
+            Result result = summarize(mode, expected, written, samples, clientMillis, errors, scrape(metricsPort));
+            print(result);
+            return result;
+        } finally {
+            server.destroy();
+            if (!server.waitFor(10, TimeUnit.SECONDS)) server.destroyForcibly();
+        }
+    }
+
+    // Настройки драйвера (-Dapp.*) плюс режим и порт метрик сервера; сводки в консоль процессов не нужны
+    private static List<String> passThroughProperties(String mode, int metricsPort) {
+        Map<String, String> props = new TreeMap<>();
+        System.getProperties().forEach((k, v) -> {
+            if (k.toString().startsWith("app.")) props.put(k.toString(), v.toString());
+        });
+        props.put("app.transportMode", mode);
+        props.put("app.metrics.serverHttpPort", String.valueOf(metricsPort));
+        props.put("app.metrics.reportSeconds", "0");
+        // Все клиенты выгружают одну базу: с фильтром дублей в БД дошла бы только одна копия
+        props.putIfAbsent("app.database.dedup.enabled", "false");
+        List<String> args = new ArrayList<>();
+        props.forEach((k, v) -> args.add("-D" + k + "=" + v));
+        return args;
+    }
+
+    private static Process start(List<String> props, String mainClass, Path log) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(props);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    // Сервер готов, когда отвечает /metrics и занят порт транспорта (для RabbitMQ - порт handshake)
+    private static void awaitServer(Process server, int port, int metricsPort) throws Exception {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!server.isAlive()) throw new IllegalStateException("Сервер завершился при запуске, код " + server.exitValue());
+            if (portInUse(port)) {
+                try {
+                    scrape(metricsPort);
+                    return;
+                } catch (IOException ignored) {
+                    // эндпоинт еще не поднят
+                }
+            }
+            Thread.sleep(200);
+        }
+        throw new IllegalStateException("Сервер не запустился за " + STARTUP_TIMEOUT_MS / 1000 + " с");
+    }
+
+    // Проверка без подключения: соединение-пробу сервер принял бы за клиента
+    private static boolean portInUse(int port) {
+        try (ServerSocket probe = new ServerSocket(port)) {
+            return false;
+        } catch (BindException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String scrape(int port) throws IOException, InterruptedException {
+        try (HttpClient http = HttpClient.newHttpClient()) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/metrics")).build();
+            return http.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        }
+    }
+
+    // Сумма всех рядов метрики
+    private static double counter(String metrics, String name) {
+        double total = 0;
+        for (String line : metrics.split("\n")) {
+            Matcher m = SAMPLE.matcher(line);
+            if (m.matches() && m.group(1).equals(name)) total += Double.parseDouble(m.group(3));
+        }
+        return total;
+    }
+
+    // p50/p95/p99 (мс) каждого ряда server_stage_seconds по накопленным корзинам гистограммы
+    private static Map<String, double[]> stagePercentiles(String metrics) {
+        Map<String, List<double[]>> buckets = new TreeMap<>(); // ряд -> {le, накопленное число}
+        for (String line : metrics.split("\n")) {
+            Matcher m = SAMPLE.matcher(line);
+            if (!m.matches() || !m.group(1).equals("server_stage_seconds_bucket")) continue;
+            Matcher le = LE.matcher(m.group(2));
+            if (!le.find()) continue;
+            String series = le.replaceFirst("").replace("{,", "{");
+            double bound = "+Inf".equals(le.group(1)) ? Double.POSITIVE_INFINITY : Double.parseDouble(le.group(1));
+            buckets.computeIfAbsent(series, s -> new ArrayList<>()).add(new double[]{bound, Double.parseDouble(m.group(3))});
+        }
+        Map<String, double[]> result = new TreeMap<>();
+        buckets.forEach((series, list) -> {
+            double count = list.get(list.size() - 1)[1];
+            if (count == 0) return;
+            result.put(series, new double[]{quantile(list, count, 0.5), quantile(list, count, 0.95), quantile(list, count, 0.99)});
+        });
+        return result;
+    }
+
+    private static double quantile(List<double[]> cumulative, double count, double q) {
+        double rank = Math.ceil(q * count);
+        for (double[] bucket : cumulative) {
+            if (bucket[1] >= rank) return bucket[0] * 1000;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static Result summarize(String mode, long expected, long written, List<double[]> samples,
+                                    long[] clientMillis, int errors, String metrics) {
+        // Посекундные скорости от первой записанной строки до последнего прироста: без разгона и хвоста
+        List<Double> rates = new ArrayList<>();
+        double first = -1;
+        double last = 0;
+        for (int i = 1; i < samples.size(); i++) {
+            double delta = samples.get(i)[1] - samples.get(i - 1)[1];
+            double elapsed = samples.get(i)[0] - samples.get(i - 1)[0];
+            if (delta > 0) {
+                if (first < 0) first = samples.get(i - 1)[0];
+                last = samples.get(i)[0];
+            }
+            if (first >= 0) rates.add(delta / elapsed);
+        }
+        // Отбрасываем нулевой хвост после последнего прироста
+        while (!rates.isEmpty() && rates.get(rates.size() - 1) == 0) rates.remove(rates.size() - 1);
+
+        double[] sorted = rates.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        double sustained = sorted.length == 0 ? 0 : sorted[sorted.length / 2];
+        double peak = sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+        double seconds = first < 0 ? 1 : Math.max(last - first, 1e-3);
+        return new Result(mode, expected, written, seconds, sustained, peak, clientMillis, errors, stagePercentiles(metrics));
+    }
+
+    private static void print(Result r) {
+        System.out.printf("Записано %d из %d за %.1f с: в среднем %.0f зап/с, устойчиво %.0f зап/с, пик %.0f зап/с%n",
+                r.written(), r.expected(), r.seconds(), r.written() / r.seconds(), r.sustained(), r.peak());
+        long[] clients = r.clientMillis().clone();
+        Arrays.sort(clients);
+        System.out.printf("Клиенты: время выгрузки p50 %.1f с, max %.1f с, код выхода не 0: %d%n",
+                clients[clients.length / 2] / 1000.0, clients[clients.length - 1] / 1000.0, r.clientErrors());
+        System.out.println("Стадии сервера, мс (p50 / p95 / p99 - верхние границы корзин):");
+        r.stages().forEach((series, q) ->
+                System.out.printf("  %-60s %9.3f %9.3f %9.3f%n", series, q[0], q[1], q[2]));
+    }
+
+    private static long countRows(String sqliteUrl) throws Exception {
+        try (Connection conn = DriverManager.getConnection(sqliteUrl);
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM raw_flights")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
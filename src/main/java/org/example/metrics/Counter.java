@@ -0,0 +1,26 @@
+package org.example.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Монотонный счетчик; LongAdder не создает конкуренции между потоками стадий
+public class Counter extends Metric implements CounterMBean {
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name, Map<String, String> labels) {
+        super(name, labels);
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    @Override
+    public long getCount() {
+        return value.sum();
+    }
+}
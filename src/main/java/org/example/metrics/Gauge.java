@@ -0,0 +1,19 @@
+package org.example.metrics;
+
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+// Текущее значение (глубина очереди, загрузка писателей), вычисляется при чтении
+public class Gauge extends Metric implements GaugeMBean {
+    private final DoubleSupplier value;
+
+    Gauge(String name, Map<String, String> labels, DoubleSupplier value) {
+        super(name, labels);
+        this.value = value;
+    }
+
+    @Override
+    public double getValue() {
+        return value.getAsDouble();
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Гистограмма длительностей с фиксированными границами корзин (1 мкс .. 10 с, шаг 1-2.5-5).
+// Запись - поиск корзины и два LongAdder, без блокировок и выделения памяти.
+// Квантили оцениваются по верхней границе корзины.
+public class Histogram extends Metric implements HistogramMBean {
+    static final long[] BOUNDS_NANOS = bounds();
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    Histogram(String name, Map<String, String> labels) {
+        super(name, labels);
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    private static long[] bounds() {
+        long[] steps = {10, 25, 50};
+        long[] result = new long[22];
+        long base = 1_000; // 1 мкс
+        for (int i = 0; i < result.length; i++) {
+            result[i] = base * steps[i % 3] / 10;
+            if (i % 3 == 2) base *= 10;
+        }
+        return result;
+    }
+
+    public void record(long nanos) {
+        int i = Arrays.binarySearch(BOUNDS_NANOS, nanos);
+        buckets[i >= 0 ? i : -i - 1].increment();
+        count.increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    // Замер от момента System.nanoTime(), взятого перед стадией
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    long[] bucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) counts[i] = buckets[i].sum();
+        return counts;
+    }
+
+    long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    // Верхняя граница корзины, в которую попадает квантиль q; для последней корзины - максимум
+    static long quantileNanos(long[] counts, double q, long max) {
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return i < BOUNDS_NANOS.length ? Math.min(BOUNDS_NANOS[i], max) : max;
+        }
+        return max;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : sumNanos.sum() / 1e6 / n;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return quantileNanos(bucketCounts(), 0.5, maxNanos.get()) / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return quantileNanos(bucketCounts(), 0.99, maxNanos.get()) / 1e6;
+    }
+}
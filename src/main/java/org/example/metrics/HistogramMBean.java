@@ -0,0 +1,13 @@
+package org.example.metrics;
+
+public interface HistogramMBean {
+    long getCount();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+}
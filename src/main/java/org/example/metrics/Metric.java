@@ -0,0 +1,29 @@
+package org.example.metrics;
+
+import java.util.Map;
+
+// Метрика реестра: имя в стиле Prometheus и метки (например, stage="decrypt", transport="nio")
+public abstract class Metric {
+    final String name;
+    final Map<String, String> labels;
+
+    Metric(String name, Map<String, String> labels) {
+        this.name = name;
+        this.labels = labels;
+    }
+
+    // name{k="v",...} - ключ в реестре и строка в текстовом формате Prometheus
+    String id() {
+        return name + labelString(labels);
+    }
+
+    static String labelString(Map<String, String> labels) {
+        if (labels.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder("{");
+        labels.forEach((k, v) -> {
+            if (sb.length() > 1) sb.append(',');
+            sb.append(k).append("=\"").append(v).append('"');
+        });
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.metrics;
+
+import org.example.AppConfig;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+// Реестр метрик процесса (клиента или сервера). Каждая метрика сразу публикуется в JMX
+// (org.example:type=Metrics,name=...,метки), start() включает сводку в консоль и HTTP /metrics.
+public final class Metrics {
+    private static final ConcurrentMap<String, Metric> REGISTRY = new ConcurrentHashMap<>();
+    private static MetricsReporter reporter;
+    private static PrometheusEndpoint endpoint;
+
+    private Metrics() {
+    }
+
+    // labels - пары имя, значение: counter("server_records_total", "transport", "nio")
+    public static Counter counter(String name, String... labels) {
+        return register(name, labels, l -> new Counter(name, l), Counter.class);
+    }
+
+    public static Histogram histogram(String name, String... labels) {
+        return register(name, labels, l -> new Histogram(name, l), Histogram.class);
+    }
+
+    public static void gauge(String name, DoubleSupplier value, String... labels) {
+        Map<String, String> l = labelMap(labels);
+        Gauge gauge = new Gauge(name, l, value);
+        // Повторная регистрация (например, новая стадия записи) заменяет источник значения
+        Metric previous = REGISTRY.put(gauge.id(), gauge);
+        if (previous != null) unregisterMBean(previous);
+        registerMBean(gauge);
+    }
+
+    // Периодическая сводка (metrics.reportSeconds) и HTTP-эндпоинт на localhost (0 - выключен)
+    public static synchronized void start(AppConfig cfg, String side, int httpPort) {
+        if (reporter == null && cfg.metricsReportSeconds > 0) {
+            reporter = new MetricsReporter(side, cfg.metricsReportSeconds);
+        }
+        if (endpoint == null && httpPort > 0) {
+            try {
+                endpoint = new PrometheusEndpoint(httpPort);
+                System.out.println("Метрики: http://localhost:" + httpPort + "/metrics");
+            } catch (Exception e) {
+                System.err.println("Метрики: HTTP порт " + httpPort + " недоступен: " + e.getMessage());
+            }
+        }
+    }
+
+    // Итоговая сводка с начала работы (клиент - по завершении выгрузки)
+    public static synchronized void printTotals(String side) {
+        MetricsReporter.printTotals(side, all());
+    }
+
+    static Collection<Metric> all() {
+        List<Metric> metrics = new ArrayList<>(REGISTRY.values());
+        // Сначала по имени: в выводе Prometheus все ряды одной метрики идут подряд
+        metrics.sort(java.util.Comparator.comparing((Metric m) -> m.name).thenComparing(Metric::id));
+        return metrics;
+    }
+
+    private static <T extends Metric> T register(String name, String[] labels, Function<Map<String, String>, T> factory,
+                                                 Class<T> type) {
+        Map<String, String> l = labelMap(labels);
+        Metric metric = REGISTRY.computeIfAbsent(name + Metric.labelString(l), id -> {
+            T created = factory.apply(l);
+            registerMBean(created);
+            return created;
+        });
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Метрика " + metric.id() + " уже зарегистрирована другого типа");
+        }
+        return type.cast(metric);
+    }
+
+    private static Map<String, String> labelMap(String[] labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Метки задаются парами имя, значение");
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < labels.length; i += 2) {
+            map.put(labels[i], labels[i + 1]);
+        }
+        return map;
+    }
+
+    private static ObjectName objectName(Metric metric) throws JMException {
+        Hashtable<String, String> props = new Hashtable<>(metric.labels);
+        props.put("type", "Metrics");
+        props.put("name", metric.name);
+        return new ObjectName("org.example", props);
+    }
+
+    private static void registerMBean(Metric metric) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metric, objectName(metric));
+        } catch (JMException e) {
+            System.err.println("Метрики: не удалось зарегистрировать " + metric.id() + " в JMX: " + e.getMessage());
+        }
+    }
+
+    private static void unregisterMBean(Metric metric) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(metric));
+        } catch (JMException ignored) {
+        }
+    }
+}
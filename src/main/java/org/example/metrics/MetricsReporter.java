@@ -0,0 +1,78 @@
+package org.example.metrics;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Сводка в консоль раз в N секунд: скорость счетчиков и гистограмм за интервал,
+// средняя и p99 длительность стадий, текущие значения gauge. Заменяет построчный вывод.
+class MetricsReporter {
+    private record Snapshot(long count, long sumNanos, long[] buckets) {}
+
+    private final String side;
+    private final long periodSeconds;
+    private final Map<String, Snapshot> previous = new HashMap<>();
+
+    MetricsReporter(String side, long periodSeconds) {
+        this.side = side;
+        this.periodSeconds = periodSeconds;
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::report, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    private void report() {
+        StringBuilder out = new StringBuilder();
+        boolean active = false;
+        for (Metric metric : Metrics.all()) {
+            if (metric instanceof Gauge gauge) {
+                out.append(String.format("%n  %s = %.2f", metric.id(), gauge.getValue()));
+                continue;
+            }
+            Snapshot now = snapshot(metric);
+            Snapshot before = previous.getOrDefault(metric.id(), new Snapshot(0, 0, new long[now.buckets().length]));
+            previous.put(metric.id(), now);
+            long count = now.count() - before.count();
+            if (count == 0) continue;
+            active = true;
+            out.append(String.format("%n  %s: %.1f/s", metric.id(), (double) count / periodSeconds));
+            if (metric instanceof Histogram) {
+                long[] delta = new long[now.buckets().length];
+                for (int i = 0; i < delta.length; i++) delta[i] = now.buckets()[i] - before.buckets()[i];
+                double mean = (now.sumNanos() - before.sumNanos()) / 1e6 / count;
+                double p99 = Histogram.quantileNanos(delta, 0.99, Long.MAX_VALUE) / 1e6;
+                out.append(String.format(", avg %.3f ms, p99 <= %.3f ms", mean, p99));
+            }
+        }
+        // Без трафика не засоряем консоль
+        if (active) {
+            System.out.println("Метрики (" + side + ", за " + periodSeconds + " с):" + out);
+        }
+    }
+
+    static void printTotals(String side, Collection<Metric> metrics) {
+        StringBuilder out = new StringBuilder();
+        for (Metric metric : metrics) {
+            if (metric instanceof Counter counter && counter.getCount() > 0) {
+                out.append(String.format("%n  %s = %d", metric.id(), counter.getCount()));
+            } else if (metric instanceof Histogram h && h.getCount() > 0) {
+                out.append(String.format("%n  %s: n=%d, avg %.3f ms, p99 <= %.3f ms, max %.3f ms",
+                        metric.id(), h.getCount(), h.getMeanMillis(), h.getP99Millis(), h.getMaxMillis()));
+            }
+        }
+        System.out.println("Метрики (" + side + ", всего):" + out);
+    }
+
+    private static Snapshot snapshot(Metric metric) {
+        if (metric instanceof Histogram h) {
+            return new Snapshot(h.getCount(), h.sumNanos(), h.bucketCounts());
+        }
+        return new Snapshot(((Counter) metric).getCount(), 0, new long[0]);
+    }
+}
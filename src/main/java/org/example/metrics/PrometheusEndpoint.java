@@ -0,0 +1,66 @@
+package org.example.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+// GET /metrics в текстовом формате Prometheus 0.0.4; слушает только loopback
+class PrometheusEndpoint {
+    private final HttpServer server;
+
+    PrometheusEndpoint(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        // Поток-диспетчер HttpServer наследует daemon от запускающего потока: эндпоинт не держит JVM
+        Thread.ofPlatform().daemon().name("metrics-http").start(server::start);
+    }
+
+    static String render() {
+        StringBuilder sb = new StringBuilder();
+        Set<String> typed = new HashSet<>();
+        for (Metric metric : Metrics.all()) {
+            if (metric instanceof Counter counter) {
+                type(sb, typed, metric.name, "counter");
+                sb.append(metric.id()).append(' ').append(counter.getCount()).append('\n');
+            } else if (metric instanceof Gauge gauge) {
+                type(sb, typed, metric.name, "gauge");
+                sb.append(metric.id()).append(' ').append(gauge.getValue()).append('\n');
+            } else if (metric instanceof Histogram h) {
+                type(sb, typed, metric.name, "histogram");
+                long[] counts = h.bucketCounts();
+                long cumulative = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    cumulative += counts[i];
+                    String le = i < Histogram.BOUNDS_NANOS.length ? Double.toString(Histogram.BOUNDS_NANOS[i] / 1e9) : "+Inf";
+                    sb.append(metric.name).append("_bucket").append(withLe(metric, le)).append(' ').append(cumulative).append('\n');
+                }
+                String labels = Metric.labelString(metric.labels);
+                sb.append(metric.name).append("_sum").append(labels).append(' ').append(h.sumNanos() / 1e9).append('\n');
+                sb.append(metric.name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void type(StringBuilder sb, Set<String> typed, String name, String type) {
+        if (typed.add(name)) sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String withLe(Metric metric, String le) {
+        String labels = Metric.labelString(metric.labels);
+        return labels.isEmpty() ? "{le=\"" + le + "\"}" : labels.substring(0, labels.length() - 1) + ",le=\"" + le + "\"}";
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.model;
+
+import java.io.Serializable;
+
+// Handshake, клиент -> сервер: либо AES ключ, обернутый ключом keyId, либо билет прошлой сессии;
+// compression - предлагаемый кодек сжатия пачек
+public record ClientHello(
+        long keyId,
+        byte[] wrappedKey,
+        String ticket,
+        String compression
+) implements Serializable {}
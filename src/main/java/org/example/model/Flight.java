@@ -2,6 +2,8 @@ package org.example.model;
 
 import java.io.Serializable;
 
+// seq - rowid строки в SQLite клиента: номер записи в выгрузке, по нему сервер подтверждает
+// сохраненное и отбрасывает повторы (0 - запись без номера)
 public record Flight(
         String flightNo,
         String airlineName,
@@ -12,5 +14,11 @@ public record Flight(
         String arrCode,
         String passengerName,
         String passportNo,
-        String flightDate
-) implements Serializable {}
+        String flightDate,
+        long seq
+) implements Serializable {
+    public Flight(String flightNo, String airlineName, String aircraftModel, String depCity, String depCode,
+                  String arrCity, String arrCode, String passengerName, String passportNo, String flightDate) {
+        this(flightNo, airlineName, aircraftModel, depCity, depCode, arrCity, arrCode, passengerName, passportNo, flightDate, 0);
+    }
+}
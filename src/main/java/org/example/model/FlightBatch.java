@@ -0,0 +1,15 @@
+package org.example.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+// Несколько рейсов в одном зашифрованном сообщении (сокет и RabbitMQ).
+// position - место пачки в возобновляемой выгрузке; null - выгрузка без контрольных точек
+public record FlightBatch(
+        List<Flight> flights,
+        StreamPosition position
+) implements Serializable {
+    public FlightBatch(List<Flight> flights) {
+        this(flights, null);
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.model;
+
+import java.io.Serializable;
+
+// Сервер -> клиент (режим SOCKET): все записи потока stream с seq <= committedSeq сохранены в БД
+public record IngestAck(
+        int stream,
+        long committedSeq
+) implements Serializable {}
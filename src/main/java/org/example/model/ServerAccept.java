@@ -0,0 +1,11 @@
+package org.example.model;
+
+import java.io.Serializable;
+
+// Handshake, сервер -> клиент: accepted=false - билет не принят, нужен полный обмен ключом;
+// compression - кодек сжатия пачек, согласованный для сессии
+public record ServerAccept(
+        boolean accepted,
+        String ticket,
+        String compression
+) implements Serializable {}
@@ -0,0 +1,10 @@
+package org.example.model;
+
+import java.io.Serializable;
+import java.security.PublicKey;
+
+// Handshake, сервер -> клиент: текущий публичный ключ RSA и его id
+public record ServerHello(
+        long keyId,
+        PublicKey publicKey
+) implements Serializable {}
@@ -0,0 +1,13 @@
+package org.example.model;
+
+import java.io.Serializable;
+
+// Положение пачки в потоке выгрузки: exportId - id выгрузки клиента, stream - номер диапазона rowid,
+// origin - seq, с которого начинается диапазон (не включительно), prevSeq - последний seq
+// предыдущей пачки потока. Рейсы пачки идут по возрастанию seq сразу после prevSeq
+public record StreamPosition(
+        String exportId,
+        int stream,
+        long origin,
+        long prevSeq
+) implements Serializable {}
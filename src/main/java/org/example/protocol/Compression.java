@@ -0,0 +1,97 @@
+package org.example.protocol;
+
+import org.example.AppConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Сжатие сериализованной пачки до шифрования (после шифрования данные не сжимаются).
+// Кодек выбирается при handshake: клиент предлагает, сервер подтверждает, неизвестный кодек -> NONE.
+public enum Compression {
+    NONE((byte) 0),
+    DEFLATE((byte) 1);
+
+    // Защита от "zip-бомбы": распакованная пачка не больше этого размера
+    private static final int MAX_INFLATED_SIZE = 64 * 1024 * 1024;
+
+    // Deflater/Inflater держат нативную память - переиспользуем на поток вместо создания на каждую пачку
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(AppConfig.get().compressionLevel));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    public final byte id;
+
+    Compression(byte id) {
+        this.id = id;
+    }
+
+    public static Compression byId(byte id) {
+        for (Compression c : values()) {
+            if (c.id == id) return c;
+        }
+        return NONE;
+    }
+
+    // null, пустая строка или неизвестное имя (старый клиент или сервер) -> без сжатия
+    public static Compression byName(String name) {
+        for (Compression c : values()) {
+            if (c.name().equalsIgnoreCase(name)) return c;
+        }
+        return NONE;
+    }
+
+    public byte[] compress(byte[] data) {
+        if (this == NONE) return data;
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] out = new byte[Math.max(64, data.length / 2)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) out = Arrays.copyOf(out, out.length * 2);
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    public byte[] decompress(byte[] data) throws IOException {
+        if (this == NONE) return data;
+        return inflate(ByteBuffer.wrap(data), data.length);
+    }
+
+    // Для буферного пути NIO: без сжатия буфер возвращается как есть
+    public ByteBuffer decompress(ByteBuffer data) throws IOException {
+        if (this == NONE) return data;
+        return ByteBuffer.wrap(inflate(data, data.remaining()));
+    }
+
+    private static byte[] inflate(ByteBuffer data, int compressedLength) throws IOException {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(data);
+        byte[] out = new byte[Math.max(256, compressedLength * 4)];
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    if (out.length >= MAX_INFLATED_SIZE) throw new IOException("Распакованная пачка больше " + MAX_INFLATED_SIZE + " байт");
+                    out = Arrays.copyOf(out, Math.min(out.length * 2, MAX_INFLATED_SIZE));
+                }
+                int n = inflater.inflate(out, length, out.length - length);
+                // Последний вызов может дочитать конец потока, не выдав ни байта (пустая пачка)
+                if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Обрезанные сжатые данные");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Поврежденные сжатые данные: " + e.getMessage(), e);
+        }
+        return Arrays.copyOf(out, length);
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.protocol;
+
+import org.example.grpc.DictEntry;
+import org.example.grpc.EncodedFlight;
+import org.example.grpc.FlightBatch;
+import org.example.model.Flight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Разбор пачек DictionaryEncoder: один декодер на соединение, пачки подаются по порядку.
+// Значения словаря приводятся к каноническим экземплярам String, общим для всего сервера:
+// ключи DimensionCache - те же объекты, поэтому поиск id справочника сравнивает ссылки, а не символы.
+public class DictionaryDecoder {
+    private static final int MAX_CANONICAL = 200_000;
+    private static final Map<String, String> CANONICAL = new ConcurrentHashMap<>();
+
+    private final Map<Integer, List<String>> scopes = new HashMap<>();
+
+    // Канонический экземпляр строки; при переполнении пула строка возвращается как есть
+    public static String canonical(String value) {
+        if (value == null) return null;
+        String known = CANONICAL.get(value);
+        if (known != null) return known;
+        if (CANONICAL.size() >= MAX_CANONICAL) return value;
+        known = CANONICAL.putIfAbsent(value, value);
+        return known != null ? known : value;
+    }
+
+    public List<Flight> decode(FlightBatch batch) throws IOException {
+        List<Flight> flights = new ArrayList<>(batch.getFlightsCount() + batch.getEncodedCount());
+        for (var d : batch.getFlightsList()) {
+            flights.add(FlightProto.fromProto(d));
+        }
+        if (batch.getEncodedCount() == 0) return flights;
+
+        int scope = batch.getDictScope();
+        List<String> dict = scope == 0 ? newDictionary() : scopes.computeIfAbsent(scope, s -> newDictionary());
+        for (DictEntry e : batch.getDictList()) {
+            // id назначаются подряд; пропуск означает потерянную или переставленную пачку
+            if (e.getId() != dict.size()) throw new IOException("Нарушен порядок словаря: ожидался id " + dict.size() + ", получен " + e.getId());
+            if (dict.size() > DictionaryEncoder.MAX_ENTRIES) throw new IOException("Словарь больше " + DictionaryEncoder.MAX_ENTRIES);
+            dict.add(canonical(e.getValue()));
+        }
+        for (EncodedFlight f : batch.getEncodedList()) {
+            flights.add(new Flight(
+                    FlightProto.orNull(f.hasFlightNo(), f.getFlightNo()),
+                    lookup(dict, f.getAirlineName()),
+                    lookup(dict, f.getAircraftModel()),
+                    lookup(dict, f.getDepCity()),
+                    lookup(dict, f.getDepCode()),
+                    lookup(dict, f.getArrCity()),
+                    lookup(dict, f.getArrCode()),
+                    FlightProto.orNull(f.hasPassengerName(), f.getPassengerName()),
+                    FlightProto.orNull(f.hasPassportNo(), f.getPassportNo()),
+                    FlightProto.orNull(f.hasFlightDate(), f.getFlightDate()),
+                    f.getSeq()
+            ));
+        }
+        return flights;
+    }
+
+    private static List<String> newDictionary() {
+        List<String> dict = new ArrayList<>();
+        dict.add(null); // id 0 - NULL
+        return dict;
+    }
+
+    private static String lookup(List<String> dict, int id) throws IOException {
+        if (id >= dict.size()) throw new IOException("Неизвестный id словаря: " + id);
+        return dict.get(id);
+    }
+}
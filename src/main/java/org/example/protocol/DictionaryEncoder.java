@@ -0,0 +1,72 @@
+package org.example.protocol;
+
+import org.example.grpc.DictEntry;
+import org.example.grpc.EncodedFlight;
+import org.example.grpc.FlightBatch;
+import org.example.model.Flight;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Словарное кодирование пачек: авиакомпании, модели, города и коды аэропортов повторяются почти
+// в каждой строке, поэтому значение передается один раз, а дальше - его id (varint).
+// scope > 0 - словарь живет между пачками (пачки одного энкодера должны доходить по порядку);
+// scope = 0 - каждая пачка самодостаточна. Не потокобезопасен: один энкодер на поток отправки.
+public class DictionaryEncoder {
+    // Верхняя граница словаря; после нее пачки идут обычными FlightData
+    public static final int MAX_ENTRIES = 1 << 16;
+
+    private final int scope;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    public DictionaryEncoder(int scope) {
+        this.scope = scope;
+    }
+
+    public byte[] encode(List<Flight> batch) {
+        return encode(new org.example.model.FlightBatch(batch));
+    }
+
+    public byte[] encode(org.example.model.FlightBatch batch) {
+        if (scope == 0) ids.clear();
+        int before = ids.size();
+        FlightBatch.Builder builder = FlightBatch.newBuilder().setDictScope(scope);
+        FlightProto.setPosition(builder, batch.position());
+        for (Flight f : batch.flights()) {
+            if (ids.size() + 6 > MAX_ENTRIES) {
+                // Пачка, не уместившаяся в словарь, целиком уходит обычными FlightData: декодер выдает
+                // flights раньше encoded, и смешанная пачка потеряла бы порядок строк. Значения этой
+                // пачки до получателя не дошли и из словаря убираются
+                ids.values().removeIf(id -> id > before);
+                return FlightProto.encodeBatch(batch);
+            }
+            EncodedFlight.Builder e = EncodedFlight.newBuilder()
+                    .setAirlineName(id(f.airlineName(), builder))
+                    .setAircraftModel(id(f.aircraftModel(), builder))
+                    .setDepCity(id(f.depCity(), builder))
+                    .setDepCode(id(f.depCode(), builder))
+                    .setArrCity(id(f.arrCity(), builder))
+                    .setArrCode(id(f.arrCode(), builder))
+                    .setSeq(f.seq());
+            FlightProto.set(e::setFlightNo, f.flightNo());
+            FlightProto.set(e::setPassengerName, f.passengerName());
+            FlightProto.set(e::setPassportNo, f.passportNo());
+            FlightProto.set(e::setFlightDate, f.flightDate());
+            builder.addEncoded(e);
+        }
+        return builder.build().toByteArray();
+    }
+
+    // id 0 зарезервирован под NULL; пустая строка получает свой id
+    private int id(String value, FlightBatch.Builder builder) {
+        if (value == null) return 0;
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = ids.size() + 1;
+            ids.put(value, id);
+            builder.addDict(DictEntry.newBuilder().setId(id).setValue(value));
+        }
+        return id;
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.protocol;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.example.grpc.FlightBatch;
+import org.example.grpc.FlightData;
+import org.example.grpc.StreamPosition;
+import org.example.model.Flight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Преобразование рейсов в компактный protobuf (FlightData / FlightBatch) и обратно
+public final class FlightProto {
+    private FlightProto() {
+    }
+
+    public static byte[] encodeBatch(List<Flight> batch) {
+        return encodeBatch(new org.example.model.FlightBatch(batch));
+    }
+
+    public static byte[] encodeBatch(org.example.model.FlightBatch batch) {
+        FlightBatch.Builder builder = FlightBatch.newBuilder();
+        for (Flight f : batch.flights()) {
+            builder.addFlights(toProto(f));
+        }
+        setPosition(builder, batch.position());
+        return builder.build().toByteArray();
+    }
+
+    public static List<Flight> decodeBatch(byte[] bytes) throws InvalidProtocolBufferException {
+        return fromProto(FlightBatch.parseFrom(bytes));
+    }
+
+    public static List<Flight> decodeBatch(ByteBuffer bytes) throws InvalidProtocolBufferException {
+        return fromProto(FlightBatch.parseFrom(bytes));
+    }
+
+    // Пачка, которая может быть закодирована словарем (см. DictionaryEncoder)
+    public static List<Flight> decodeBatch(ByteBuffer bytes, DictionaryDecoder dictionary) throws IOException {
+        return dictionary.decode(FlightBatch.parseFrom(bytes));
+    }
+
+    public static List<Flight> decodeBatch(byte[] bytes, DictionaryDecoder dictionary) throws IOException {
+        return dictionary.decode(FlightBatch.parseFrom(bytes));
+    }
+
+    // Пачка вместе с положением в потоке выгрузки (возобновляемая выгрузка)
+    public static org.example.model.FlightBatch decodeFlightBatch(ByteBuffer bytes, DictionaryDecoder dictionary) throws IOException {
+        return withPosition(FlightBatch.parseFrom(bytes), dictionary);
+    }
+
+    public static org.example.model.FlightBatch decodeFlightBatch(byte[] bytes, DictionaryDecoder dictionary) throws IOException {
+        return withPosition(FlightBatch.parseFrom(bytes), dictionary);
+    }
+
+    private static org.example.model.FlightBatch withPosition(FlightBatch batch, DictionaryDecoder dictionary) throws IOException {
+        org.example.model.StreamPosition position = null;
+        if (batch.hasPosition()) {
+            StreamPosition p = batch.getPosition();
+            position = new org.example.model.StreamPosition(p.getExportId(), p.getStream(), p.getOrigin(), p.getPrevSeq());
+        }
+        return new org.example.model.FlightBatch(dictionary.decode(batch), position);
+    }
+
+    static void setPosition(FlightBatch.Builder builder, org.example.model.StreamPosition position) {
+        if (position == null) return;
+        builder.setPosition(StreamPosition.newBuilder()
+                .setExportId(position.exportId())
+                .setStream(position.stream())
+                .setOrigin(position.origin())
+                .setPrevSeq(position.prevSeq()));
+    }
+
+    private static List<Flight> fromProto(FlightBatch batch) {
+        List<Flight> flights = new ArrayList<>(batch.getFlightsCount());
+        for (FlightData d : batch.getFlightsList()) {
+            flights.add(fromProto(d));
+        }
+        return flights;
+    }
+
+    // Поля NULL не передаются (optional в service.proto) и читаются обратно как null
+    public static FlightData toProto(Flight f) {
+        FlightData.Builder b = FlightData.newBuilder().setSeq(f.seq());
+        set(b::setFlightNo, f.flightNo());
+        set(b::setAirlineName, f.airlineName());
+        set(b::setAircraftModel, f.aircraftModel());
+        set(b::setDepCity, f.depCity());
+        set(b::setDepCode, f.depCode());
+        set(b::setArrCity, f.arrCity());
+        set(b::setArrCode, f.arrCode());
+        set(b::setPassengerName, f.passengerName());
+        set(b::setPassportNo, f.passportNo());
+        set(b::setFlightDate, f.flightDate());
+        return b.build();
+    }
+
+    public static Flight fromProto(FlightData d) {
+        return new Flight(
+                orNull(d.hasFlightNo(), d.getFlightNo()),
+                orNull(d.hasAirlineName(), d.getAirlineName()),
+                orNull(d.hasAircraftModel(), d.getAircraftModel()),
+                orNull(d.hasDepCity(), d.getDepCity()),
+                orNull(d.hasDepCode(), d.getDepCode()),
+                orNull(d.hasArrCity(), d.getArrCity()),
+                orNull(d.hasArrCode(), d.getArrCode()),
+                orNull(d.hasPassengerName(), d.getPassengerName()),
+                orNull(d.hasPassportNo(), d.getPassportNo()),
+                orNull(d.hasFlightDate(), d.getFlightDate()),
+                d.getSeq()
+        );
+    }
+
+    static void set(Consumer<String> setter, String value) {
+        if (value != null) setter.accept(value);
+    }
+
+    static String orNull(boolean present, String value) {
+        return present ? value : null;
+    }
+}
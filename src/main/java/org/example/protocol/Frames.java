@@ -0,0 +1,91 @@
+package org.example.protocol;
+
+import org.example.model.EncryptedMessage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Бинарный протокол сокета (режим NIO): кадр = [int длина тела][byte тип][тело]
+public final class Frames {
+    public static final byte PUBLIC_KEY = 1;   // сервер -> клиент: [long id ключа][X.509 публичного ключа RSA]
+    public static final byte SESSION_KEY = 2;  // клиент -> сервер: [long id ключа][byte кодек сжатия][AES ключ, обернутый RSA]
+    public static final byte DATA = 3;         // клиент -> сервер: [byte длина IV][IV][шифротекст FlightBatch, сжатого кодеком сессии]
+    public static final byte RESUME = 4;       // клиент -> сервер: билет прошлой сессии (UTF-8)
+    public static final byte TICKET = 5;       // сервер -> клиент: ключ принят, [byte кодек сжатия][билет сессии (UTF-8)]
+    public static final byte RESUME_REJECTED = 6; // сервер -> клиент: билет неизвестен, нужен SESSION_KEY
+    public static final byte ACK = 7;          // сервер -> клиент: [int поток][long seq] - записи потока до seq сохранены
+
+    public static final int HEADER_SIZE = 5;
+    public static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+    public record Frame(byte type, byte[] body) {}
+
+    private Frames() {
+    }
+
+    public static void write(DataOutputStream out, byte type, byte[] body) throws IOException {
+        out.writeInt(body.length);
+        out.writeByte(type);
+        out.write(body);
+    }
+
+    public static void writeData(DataOutputStream out, EncryptedMessage msg) throws IOException {
+        out.writeInt(1 + msg.iv().length + msg.encryptedData().length);
+        out.writeByte(DATA);
+        out.writeByte(msg.iv().length);
+        out.write(msg.iv());
+        out.write(msg.encryptedData());
+    }
+
+    public static Frame read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        checkLength(length);
+        byte type = in.readByte();
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return new Frame(type, body);
+    }
+
+    // Готовый к записи в канал кадр
+    public static ByteBuffer encode(byte type, byte[] body) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        buf.putInt(body.length).put(type).put(body);
+        return buf.flip();
+    }
+
+    public static byte[] sessionKeyBody(long keyId, Compression compression, byte[] wrappedKey) {
+        return ByteBuffer.allocate(Long.BYTES + 1 + wrappedKey.length).putLong(keyId).put(compression.id).put(wrappedKey).array();
+    }
+
+    public static byte[] withKeyId(long keyId, byte[] body) {
+        return ByteBuffer.allocate(Long.BYTES + body.length).putLong(keyId).put(body).array();
+    }
+
+    public static byte[] ticketBody(Compression compression, String ticket) {
+        byte[] bytes = ticket.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + bytes.length).put(compression.id).put(bytes).array();
+    }
+
+    public static byte[] ackBody(int stream, long committedSeq) {
+        return ByteBuffer.allocate(Integer.BYTES + Long.BYTES).putInt(stream).putLong(committedSeq).array();
+    }
+
+    // Читает IV из тела кадра данных; буфер остается на начале шифротекста
+    public static byte[] readIv(ByteBuffer body) throws IOException {
+        if (!body.hasRemaining()) throw new IOException("Пустой кадр данных");
+        int ivLength = body.get() & 0xFF;
+        if (body.remaining() < ivLength) throw new IOException("Кадр данных короче IV");
+        byte[] iv = new byte[ivLength];
+        body.get(iv);
+        return iv;
+    }
+
+    public static void checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_BODY_SIZE) {
+            throw new IOException("Недопустимая длина кадра: " + length);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.protocol;
+
+import org.example.model.Flight;
+
+// Разбиение рейсов на партиции по номеру паспорта: все рейсы пассажира попадают
+// в одну партицию и обрабатываются по порядку. Одна функция для клиента и сервера.
+public final class Partitions {
+    private Partitions() {
+    }
+
+    public static int of(Flight flight, int partitions) {
+        if (partitions <= 1) return 0;
+        String key = flight.passportNo() != null ? flight.passportNo() : "";
+        return Math.floorMod(key.hashCode(), partitions);
+    }
+
+    // Одна партиция - прежняя очередь без суффикса
+    public static String queueName(String base, int partition, int partitions) {
+        return partitions <= 1 ? base : base + "." + partition;
+    }
+}
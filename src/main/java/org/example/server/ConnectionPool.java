@@ -0,0 +1,58 @@
+package org.example.server;
+
+import org.example.AppConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Простой пул соединений с PostgreSQL фиксированного размера
+public class ConnectionPool implements AutoCloseable {
+    private final List<Connection> all = new ArrayList<>();
+    private final BlockingQueue<Connection> idle;
+
+    public ConnectionPool(AppConfig cfg, int size) throws SQLException {
+        this.idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            Connection c = open(cfg);
+            all.add(c);
+            idle.add(c);
+        }
+    }
+
+    public static Connection open(AppConfig cfg) throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("user", cfg.pgUser);
+        props.setProperty("password", cfg.pgPass);
+        // Драйвер склеивает пачку INSERT-ов в многострочный INSERT
+        props.setProperty("reWriteBatchedInserts", "true");
+        return DriverManager.getConnection(cfg.pgUrl, props);
+    }
+
+    public Connection take() throws InterruptedException {
+        return idle.take();
+    }
+
+    public void release(Connection c) {
+        idle.offer(c);
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    @Override
+    public void close() {
+        for (Connection c : all) {
+            try {
+                c.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.server;
+
+import org.example.model.Flight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Рейсы, которые БД отклоняет при каждой попытке: строка TSV на рейс - метка источника и поля рейса.
+// Запись дописывается с fsync; файл открывается при первой строке
+public class DeadLetterFile implements AutoCloseable {
+    private final Path file;
+    private FileChannel channel;
+
+    public DeadLetterFile(Path file) {
+        this.file = file;
+    }
+
+    public Path path() {
+        return file;
+    }
+
+    public void append(String source, List<Flight> flights) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Flight f : flights) {
+            lines.append(source);
+            for (String field : new String[]{f.flightNo(), f.airlineName(), f.aircraftModel(), f.depCity(), f.depCode(),
+                    f.arrCity(), f.arrCode(), f.passengerName(), f.passportNo(), f.flightDate(), String.valueOf(f.seq())}) {
+                lines.append('\t').append(tsv(field));
+            }
+            lines.append('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            if (channel == null) {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+    }
+
+    // NULL - \N, табуляция, перевод строки и обратная косая черта экранируются
+    static String tsv(String value) {
+        if (value == null) return "\\N";
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+}
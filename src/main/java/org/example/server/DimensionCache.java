@@ -0,0 +1,100 @@
+package org.example.server;
+
+import org.example.protocol.DictionaryDecoder;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Кэш суррогатных ключей справочников: имя/модель/код/паспорт -> id
+public class DimensionCache {
+
+    public enum Dimension { AIRLINE, AIRCRAFT, AIRPORT, PASSENGER }
+
+    private final Map<Dimension, Map<String, Integer>> maps = new ConcurrentHashMap<>();
+    private final AtomicLong[] hits = new AtomicLong[Dimension.values().length];
+    private final AtomicLong[] misses = new AtomicLong[Dimension.values().length];
+    private final int passengerCapacity;
+
+    public DimensionCache(int passengerCapacity) {
+        this.passengerCapacity = passengerCapacity;
+        // Авиакомпаний, самолетов и аэропортов мало - храним все
+        maps.put(Dimension.AIRLINE, new ConcurrentHashMap<>());
+        maps.put(Dimension.AIRCRAFT, new ConcurrentHashMap<>());
+        maps.put(Dimension.AIRPORT, new ConcurrentHashMap<>());
+        // Пассажиров много - LRU с ограничением по размеру
+        maps.put(Dimension.PASSENGER, Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > DimensionCache.this.passengerCapacity;
+            }
+        }));
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new AtomicLong();
+            misses[i] = new AtomicLong();
+        }
+    }
+
+    public Integer get(Dimension dim, String key) {
+        Integer id = key != null ? maps.get(dim).get(key) : null;
+        (id != null ? hits : misses)[dim.ordinal()].incrementAndGet();
+        return id;
+    }
+
+    // Кладем только то, что уже закоммичено: после отката id были бы недействительны
+    public void putAll(Dimension dim, Map<String, Integer> entries) {
+        Map<String, Integer> target = maps.get(dim);
+        entries.forEach((key, id) -> {
+            if (key != null) target.put(keyOf(dim, key), id);
+        });
+    }
+
+    // Прогрев из таблиц при старте сервера
+    public void warmUp(Connection conn) throws SQLException {
+        load(conn, Dimension.AIRLINE, "SELECT name, id FROM airlines");
+        load(conn, Dimension.AIRCRAFT, "SELECT model, id FROM aircrafts");
+        load(conn, Dimension.AIRPORT, "SELECT code, 0 FROM airports");
+        load(conn, Dimension.PASSENGER, "SELECT passport_no, id FROM passengers ORDER BY id DESC LIMIT " + passengerCapacity);
+        System.out.println("Кэш справочников прогрет: " + sizes());
+    }
+
+    // Ключи справочников - канонические строки, те же экземпляры, что выдает DictionaryDecoder:
+    // для рейсов из словарных пачек equals в поиске срабатывает на сравнении ссылок
+    private static String keyOf(Dimension dim, String key) {
+        return dim == Dimension.PASSENGER ? key : DictionaryDecoder.canonical(key);
+    }
+
+    private void load(Connection conn, Dimension dim, String sql) throws SQLException {
+        Map<String, Integer> target = maps.get(dim);
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                String key = rs.getString(1);
+                if (key != null) target.put(keyOf(dim, key), rs.getInt(2));
+            }
+        }
+    }
+
+    public long hits(Dimension dim) {
+        return hits[dim.ordinal()].get();
+    }
+
+    public long misses(Dimension dim) {
+        return misses[dim.ordinal()].get();
+    }
+
+    private String sizes() {
+        StringBuilder sb = new StringBuilder();
+        for (Dimension dim : Dimension.values()) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(dim).append('=').append(maps.get(dim).size());
+        }
+        return sb.toString();
+    }
+}
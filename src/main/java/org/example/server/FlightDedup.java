@@ -0,0 +1,240 @@
+package org.example.server;
+
+import org.example.metrics.Counter;
+import org.example.metrics.Metrics;
+import org.example.model.Flight;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Фильтр дублей перед писателями: рейс с уже сохраненной тройкой (flight_no, flight_date, passport_no)
+// не доходит до INSERT. Фильтр Блума в памяти отвечает "точно нет" для новых рейсов без запроса к БД;
+// только на "возможно есть" идет один set-based запрос по индексу flights_dedup_key на всю пачку.
+// Ключи попадают в фильтр после коммита: откаченная пачка при повторе пройдет как новая.
+// Писатели шардированы по паспорту, поэтому одна тройка всегда проверяется и пишется одним писателем.
+// Фильтр - только оптимизация: если проверку выполнить не удалось, рейсы идут в запись как новые.
+public class FlightDedup {
+    // Тройки из suspects, которые уже есть в flights
+    interface Lookup {
+        Set<List<String>> stored(List<Flight> suspects) throws SQLException;
+    }
+
+    private static final Counter SKIPPED = Metrics.counter("server_dedup_skipped_total");
+    private static final Counter CHECKED = Metrics.counter("server_dedup_db_checks_total");
+    private static final Counter FALSE_POSITIVES = Metrics.counter("server_dedup_false_positives_total");
+
+    // Дата сравнивается строкой, как ее хранит фильтр: приведение присланной строки к timestamp
+    // упало бы на некорректной дате вместе со всей проверкой
+    private static final String CONFIRM =
+            "SELECT u.flight_no, u.flight_date, u.passport_no " +
+            "FROM unnest(?::text[], ?::text[], ?::text[]) AS u(flight_no, flight_date, passport_no) " +
+            "WHERE EXISTS (SELECT 1 FROM flights f JOIN passengers p ON p.id = f.passenger_id " +
+            "WHERE f.flight_no = u.flight_no AND to_char(f.date, 'YYYY-MM-DD') = u.flight_date " +
+            "AND p.passport_no = u.passport_no)";
+
+    private final AtomicLongArray bits;
+    private final long size;
+    private final int hashes;
+
+    public FlightDedup(int memoryMb, int hashes) {
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1L, (long) memoryMb * 1024 * 1024 / Long.BYTES));
+        this.bits = new AtomicLongArray(words);
+        this.size = (long) words * Long.SIZE;
+        this.hashes = Math.max(1, hashes);
+        Metrics.gauge("server_dedup_filter_fill", this::fill);
+    }
+
+    // Индекс для проверки возможных совпадений и ключи всех сохраненных рейсов в фильтр.
+    // Индекс не UNIQUE: в таблице уже могут лежать дубли, записанные до фильтра
+    public void warmUp(Connection conn) throws SQLException {
+        long started = System.nanoTime();
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE INDEX IF NOT EXISTS flights_dedup_key ON flights (flight_no, date, passenger_id)");
+        }
+        long loaded = 0;
+        // Курсор PostgreSQL (fetchSize) работает только внутри транзакции
+        conn.setAutoCommit(false);
+        try (Statement st = conn.createStatement()) {
+            st.setFetchSize(10_000);
+            try (ResultSet rs = st.executeQuery("SELECT f.flight_no, to_char(f.date, 'YYYY-MM-DD'), p.passport_no " +
+                    "FROM flights f JOIN passengers p ON p.id = f.passenger_id")) {
+                while (rs.next()) {
+                    put(rs.getString(1), rs.getString(2), rs.getString(3));
+                    loaded++;
+                }
+            }
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        System.out.printf("Фильтр дублей прогрет: %d рейсов за %.1f с, %d МБ, заполнено %.1f%%%n",
+                loaded, (System.nanoTime() - started) / 1e9, bits.length() * (long) Long.BYTES / (1024 * 1024), fill() * 100);
+    }
+
+    // Проверка на соединении писателя
+    public Checker checker(Connection conn) throws SQLException {
+        PreparedStatement confirm = conn.prepareStatement(CONFIRM);
+        return new Checker(suspects -> stored(conn, confirm, suspects));
+    }
+
+    Checker checker(Lookup lookup) {
+        return new Checker(lookup);
+    }
+
+    // Один запрос CONFIRM на всех кандидатов пачки
+    private static Set<List<String>> stored(Connection conn, PreparedStatement confirm, List<Flight> suspects)
+            throws SQLException {
+        Set<List<String>> stored = new HashSet<>();
+        String[] flightNos = new String[suspects.size()];
+        String[] dates = new String[suspects.size()];
+        String[] passports = new String[suspects.size()];
+        for (int i = 0; i < suspects.size(); i++) {
+            flightNos[i] = suspects.get(i).flightNo();
+            dates[i] = suspects.get(i).flightDate();
+            passports[i] = suspects.get(i).passportNo();
+        }
+        Array a1 = conn.createArrayOf("text", flightNos);
+        Array a2 = conn.createArrayOf("text", dates);
+        Array a3 = conn.createArrayOf("text", passports);
+        try {
+            confirm.setArray(1, a1);
+            confirm.setArray(2, a2);
+            confirm.setArray(3, a3);
+            try (ResultSet rs = confirm.executeQuery()) {
+                while (rs.next()) {
+                    stored.add(List.of(key(rs.getString(1)), key(rs.getString(2)), key(rs.getString(3))));
+                }
+            }
+        } finally {
+            a1.free();
+            a2.free();
+            a3.free();
+        }
+        return stored;
+    }
+
+    static List<String> keyOf(Flight f) {
+        return List.of(key(f.flightNo()), key(f.flightDate()), key(f.passportNo()));
+    }
+
+    // List.of не принимает null
+    private static String key(String value) {
+        return value != null ? value : "";
+    }
+
+    private boolean mightContain(String flightNo, String flightDate, String passportNo) {
+        long h1 = hash(flightNo, flightDate, passportNo);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, size);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private void put(String flightNo, String flightDate, String passportNo) {
+        long h1 = hash(flightNo, flightDate, passportNo);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, size);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    // FNV-1a по трем полям с разделителем, затем перемешивание: младшие биты должны быть случайными
+    private static long hash(String flightNo, String flightDate, String passportNo) {
+        long h = 0xcbf29ce484222325L;
+        h = fnv(h, flightNo);
+        h = fnv(h, flightDate);
+        h = fnv(h, passportNo);
+        return mix(h);
+    }
+
+    private static long fnv(long h, String s) {
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return (h ^ 0xff) * 0x100000001b3L;
+    }
+
+    // Финализатор splitmix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Доля установленных бит (по каждому 64-му слову); ближе к 1 - больше ложных срабатываний и запросов к БД
+    public double fill() {
+        long set = 0;
+        for (int i = 0; i < bits.length(); i += 64) {
+            set += Long.bitCount(bits.get(i));
+        }
+        long sampled = (bits.length() + 63L) / 64 * Long.SIZE;
+        return (double) set / sampled;
+    }
+
+    // Проверка пачек одного писателя: подготовленный запрос на его соединении
+    public final class Checker {
+        private final Lookup lookup;
+
+        private Checker(Lookup lookup) {
+            this.lookup = lookup;
+        }
+
+        // Рейсы пачки без уже сохраненных и без повторов внутри самой пачки
+        public List<Flight> filter(List<Flight> batch) {
+            List<Flight> fresh = new ArrayList<>(batch.size());
+            List<Flight> suspects = new ArrayList<>();
+            Set<List<String>> seen = new HashSet<>();
+            for (Flight f : batch) {
+                if (!seen.add(keyOf(f))) continue;
+                if (mightContain(f.flightNo(), f.flightDate(), f.passportNo())) {
+                    suspects.add(f);
+                } else {
+                    fresh.add(f);
+                }
+            }
+            if (!suspects.isEmpty()) {
+                CHECKED.increment();
+                try {
+                    Set<List<String>> stored = lookup.stored(suspects);
+                    for (Flight f : suspects) {
+                        if (stored.contains(keyOf(f))) continue;
+                        FALSE_POSITIVES.increment();
+                        fresh.add(f);
+                    }
+                } catch (SQLException e) {
+                    // Не проверили - пишем: дубль в таблице лучше потерянного рейса
+                    System.err.println("Проверка дублей не выполнена, кандидаты пишутся без нее: " + e.getMessage());
+                    fresh.addAll(suspects);
+                }
+            }
+            SKIPPED.add(batch.size() - fresh.size());
+            return fresh;
+        }
+
+        // После коммита пачки
+        public void committed(List<Flight> flights) {
+            for (Flight f : flights) {
+                put(f.flightNo(), f.flightDate(), f.passportNo());
+            }
+        }
+    }
+}
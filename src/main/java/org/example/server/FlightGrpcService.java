@@ -0,0 +1,272 @@
+package org.example.server;
+
+import com.google.protobuf.ByteString;
+import io.grpc.*;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.example.AppConfig;
+import org.example.crypto.CryptoUtils;
+import org.example.grpc.*;
+import org.example.model.FlightBatch;
+import org.example.protocol.Compression;
+import org.example.protocol.DictionaryDecoder;
+import org.example.protocol.FlightProto;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// gRPC-сервер FlightService на Java (замена python_server/server.py).
+// У каждого клиента своя сессия: SetSessionKey возвращает sessionId (билет сессии), клиент передает его
+// в заголовке session-id вызова StreamFlights и может возобновить по нему сессию без RSA. Входящий поток читается с ручным
+// flow control (request(n)), расшифровка идет в ограниченном пуле, рейсы уходят пачками в WriterStage.
+public class FlightGrpcService extends FlightServiceGrpc.FlightServiceImplBase {
+    public static final Metadata.Key<String> SESSION_HEADER =
+            Metadata.Key.of("session-id", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Context.Key<String> SESSION_ID = Context.key("session-id");
+    // Сколько UploadFlights после конца входящего потока ждет коммита его пачек
+    private static final long FINAL_ACK_TIMEOUT_MS = 60_000;
+
+    private final WriterStage writers;
+    private final IngestCheckpoints checkpoints;
+    private final ServerKeyManager serverKeys;
+    private final SessionTickets tickets;
+    private final ExecutorService decryptPool;
+    private final int window;
+    private final IngestMetrics metrics = new IngestMetrics("grpc");
+
+    public FlightGrpcService(WriterStage writers, IngestCheckpoints checkpoints, ServerKeyManager serverKeys,
+                             SessionTickets tickets, AppConfig cfg) {
+        this.writers = writers;
+        this.checkpoints = checkpoints;
+        this.serverKeys = serverKeys;
+        this.tickets = tickets;
+        this.window = cfg.grpcInboundWindow;
+        int threads = cfg.grpcDecryptThreads;
+        // Очередь ограничена: при переполнении расшифровку выполняет поток gRPC, и чтение замедляется
+        this.decryptPool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * window), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // Перехватчик: переносит id сессии из заголовка в контекст вызова
+    public ServerInterceptor sessionInterceptor() {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                         ServerCallHandler<ReqT, RespT> next) {
+                Context ctx = Context.current().withValue(SESSION_ID, headers.get(SESSION_HEADER));
+                return Contexts.interceptCall(ctx, call, headers, next);
+            }
+        };
+    }
+
+    @Override
+    public void getPublicKey(Empty request, StreamObserver<PublicKeyResponse> responseObserver) {
+        ServerKeyManager.ServerKey rsa = serverKeys.current();
+        responseObserver.onNext(PublicKeyResponse.newBuilder()
+                .setPemKey(ByteString.copyFrom(rsa.pair().getPublic().getEncoded()))
+                .setKeyId(rsa.id())
+                .build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void setSessionKey(SessionKeyRequest request, StreamObserver<StatusResponse> responseObserver) {
+        if (!request.getSessionId().isEmpty()) {
+            SessionTickets.Session resumed = tickets.resume(request.getSessionId());
+            responseObserver.onNext(resumed != null
+                    ? status(true, "Session resumed").toBuilder()
+                        .setSessionId(request.getSessionId())
+                        .setCompression(resumed.compression().name())
+                        .setResumable(request.getResumable())
+                        .build()
+                    : status(false, "Unknown session"));
+            responseObserver.onCompleted();
+            return;
+        }
+        try {
+            SessionTickets.Session session = new SessionTickets.Session(
+                    serverKeys.unwrap(request.getKeyId(), request.getWrappedKey().toByteArray()),
+                    Compression.byName(request.getCompression()));
+            String sessionId = tickets.issue(session);
+            System.out.println("gRPC: ключ сессии принят, сессия " + sessionId + ", сжатие " + session.compression());
+            responseObserver.onNext(status(true, "Key accepted").toBuilder()
+                    .setSessionId(sessionId)
+                    .setCompression(session.compression().name())
+                    .setResumable(request.getResumable())
+                    .build());
+        } catch (Exception e) {
+            System.err.println("Error decrypting key: " + e.getMessage());
+            responseObserver.onNext(status(false, String.valueOf(e.getMessage())));
+        }
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<EncryptedPacket> streamFlights(StreamObserver<StatusResponse> responseObserver) {
+        return ingest(responseObserver, false);
+    }
+
+    // Как StreamFlights, но с подтверждениями сохраненных позиций по ходу вызова; итог - после коммита всех пачек
+    @Override
+    public StreamObserver<EncryptedPacket> uploadFlights(StreamObserver<StatusResponse> responseObserver) {
+        return ingest(responseObserver, true);
+    }
+
+    private StreamObserver<EncryptedPacket> ingest(StreamObserver<StatusResponse> responseObserver, boolean resumable) {
+        ServerCallStreamObserver<StatusResponse> call = (ServerCallStreamObserver<StatusResponse>) responseObserver;
+        call.disableAutoRequest();
+
+        String sessionId = SESSION_ID.get();
+        SessionTickets.Session session = tickets.resume(sessionId);
+        if (session == null) {
+            responseObserver.onNext(status(false, "No Session Key"));
+            responseObserver.onCompleted();
+            return new IgnoringObserver();
+        }
+
+        IngestCall ingest = new IngestCall(call, session, resumable);
+        call.request(window);
+        return ingest;
+    }
+
+    private static StatusResponse status(boolean success, String message) {
+        return StatusResponse.newBuilder().setSuccess(success).setMessage(message).build();
+    }
+
+    // Один вызов StreamFlights/UploadFlights: пакеты расшифровываются параллельно, на каждый обработанный
+    // пакет у клиента запрашивается следующий, так что в работе не больше window пакетов
+    private class IngestCall implements StreamObserver<EncryptedPacket> {
+        private final ServerCallStreamObserver<StatusResponse> call;
+        private final SessionTickets.Session session;
+        private final boolean resumable;
+        private final IngestCheckpoints.Link link;
+        // Ответы шлют и потоки расшифровки, и поток сброса подтверждений; под монитором call
+        private boolean completed;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean halfClosed;
+
+        IngestCall(ServerCallStreamObserver<StatusResponse> call, SessionTickets.Session session, boolean resumable) {
+            this.call = call;
+            this.session = session;
+            this.resumable = resumable;
+            this.link = checkpoints.link(resumable
+                    ? (stream, seq) -> respond(StatusResponse.newBuilder()
+                        .addAcks(StreamAck.newBuilder().setStream(stream).setCommittedSeq(seq))
+                        .build(), false)
+                    : (stream, seq) -> { });
+        }
+
+        @Override
+        public void onNext(EncryptedPacket packet) {
+            pending.incrementAndGet();
+            long received = System.nanoTime();
+            decryptPool.execute(() -> {
+                try {
+                    if (finished.get()) return;
+                    metrics.receive.recordSince(received);
+                    metrics.messages.increment();
+                    metrics.bytes.add(packet.getSerializedSize());
+
+                    long start = System.nanoTime();
+                    byte[] decrypted = CryptoUtils.decryptData(
+                            packet.getEncryptedData().toByteArray(), session.key(), packet.getIv().toByteArray());
+                    metrics.decrypt.recordSince(start);
+
+                    start = System.nanoTime();
+                    byte[] plain = session.compression().decompress(decrypted);
+                    metrics.decompress.recordSince(start);
+
+                    // Словарное кодирование на gRPC не подтверждается (dictionary = false): пакеты вызова
+                    // расшифровываются параллельно, а клиент раскладывает пачки по нескольким вызовам,
+                    // так что словарь потока не дойдет по порядку. Внутри пачки повторы и так убирает сжатие
+                    start = System.nanoTime();
+                    FlightBatch batch = packet.getBatch()
+                            ? FlightProto.decodeFlightBatch(plain, new DictionaryDecoder())
+                            : new FlightBatch(List.of(FlightProto.fromProto(FlightData.parseFrom(plain))));
+                    metrics.deserialize.recordSince(start);
+                    metrics.records.add(batch.flights().size());
+                    IngestCheckpoints.Admission admission = link.admit(batch);
+                    writers.submitRows(admission.flights(), admission.callback());
+                    count.addAndGet(admission.flights().size());
+                } catch (Exception e) {
+                    fail(e);
+                } finally {
+                    if (!finished.get()) call.request(1);
+                    if (pending.decrementAndGet() == 0 && halfClosed) finish();
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            finished.set(true);
+            System.err.println("gRPC: поток прерван клиентом: " + t.getMessage());
+        }
+
+        @Override
+        public void onCompleted() {
+            halfClosed = true;
+            if (pending.get() == 0) finish();
+        }
+
+        private void finish() {
+            if (!finished.compareAndSet(false, true)) return;
+            System.out.println("gRPC: поток завершен, принято " + count.get());
+            if (!resumable) {
+                respond(status(true, "Imported " + count.get() + " flights"), true);
+                return;
+            }
+            // Итог UploadFlights - после коммита пачек вызова и последних подтверждений
+            link.whenCommitted()
+                    .orTimeout(FINAL_ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    .whenCompleteAsync((v, e) -> {
+                        if (e == null) checkpoints.flush();
+                        respond(e == null
+                                ? status(true, "Imported " + count.get() + " flights")
+                                : status(false, "Commit not confirmed: " + e), true);
+                    }, decryptPool);
+        }
+
+        private void fail(Exception e) {
+            if (finished.compareAndSet(false, true)) {
+                System.err.println("Error processing stream: " + e.getMessage());
+                respond(status(false, String.valueOf(e.getMessage())), true);
+            }
+        }
+
+        private void respond(StatusResponse response, boolean last) {
+            synchronized (call) {
+                if (completed) return;
+                try {
+                    call.onNext(response);
+                    if (last) {
+                        completed = true;
+                        call.onCompleted();
+                    }
+                } catch (RuntimeException e) {
+                    // Вызов уже отменен клиентом
+                    completed = true;
+                }
+            }
+        }
+    }
+
+    private static class IgnoringObserver implements StreamObserver<EncryptedPacket> {
+        @Override
+        public void onNext(EncryptedPacket value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
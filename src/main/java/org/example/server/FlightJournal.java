@@ -0,0 +1,464 @@
+package org.example.server;
+
+import org.example.AppConfig;
+import org.example.metrics.Counter;
+import org.example.metrics.Histogram;
+import org.example.metrics.Metrics;
+import org.example.model.Flight;
+import org.example.protocol.FlightProto;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Журнал предзаписи перед писателями: пачка рейсов дописывается в memory-mapped сегмент, и ее callback
+// срабатывает после fsync журнала, а не после коммита в БД. fsync групповой: пока идет один, новые записи
+// копятся и сбрасываются следующим одной группой. Фоновый поток (drainer) читает сброшенные записи
+// по порядку и отдает писателям; закоммиченный префикс журнала сохраняется в committed.mark,
+// а сегменты целиком до него удаляются. При старте сервера все, что лежит после метки, загружается заново.
+//
+//
+// Запись: [int длина][int CRC32][protobuf FlightBatch]. Смещения сквозные по всем сегментам, имя файла -
+// смещение его начала. Нулевая длина или неверная CRC - конец данных сегмента (хвост, не попавший на диск).
+//
+// Писатели сообщают, какие рейсы записи отклонены; повторяются только они, с растущей паузой. После maxRetries
+// повторов рейсы уходят в dead-letter.tsv (смещение записи и поля рейса через табуляцию), и журнал идет дальше:
+// иначе одна плохая строка держала бы метку, сегменты не удалялись бы и прием остановился бы на maxSegments.
+public class FlightJournal implements AutoCloseable {
+    // Куда drainer отдает рейсы (WriterStage без журнала)
+    @FunctionalInterface
+    public interface Sink {
+        void write(List<Flight> flights, WriterStage.RowsCallback callback) throws InterruptedException;
+    }
+
+    private static final int HEADER = 8;
+    private static final String SUFFIX = ".wal";
+    private static final String DEAD_LETTER = "dead-letter.tsv";
+    // Потолок паузы между повторами
+    private static final long MAX_RETRY_MS = 60_000;
+
+    private static final Histogram FSYNC = Metrics.histogram("server_stage_seconds", "stage", "journal_fsync");
+    private static final Counter APPENDED = Metrics.counter("server_journal_records_total");
+    private static final Counter REPLAYED = Metrics.counter("server_journal_replayed_total");
+    private static final Counter DEAD_LETTERS = Metrics.counter("server_journal_dead_letters_total");
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long groupCommitMs;
+    private final int maxRetries;
+    private final long retryMs;
+    private final Sink sink;
+
+    // Сегменты, позиция записи и несброшенные callback - под монитором журнала
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment head;
+    private volatile long appendedTo;
+    private volatile long syncedTo;
+    private List<WriterStage.CommitCallback> unsynced = new ArrayList<>();
+    private boolean closed;
+    private final List<Path> undeleted = new ArrayList<>();
+
+    // Записи, отданные писателям: начало -> запись; под монитором inFlight
+    private final TreeMap<Long, Entry> inFlight = new TreeMap<>();
+    private final MappedByteBuffer mark;
+    private volatile long committedTo;
+    private final long replayUpTo;
+
+    private final Thread syncer;
+    private final Thread drainer;
+    private final ScheduledExecutorService retries;
+    private final DeadLetterFile deadLetters;
+
+    public FlightJournal(AppConfig cfg, Sink sink) throws IOException {
+        this(Path.of(cfg.journalDir), (int) Math.min(1024L, Math.max(1, cfg.journalSegmentMb)) * 1024 * 1024,
+                cfg.journalMaxSegments, cfg.journalGroupCommitMs, cfg.journalMaxRetries, cfg.journalRetryMs, sink);
+    }
+
+    FlightJournal(Path dir, int segmentSize, int maxSegments, long groupCommitMs, int maxRetries, long retryMs,
+                  Sink sink) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(2, maxSegments);
+        this.groupCommitMs = groupCommitMs;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryMs = Math.max(1, retryMs);
+        this.sink = sink;
+        this.deadLetters = new DeadLetterFile(dir.resolve(DEAD_LETTER));
+        Files.createDirectories(dir);
+
+        try (FileChannel ch = FileChannel.open(dir.resolve("committed.mark"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.mark = ch.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+        long committed = mark.getLong(0);
+
+        // Сегменты до метки уже в БД (не удалились в прошлый раз), остальные - к повторной загрузке
+        long next = committed;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                long size = Files.size(file);
+                if (base + size <= committed) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                Segment s = Segment.open(base, file, size);
+                // Старые сегменты только читаются
+                s.written = s.capacity;
+                s.synced = s.capacity;
+                segments.put(base, s);
+                next = Math.max(next, base + size);
+            }
+        }
+        this.committedTo = segments.isEmpty() ? next : Math.max(committed, segments.firstKey());
+        this.replayUpTo = next;
+        long[] pending = pending();
+        if (pending[0] > 0) {
+            System.out.printf("Журнал: к повторной загрузке %d пачек (%.1f МБ) из %d сегментов%n",
+                    pending[0], pending[1] / (1024.0 * 1024), segments.size());
+        }
+        this.head = create(next, segmentSize);
+        this.appendedTo = next;
+        this.syncedTo = next;
+
+        Metrics.gauge("server_journal_segments", () -> {
+            synchronized (this) {
+                return segments.size();
+            }
+        });
+        Metrics.gauge("server_journal_lag_bytes", () -> appendedTo - committedTo);
+
+        this.retries = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        this.syncer = new Thread(this::syncLoop, "journal-sync");
+        this.drainer = new Thread(this::drainLoop, "journal-drain");
+        syncer.start();
+        drainer.start();
+        System.out.printf("Журнал предзаписи: %s, сегменты по %.1f МБ%n", dir.toAbsolutePath(), segmentSize / (1024.0 * 1024));
+    }
+
+    // Дописывает пачку; callback - после fsync (или false, если записать не удалось).
+    // Блокируется, пока сегментов больше maxSegments: БД не успевает за приемом
+    public void append(List<Flight> flights, WriterStage.CommitCallback callback) throws InterruptedException {
+        byte[] payload = FlightProto.encodeBatch(flights);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        try {
+            synchronized (this) {
+                if (closed) throw new IOException("журнал закрыт");
+                while (head.written + HEADER + payload.length > head.capacity) {
+                    if (segments.size() < maxSegments) {
+                        head = create(head.base + head.capacity, Math.max(segmentSize, HEADER + payload.length));
+                    } else {
+                        wait();
+                        if (closed) throw new IOException("журнал закрыт");
+                    }
+                }
+                int pos = head.written;
+                head.buffer.put(pos + HEADER, payload);
+                head.buffer.putInt(pos + 4, (int) crc.getValue());
+                head.buffer.putInt(pos, payload.length);
+                head.written += HEADER + payload.length;
+                appendedTo = head.base + head.written;
+                unsynced.add(callback);
+                notifyAll();
+            }
+            APPENDED.increment();
+        } catch (IOException e) {
+            System.err.println("Журнал: не удалось дописать пачку: " + e.getMessage());
+            callback.onCommit(false);
+        }
+    }
+
+    // Групповой fsync: все, что дописано к моменту пробуждения (плюс groupCommitMs), сбрасывается разом
+    private void syncLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (appendedTo == syncedTo && !closed) wait();
+                    if (appendedTo == syncedTo) return;
+                }
+                if (groupCommitMs > 0) Thread.sleep(groupCommitMs);
+
+                long target;
+                List<WriterStage.CommitCallback> callbacks;
+                List<Segment> dirty = new ArrayList<>();
+                List<Integer> upTo = new ArrayList<>();
+                synchronized (this) {
+                    target = appendedTo;
+                    callbacks = unsynced;
+                    unsynced = new ArrayList<>();
+                    Long from = segments.floorKey(syncedTo);
+                    for (Segment s : (from != null ? segments.tailMap(from, true) : segments).values()) {
+                        if (s.synced < s.written) {
+                            dirty.add(s);
+                            upTo.add(s.written);
+                        }
+                    }
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < dirty.size(); i++) {
+                    Segment s = dirty.get(i);
+                    s.buffer.force(s.synced, upTo.get(i) - s.synced);
+                    s.synced = upTo.get(i);
+                }
+                mark.force();
+                FSYNC.recordSince(start);
+                synchronized (this) {
+                    syncedTo = target;
+                    notifyAll();
+                }
+                for (WriterStage.CommitCallback callback : callbacks) {
+                    callback.onCommit(true);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Сброшенные записи по порядку смещений - писателям; хвост сегмента без записей пропускается
+    private void drainLoop() {
+        long cursor = committedTo;
+        try {
+            while (true) {
+                Segment s;
+                synchronized (this) {
+                    while (cursor >= syncedTo && !closed) wait();
+                    if (cursor >= syncedTo) return;
+                    s = segments.floorEntry(cursor).getValue();
+                }
+                int pos = (int) (cursor - s.base);
+                List<Flight> flights = read(s, pos);
+                if (flights == null) {
+                    Long next;
+                    synchronized (this) {
+                        next = segments.higherKey(s.base);
+                    }
+                    if (next == null) throw new IllegalStateException("Журнал поврежден на смещении " + cursor);
+                    // Пустой хвост сегмента "закоммичен" сразу
+                    track(cursor, next);
+                    committed(cursor);
+                    cursor = next;
+                    continue;
+                }
+                long start = cursor;
+                long end = cursor + HEADER + s.buffer.getInt(pos);
+                if (start < replayUpTo) REPLAYED.increment();
+                track(start, end);
+                sink.write(flights, rejected -> done(start, rejected));
+                cursor = end;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Журнал: загрузка в БД остановлена: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // Записи после метки в старых сегментах: {число, байт}; по заголовкам, без проверки CRC
+    private long[] pending() {
+        long[] total = new long[2];
+        for (Segment s : segments.values()) {
+            int pos = (int) Math.max(0, committedTo - s.base);
+            while (pos + HEADER <= s.capacity) {
+                int length = s.buffer.getInt(pos);
+                if (length <= 0 || pos + HEADER + length > s.capacity) break;
+                total[0]++;
+                total[1] += HEADER + length;
+                pos += HEADER + length;
+            }
+        }
+        return total;
+    }
+
+    // Рейсы записи или null, если в позиции нет целой записи
+    private static List<Flight> read(Segment s, int pos) throws IOException {
+        if (pos + HEADER > s.capacity) return null;
+        int length = s.buffer.getInt(pos);
+        if (length <= 0 || pos + HEADER + length > s.capacity) return null;
+        CRC32 crc = new CRC32();
+        crc.update(s.buffer.slice(pos + HEADER, length));
+        if ((int) crc.getValue() != s.buffer.getInt(pos + 4)) return null;
+        return FlightProto.decodeBatch(s.buffer.slice(pos + HEADER, length));
+    }
+
+    private void track(long start, long end) {
+        synchronized (inFlight) {
+            inFlight.put(start, new Entry(end));
+        }
+    }
+
+    // Транспорт запись уже подтвердил, поэтому отклоненные рейсы не теряются: повтор, затем dead-letter
+    private void done(long start, List<Flight> rejected) {
+        if (rejected.isEmpty()) {
+            committed(start);
+            return;
+        }
+        int attempt;
+        synchronized (inFlight) {
+            attempt = ++inFlight.get(start).attempts;
+        }
+        if (attempt > maxRetries) {
+            deadLetter(start, rejected);
+            return;
+        }
+        long delay = Math.min(MAX_RETRY_MS, retryMs << Math.min(attempt - 1, 20));
+        System.err.println("Журнал: " + rejected.size() + " рейсов записи со смещения " + start
+                + " не записаны в БД, повтор " + attempt + "/" + maxRetries + " через " + delay + " мс");
+        retry(() -> {
+            try {
+                sink.write(rejected, again -> done(start, again));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, delay);
+    }
+
+    // Рейсы, которые не записать, - в dead-letter.tsv (с fsync), и только потом запись считается пройденной.
+    // Если не удалось и это, пробуем снова: метка не должна пройти через незаписанные рейсы
+    private void deadLetter(long start, List<Flight> rejected) {
+        try {
+            deadLetters.append(String.valueOf(start), rejected);
+        } catch (IOException e) {
+            System.err.println("Журнал: не удалось записать " + DEAD_LETTER + ": " + e.getMessage());
+            retry(() -> deadLetter(start, rejected), MAX_RETRY_MS);
+            return;
+        }
+        DEAD_LETTERS.add(rejected.size());
+        System.err.println("Журнал: " + rejected.size() + " рейсов записи со смещения " + start
+                + " отложены в " + deadLetters.path());
+        committed(start);
+    }
+
+    // После close повторов нет: запись осталась после метки и загрузится при следующем старте
+    private void retry(Runnable task, long delayMs) {
+        try {
+            retries.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            System.err.println("Журнал закрыт, повтор отложен до следующего старта");
+        }
+    }
+
+    // Закоммиченный непрерывный префикс сдвигает метку
+    private void committed(long start) {
+        long committed;
+        synchronized (inFlight) {
+            inFlight.get(start).committed = true;
+            committed = committedTo;
+            while (!inFlight.isEmpty() && inFlight.firstEntry().getValue().committed) {
+                committed = inFlight.pollFirstEntry().getValue().end;
+            }
+            if (committed == committedTo) return;
+            committedTo = committed;
+            mark.putLong(0, committed);
+        }
+        truncate(committed);
+    }
+
+    // Удаляет сегменты, целиком попавшие в БД. Windows не дает удалить отображенный файл:
+    // такие файлы пробуем снова при следующей очистке, а при старте их уберет проверка по метке
+    private synchronized void truncate(long committed) {
+        for (Iterator<Map.Entry<Long, Segment>> it = segments.entrySet().iterator(); it.hasNext(); ) {
+            Segment s = it.next().getValue();
+            if (s == head || s.base + s.capacity > committed) break;
+            it.remove();
+            s.close();
+            undeleted.add(s.path);
+        }
+        undeleted.removeIf(path -> {
+            try {
+                Files.deleteIfExists(path);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        });
+        notifyAll();
+    }
+
+    private Segment create(long base, int capacity) throws IOException {
+        Segment s = Segment.open(base, dir.resolve(String.format("%020d", base) + SUFFIX), capacity);
+        segments.put(base, s);
+        return s;
+    }
+
+    // Новые записи не принимаются; уже дописанные сбрасываются на диск и отдаются писателям
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        syncer.join();
+        drainer.join();
+        retries.shutdown();
+        deadLetters.close();
+    }
+
+    // attempts - повторы отклоненных рейсов; под монитором inFlight
+    private static final class Entry {
+        final long end;
+        boolean committed;
+        int attempts;
+
+        Entry(long end) {
+            this.end = end;
+        }
+    }
+
+    // written - под монитором журнала; synced - только поток fsync
+    private static final class Segment {
+        final long base;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        int written;
+        int synced;
+
+        private Segment(long base, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.base = base;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        // Новый файл сразу получает полный размер (заполнен нулями), размер фиксируется fsync
+        static Segment open(long base, Path path, long size) throws IOException {
+            boolean created = !Files.exists(path);
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (created) ch.force(true);
+            return new Segment(base, path, ch, buffer);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
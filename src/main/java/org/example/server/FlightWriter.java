@@ -0,0 +1,19 @@
+package org.example.server;
+
+import org.example.model.Flight;
+
+import java.sql.SQLException;
+import java.util.List;
+
+// Способ записи пачки рейсов в PostgreSQL (построчная нормализация или COPY).
+// Плохая строка не должна валить соседей: реализация либо записывает пачку целиком,
+// либо бросает RejectedRowsException со списком незаписанных рейсов (остальные закоммичены).
+// Любое другое SQLException - не записано ничего
+public interface FlightWriter {
+    void saveFlights(List<Flight> batch) throws SQLException;
+
+    // Класс 08 SQLSTATE - соединение потеряно: дело не в данных, и дробить пачку бессмысленно
+    static boolean connectionLost(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+}
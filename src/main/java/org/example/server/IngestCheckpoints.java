@@ -0,0 +1,433 @@
+package org.example.server;
+
+import org.example.AppConfig;
+import org.example.metrics.Counter;
+import org.example.metrics.Metrics;
+import org.example.model.Flight;
+import org.example.model.FlightBatch;
+import org.example.model.StreamPosition;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Подтверждения возобновляемой выгрузки. Для каждого потока клиента (exportId, stream) хранится committed -
+// seq, до которого включительно все записи потока закоммичены. Пачка покрывает интервал (prevSeq, seq последней
+// записи]; закоммиченный интервал, который начинается не дальше committed, сдвигает committed на свой конец.
+// Повторно присланные записи (seq <= committed или внутри интервала, который уже пишется) отбрасываются
+// до WriterStage - повтор после переподключения клиента идемпотентен.
+// Пачка с отклоненными БД рейсами забывается, но ее записанные рейсы запоминаются и при повторе не пишутся
+// снова. Рейс, отклоненный больше maxRetries раз, уходит в dead-letter, и позиция идет дальше:
+// иначе одна плохая строка держала бы поток на месте при каждом повторе.
+// Раз в ackIntervalMs новые позиции сохраняются в ingest_checkpoints и только потом уходят клиентам.
+public class IngestCheckpoints implements AutoCloseable {
+    // Получатель подтверждений; вызывается потоком сброса, не должен надолго блокироваться
+    @FunctionalInterface
+    public interface AckListener {
+        void onAck(int stream, long committedSeq);
+    }
+
+    // Рейсы пачки, которые нужно записать, и callback для WriterStage.submitRows
+    public record Admission(List<Flight> flights, WriterStage.RowsCallback callback) {}
+
+    private record StreamKey(String exportId, int stream) {}
+
+    // Позиция потока без пачек в работе выгружается из памяти через 10 минут (в БД она остается)
+    private static final long IDLE_EVICT_MS = 10 * 60_000;
+    private static final Counter DUPLICATES = Metrics.counter("server_duplicates_skipped_total");
+    private static final Counter DEAD_LETTERS = Metrics.counter("server_ingest_dead_letters_total");
+
+    // null - sink STUB: позиции живут только в памяти процесса
+    private final Connection conn;
+    private final Map<StreamKey, StreamState> streams = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final int maxRetries;
+    // null - отклоненные рейсы только в лог
+    private final DeadLetterFile deadLetters;
+
+    public IngestCheckpoints(AppConfig cfg) throws SQLException {
+        this("STUB".equalsIgnoreCase(cfg.dbSink) ? null : ConnectionPool.open(cfg), cfg.ingestAckIntervalMs,
+                cfg.ingestMaxRetries, cfg.ingestDeadLetterFile.isEmpty() ? null : Path.of(cfg.ingestDeadLetterFile));
+    }
+
+    // conn == null - позиции только в памяти (sink STUB и тесты)
+    IngestCheckpoints(Connection conn, long ackIntervalMs, int maxRetries, Path deadLetterFile) throws SQLException {
+        this.conn = conn;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.deadLetters = deadLetterFile == null ? null : new DeadLetterFile(deadLetterFile);
+        if (conn != null) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE TABLE IF NOT EXISTS ingest_checkpoints (" +
+                        "export_id text NOT NULL, stream int NOT NULL, committed_seq bigint NOT NULL, " +
+                        "updated_at timestamptz NOT NULL DEFAULT now(), PRIMARY KEY (export_id, stream))");
+            }
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ingest-acks");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, ackIntervalMs, ackIntervalMs, TimeUnit.MILLISECONDS);
+        Metrics.gauge("server_ingest_streams", streams::size);
+    }
+
+    // Подтверждения идут через соединение, по которому пришла последняя пачка потока
+    public Link link(AckListener listener) {
+        return new Link(listener);
+    }
+
+    // Сохраняет сдвинувшиеся позиции одним batch-ом и рассылает подтверждения.
+    // Вызывается по расписанию и при закрытии соединения - чтобы клиент получил последние ack до EOF
+    public synchronized void flush() {
+        List<StreamKey> keys = new ArrayList<>();
+        List<StreamState> due = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        List<AckListener> listeners = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<StreamKey, StreamState>> it = streams.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<StreamKey, StreamState> e = it.next();
+            StreamState s = e.getValue();
+            synchronized (s) {
+                if (s.ackDue) {
+                    s.ackDue = false;
+                    keys.add(e.getKey());
+                    due.add(s);
+                    positions.add(s.committed);
+                    listeners.add(s.listener);
+                } else if (s.intervals.isEmpty() && now - s.touchedAt > IDLE_EVICT_MS) {
+                    s.evicted = true;
+                    it.remove();
+                }
+            }
+        }
+        if (due.isEmpty()) return;
+
+        try {
+            persist(keys, due, positions);
+        } catch (SQLException e) {
+            System.err.println("Не удалось сохранить позиции выгрузки: " + e.getMessage());
+            for (StreamState s : due) {
+                synchronized (s) {
+                    s.ackDue = true;
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < due.size(); i++) {
+            AckListener listener = listeners.get(i);
+            if (listener != null) listener.onAck(keys.get(i).stream(), positions.get(i));
+        }
+    }
+
+    private void persist(List<StreamKey> keys, List<StreamState> due, List<Long> positions) throws SQLException {
+        if (conn == null) return;
+        boolean any = false;
+        synchronized (conn) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO ingest_checkpoints (export_id, stream, committed_seq) VALUES (?, ?, ?) " +
+                    "ON CONFLICT (export_id, stream) DO UPDATE SET " +
+                    "committed_seq = GREATEST(ingest_checkpoints.committed_seq, EXCLUDED.committed_seq), updated_at = now()")) {
+                for (int i = 0; i < due.size(); i++) {
+                    if (positions.get(i) <= due.get(i).persisted) continue;
+                    ps.setString(1, keys.get(i).exportId());
+                    ps.setInt(2, keys.get(i).stream());
+                    ps.setLong(3, positions.get(i));
+                    ps.addBatch();
+                    any = true;
+                }
+                if (any) ps.executeBatch();
+            }
+        }
+        for (int i = 0; i < due.size(); i++) {
+            due.get(i).persisted = Math.max(due.get(i).persisted, positions.get(i));
+        }
+    }
+
+    // Позиция потока: из памяти, из ingest_checkpoints или начало диапазона клиента
+    private StreamState state(StreamPosition position) throws SQLException {
+        StreamKey key = new StreamKey(position.exportId(), position.stream());
+        StreamState s = streams.get(key);
+        if (s != null) return s;
+        long stored = load(key);
+        s = new StreamState(Math.max(position.origin(), stored), stored);
+        StreamState raced = streams.putIfAbsent(key, s);
+        return raced != null ? raced : s;
+    }
+
+    private long load(StreamKey key) throws SQLException {
+        if (conn == null) return Long.MIN_VALUE;
+        synchronized (conn) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT committed_seq FROM ingest_checkpoints WHERE export_id = ? AND stream = ?")) {
+                ps.setString(1, key.exportId());
+                ps.setInt(2, key.stream());
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : Long.MIN_VALUE;
+                }
+            }
+        }
+    }
+
+    // Рейсы, отклоненные больше maxRetries раз, - в dead-letter (с fsync) до того, как позиция пройдет через них.
+    // false - записать не удалось: рейсы остаются неудачными и будут приняты при следующем повторе
+    private boolean deadLetter(StreamKey key, List<Flight> flights) {
+        String source = key.exportId() + "\t" + key.stream();
+        if (deadLetters != null) {
+            try {
+                deadLetters.append(source, flights);
+            } catch (IOException e) {
+                System.err.println("Не удалось записать " + deadLetters.path() + ": " + e.getMessage());
+                return false;
+            }
+        }
+        DEAD_LETTERS.add(flights.size());
+        System.err.println("Выгрузка " + key.exportId() + ", поток " + key.stream() + ": " + flights.size()
+                + " рейсов отклонены " + (maxRetries + 1) + " раз и пропущены"
+                + (deadLetters != null ? ", записаны в " + deadLetters.path() : ""));
+        return true;
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flush();
+        if (deadLetters != null) deadLetters.close();
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    // Пачки одного соединения: подтверждения его потоков и ожидание коммита перед закрытием
+    public final class Link {
+        private final AckListener listener;
+        private int pending;
+        private CompletableFuture<Void> drained;
+
+        private Link(AckListener listener) {
+            this.listener = listener;
+        }
+
+        // Отбрасывает уже сохраненные записи пачки; пачки без position (клиент без контрольных точек) идут как есть
+        public Admission admit(FlightBatch batch) throws SQLException {
+            started();
+            StreamPosition position = batch.position();
+            if (position == null || batch.flights().isEmpty()) {
+                return new Admission(batch.flights(), ok -> finished());
+            }
+            boolean duplicate;
+            Admission admission;
+            while (true) {
+                StreamState s = state(position);
+                synchronized (s) {
+                    if (s.evicted) continue;
+                    s.touchedAt = System.currentTimeMillis();
+                    s.listener = listener;
+
+                    long last = position.prevSeq();
+                    List<Flight> fresh = new ArrayList<>(batch.flights().size());
+                    List<Interval> overlaps = new ArrayList<>();
+                    for (Flight f : batch.flights()) {
+                        last = Math.max(last, f.seq());
+                        if (f.seq() <= s.committed || s.written.contains(f.seq())) continue;
+                        Interval owner = s.inFlight(f.seq());
+                        if (owner == null) {
+                            fresh.add(f);
+                        } else if (!overlaps.contains(owner)) {
+                            overlaps.add(owner);
+                        }
+                    }
+                    DUPLICATES.add(batch.flights().size() - fresh.size());
+
+                    Interval interval = new Interval(position.prevSeq(), last, fresh, overlaps);
+                    s.intervals.add(interval);
+                    duplicate = fresh.isEmpty();
+                    if (duplicate) {
+                        // Вся пачка - повтор: подтверждаем сразу, чтобы клиент сдвинул контрольную точку
+                        // (позиция сдвинется, когда закоммичены и пачки, которые пишут ее записи)
+                        s.committed(interval, List.of(), List.of());
+                        admission = new Admission(fresh, rejected -> { });
+                    } else {
+                        StreamKey key = new StreamKey(position.exportId(), position.stream());
+                        admission = new Admission(fresh, rejected -> {
+                            List<Flight> exhausted;
+                            synchronized (s) {
+                                exhausted = s.rejected(rejected, maxRetries);
+                            }
+                            if (!exhausted.isEmpty() && !deadLetter(key, exhausted)) exhausted = List.of();
+                            synchronized (s) {
+                                s.committed(interval, rejected, exhausted);
+                            }
+                            finished();
+                        });
+                    }
+                    break;
+                }
+            }
+            if (duplicate) finished();
+            return admission;
+        }
+
+        // Завершается, когда все принятые через соединение пачки закоммичены (или упали)
+        public synchronized CompletableFuture<Void> whenCommitted() {
+            if (pending == 0) return CompletableFuture.completedFuture(null);
+            if (drained == null) drained = new CompletableFuture<>();
+            return drained;
+        }
+
+        // Блокирующий вариант whenCommitted; false - не дождались за timeoutMs
+        public boolean awaitCommitted(long timeoutMs) throws InterruptedException {
+            try {
+                whenCommitted().get(timeoutMs, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException | ExecutionException e) {
+                return false;
+            }
+        }
+
+        private synchronized void started() {
+            pending++;
+        }
+
+        private void finished() {
+            CompletableFuture<Void> done;
+            synchronized (this) {
+                if (--pending > 0 || drained == null) return;
+                done = drained;
+                drained = null;
+            }
+            done.complete(null);
+        }
+    }
+
+    // Интервал seq одной пачки (from, to]; flights - рейсы, которые пишет эта пачка. overlaps - пачки в работе,
+    // чьи записи из этого интервала пропущены как повтор: позиция не сдвигается через интервал, пока они не закоммичены
+    private static final class Interval {
+        final long from;
+        final long to;
+        final List<Flight> flights;
+        final List<Interval> overlaps;
+        boolean committed;
+
+        Interval(long from, long to, List<Flight> flights, List<Interval> overlaps) {
+            this.from = from;
+            this.to = to;
+            this.flights = flights;
+            this.overlaps = overlaps;
+        }
+
+        boolean ready() {
+            if (!committed) return false;
+            for (Interval o : overlaps) {
+                if (!o.ready()) return false;
+            }
+            return true;
+        }
+    }
+
+    // Поля под монитором самого объекта; persisted - только под монитором IngestCheckpoints (flush)
+    private static final class StreamState {
+        long committed;
+        long persisted;
+        final List<Interval> intervals = new ArrayList<>();
+        // seq > committed, уже записанные (или отложенные в dead-letter) пачками, которые пришлось забыть
+        final Set<Long> written = new HashSet<>();
+        // seq -> сколько раз БД отклонила рейс
+        final Map<Long, Integer> rejections = new HashMap<>();
+        AckListener listener;
+        boolean ackDue;
+        boolean evicted;
+        long touchedAt = System.currentTimeMillis();
+
+        StreamState(long committed, long persisted) {
+            this.committed = committed;
+            this.persisted = persisted;
+        }
+
+        // Пачка, которая пишет (или уже записала, но позиция до нее еще не дошла) запись seq; null - такой нет
+        Interval inFlight(long seq) {
+            for (Interval i : intervals) {
+                if (seq > i.from && seq <= i.to) return i;
+            }
+            return null;
+        }
+
+        // Считает отклонения; возвращает рейсы, отклоненные больше maxRetries раз
+        List<Flight> rejected(List<Flight> rejected, int maxRetries) {
+            List<Flight> exhausted = new ArrayList<>();
+            for (Flight f : rejected) {
+                if (rejections.merge(f.seq(), 1, Integer::sum) > maxRetries) exhausted.add(f);
+            }
+            return exhausted;
+        }
+
+        // rejected - незаписанные рейсы пачки, skipped - те из них, что отложены в dead-letter и больше не ждутся.
+        // Пачка с остальными отклоненными забывается: ее рейсы примутся при повторе, кроме уже записанных.
+        // Вместе с ней забываются пачки, пропустившие ее записи как повтор, - иначе позиция прошла бы
+        // через незаписанные рейсы
+        void committed(Interval interval, List<Flight> rejected, List<Flight> skipped) {
+            Set<Long> failed = new HashSet<>();
+            for (Flight f : rejected) failed.add(f.seq());
+            for (Flight f : skipped) {
+                failed.remove(f.seq());
+                rejections.remove(f.seq());
+            }
+            if (!failed.isEmpty() || !intervals.contains(interval)) {
+                // Пачку уже забыли вместе с той, чьи записи она пропустила: ее записанные рейсы тоже запоминаются
+                for (Flight f : interval.flights) {
+                    if (!failed.contains(f.seq()) && f.seq() > committed) written.add(f.seq());
+                }
+                forget(interval);
+                return;
+            }
+            interval.committed = true;
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                for (Iterator<Interval> it = intervals.iterator(); it.hasNext(); ) {
+                    Interval i = it.next();
+                    if (i.ready() && i.from <= committed) {
+                        committed = Math.max(committed, i.to);
+                        it.remove();
+                        moved = true;
+                    }
+                }
+            }
+            written.removeIf(seq -> seq <= committed);
+            rejections.keySet().removeIf(seq -> seq <= committed);
+            ackDue = true;
+        }
+
+        private void forget(Interval failed) {
+            if (!intervals.remove(failed)) return;
+            for (Interval i : new ArrayList<>(intervals)) {
+                if (!i.overlaps.contains(failed)) continue;
+                // Уже закоммиченная пачка забывается ради позиции, но ее рейсы в БД
+                if (i.committed) {
+                    for (Flight f : i.flights) written.add(f.seq());
+                }
+                forget(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.server;
+
+import org.example.metrics.Counter;
+import org.example.metrics.Histogram;
+import org.example.metrics.Metrics;
+
+// Метрики приема одного транспорта: сообщения, байты, рейсы и длительности стадий до очереди писателей.
+// receive - ожидание сообщения в очереди на обработку (NIO, gRPC), чтение объекта из потока (SOCKET)
+// или разбор конверта сообщения (RabbitMQ)
+final class IngestMetrics {
+    final Counter messages;
+    final Counter bytes;
+    final Counter records;
+    final Histogram receive;
+    final Histogram decrypt;
+    final Histogram decompress;
+    final Histogram deserialize;
+
+    IngestMetrics(String transport) {
+        this.messages = Metrics.counter("server_messages_total", "transport", transport);
+        this.bytes = Metrics.counter("server_bytes_total", "transport", transport);
+        this.records = Metrics.counter("server_records_total", "transport", transport);
+        this.receive = stage("receive", transport);
+        this.decrypt = stage("decrypt", transport);
+        this.decompress = stage("decompress", transport);
+        this.deserialize = stage("deserialize", transport);
+    }
+
+    private static Histogram stage(String stage, String transport) {
+        return Metrics.histogram("server_stage_seconds", "stage", stage, "transport", transport);
+    }
+}
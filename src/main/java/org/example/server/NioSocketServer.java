@@ -0,0 +1,316 @@
+package org.example.server;
+
+import org.example.crypto.CryptoUtils;
+import org.example.model.FlightBatch;
+import org.example.protocol.Compression;
+import org.example.protocol.DictionaryDecoder;
+import org.example.protocol.FlightProto;
+import org.example.protocol.Frames;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Сокет-сервер на NIO с бинарными кадрами (см. Frames).
+// Один поток Selector-а читает кадры всех клиентов в переиспользуемые direct-буферы,
+// Развертка ключа, расшифровка и разбор protobuf идут в пуле - по порядку внутри каждого соединения.
+public class NioSocketServer {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // Сколько кадров соединения может ждать обработки, прежде чем чтение из сокета приостановится
+    private static final int MAX_IN_FLIGHT = 16;
+    // Сколько соединение после EOF клиента ждет коммита его пачек, чтобы отправить последние подтверждения
+    private static final long FINAL_ACK_TIMEOUT_MS = 60_000;
+    // Буфер под расшифрованную пачку, свой у каждого потока пула
+    private static final ThreadLocal<ByteBuffer> PLAIN_BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(READ_BUFFER_SIZE));
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private final int port;
+    private final WriterStage writers;
+    private final IngestCheckpoints checkpoints;
+    private final ServerKeyManager serverKeys;
+    private final SessionTickets tickets;
+    private final ExecutorService workers;
+    private final Selector selector;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final IngestMetrics metrics = new IngestMetrics("nio");
+
+    public NioSocketServer(int port, WriterStage writers, IngestCheckpoints checkpoints, ServerKeyManager serverKeys,
+                           SessionTickets tickets, int workerThreads) throws IOException {
+        this.port = port;
+        this.writers = writers;
+        this.checkpoints = checkpoints;
+        this.serverKeys = serverKeys;
+        this.tickets = tickets;
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+        this.selector = Selector.open();
+    }
+
+    public void run() throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("NIO сервер слушает порт " + port);
+
+            while (true) {
+                selector.select();
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    try {
+                        if (key.isAcceptable()) {
+                            accept(server);
+                            continue;
+                        }
+                        if (key.isReadable()) read(key);
+                        if (key.isValid() && key.isWritable()) write(key);
+                    } catch (IOException e) {
+                        System.err.println("Ошибка соединения: " + e.getMessage());
+                        close(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        Session session = new Session(key);
+        key.attach(session);
+
+        // Ключ RSA общий для сервера: публичный ключ уходит сразу, без генерации на соединение
+        ServerKeyManager.ServerKey rsa = serverKeys.current();
+        session.send(Frames.encode(Frames.PUBLIC_KEY, Frames.withKeyId(rsa.id(), rsa.pair().getPublic().getEncoded())));
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Session session = (Session) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buf = session.readBuffer;
+
+        if (channel.read(buf) < 0) {
+            // Клиент закончил: дочитывать нечего. После обработки принятых кадров ждем коммита его пачек,
+            // отправляем последние подтверждения и закрываемся, когда они ушли в сокет
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            session.eof = true;
+            session.execute(() -> {
+                System.out.println("Клиент отключился.");
+                session.link.whenCommitted()
+                        .orTimeout(FINAL_ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                        .whenCompleteAsync((v, e) -> {
+                            if (e == null) checkpoints.flush();
+                            onSelector(() -> closeWhenWritten(key));
+                        }, workers);
+            });
+            return;
+        }
+
+        buf.flip();
+        while (buf.remaining() >= Frames.HEADER_SIZE) {
+            int length = buf.getInt(buf.position());
+            Frames.checkLength(length);
+            if (buf.remaining() < Frames.HEADER_SIZE + length) break;
+
+            buf.getInt();
+            byte type = buf.get();
+            // Тело копируется: кадр обрабатывается в пуле, а буфер чтения тем временем
+            // уплотняется и заполняется следующими кадрами
+            byte[] body = new byte[length];
+            buf.get(body);
+            long received = System.nanoTime();
+            session.execute(() -> handleFrame(session, type, body, received));
+        }
+        buf.compact();
+
+        // Кадр не помещается в буфер - увеличиваем буфер соединения, дальше он переиспользуется
+        if (!buf.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(Math.min(buf.capacity() * 2, Frames.HEADER_SIZE + Frames.MAX_BODY_SIZE));
+            buf.flip();
+            bigger.put(buf);
+            session.readBuffer = bigger;
+        }
+    }
+
+    private void handleFrame(Session session, byte type, byte[] body, long received) throws Exception {
+        switch (type) {
+            case Frames.SESSION_KEY -> {
+                ByteBuffer buf = ByteBuffer.wrap(body);
+                long keyId = buf.getLong();
+                Compression compression = Compression.byId(buf.get());
+                byte[] wrapped = new byte[buf.remaining()];
+                buf.get(wrapped);
+                session.keys = new SessionTickets.Session(serverKeys.unwrap(keyId, wrapped), compression);
+                session.send(Frames.encode(Frames.TICKET, Frames.ticketBody(compression, tickets.issue(session.keys))));
+                System.out.println("Клиент подключен (NIO), ключ согласован, сжатие " + compression + ".");
+            }
+            case Frames.RESUME -> {
+                String ticket = new String(body, StandardCharsets.UTF_8);
+                SessionTickets.Session resumed = tickets.resume(ticket);
+                if (resumed == null) {
+                    session.send(Frames.encode(Frames.RESUME_REJECTED, new byte[0]));
+                    return;
+                }
+                session.keys = resumed;
+                session.send(Frames.encode(Frames.TICKET, Frames.ticketBody(resumed.compression(), ticket)));
+                System.out.println("Клиент подключен (NIO), сессия возобновлена.");
+            }
+            case Frames.DATA -> {
+                SessionTickets.Session keys = session.keys;
+                if (keys == null) throw new IOException("Данные пришли до согласования ключа");
+                metrics.receive.recordSince(received);
+                metrics.messages.increment();
+                metrics.bytes.add(Frames.HEADER_SIZE + body.length);
+
+                // Расшифровка из тела кадра в буфер потока: без копии шифротекста и без массива под открытый текст
+                long start = System.nanoTime();
+                ByteBuffer encrypted = ByteBuffer.wrap(body);
+                byte[] iv = Frames.readIv(encrypted);
+                ByteBuffer plain = plainBuffer(CryptoUtils.maxOutputSize(encrypted.remaining()));
+                CryptoUtils.decrypt(encrypted, plain, keys.key(), iv);
+                metrics.decrypt.recordSince(start);
+
+                start = System.nanoTime();
+                ByteBuffer batch = keys.compression().decompress(plain.flip());
+                metrics.decompress.recordSince(start);
+
+                start = System.nanoTime();
+                FlightBatch flights = FlightProto.decodeFlightBatch(batch, session.dictionary);
+                metrics.deserialize.recordSince(start);
+                metrics.records.add(flights.flights().size());
+                IngestCheckpoints.Admission admission = session.link.admit(flights);
+                writers.submitRows(admission.flights(), admission.callback());
+            }
+            default -> throw new IOException("Неизвестный тип кадра: " + type);
+        }
+    }
+
+    private static ByteBuffer plainBuffer(int capacity) {
+        ByteBuffer buf = PLAIN_BUFFERS.get();
+        if (buf.capacity() < capacity) {
+            buf = ByteBuffer.allocate(Math.max(capacity, buf.capacity() * 2));
+            PLAIN_BUFFERS.set(buf);
+        }
+        return buf.clear();
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Session session = (Session) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buf;
+        while ((buf = session.pendingWrites.peek()) != null) {
+            channel.write(buf);
+            if (buf.hasRemaining()) return; // буфер отправки сокета полон, продолжим по OP_WRITE
+            session.pendingWrites.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (session.closing) close(key);
+    }
+
+    private void onSelector(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    // Закрытие после отправки уже поставленных в очередь кадров (подтверждений)
+    private void closeWhenWritten(SelectionKey key) {
+        Session session = (Session) key.attachment();
+        if (session.pendingWrites.isEmpty() || !key.isValid()) {
+            close(key);
+            return;
+        }
+        session.closing = true;
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private class Session {
+        final SelectionKey key;
+        final Queue<ByteBuffer> pendingWrites = new ConcurrentLinkedQueue<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        // Поля ниже трогает только поток селектора
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        boolean eof;
+        boolean closing;
+        // Заполняются задачами в пуле
+        volatile SessionTickets.Session keys;
+        // Словари потоков клиента; кадры соединения обрабатываются строго по порядку
+        final DictionaryDecoder dictionary = new DictionaryDecoder();
+        // Подтверждения потоков клиента уходят кадрами ACK
+        final IngestCheckpoints.Link link = checkpoints.link((stream, seq) -> send(Frames.encode(Frames.ACK, Frames.ackBody(stream, seq))));
+        volatile boolean failed;
+
+        Session(SelectionKey key) {
+            this.key = key;
+        }
+
+        // Задачи одного соединения выполняются в пуле строго друг за другом
+        void execute(Task task) {
+            if (inFlight.incrementAndGet() >= MAX_IN_FLIGHT && key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            tail = tail.thenRunAsync(() -> {
+                try {
+                    if (!failed) task.run();
+                } catch (Exception e) {
+                    failed = true;
+                    System.err.println("Ошибка обработки кадра: " + e.getMessage());
+                    onSelector(() -> close(key));
+                } finally {
+                    if (inFlight.decrementAndGet() == MAX_IN_FLIGHT - 1) {
+                        onSelector(this::resumeReading);
+                    }
+                }
+            }, workers);
+        }
+
+        void resumeReading() {
+            if (key.isValid() && !eof && inFlight.get() < MAX_IN_FLIGHT) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        void send(ByteBuffer frame) {
+            pendingWrites.add(frame);
+            onSelector(() -> {
+                if (key.isValid()) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            });
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.example.server;
+
+import org.example.model.Flight;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Массовая загрузка: COPY в staging-таблицу и нормализация несколькими INSERT ... SELECT на пачку
+public class PostgresBulkLoader implements FlightWriter {
+    // Общий ключ advisory-блокировки: общие справочники пополняются по очереди в своей короткой
+    // транзакции; COPY, пассажиры и рейсы разных писателей при этом идут параллельно
+    private static final long NORMALIZE_LOCK_KEY = 0x7472727032L;
+
+    // Справочники: только новые значения из пачки. NULL не добавляем: он ни с чем не совпадет,
+    // а у аэропорта это еще и первичный ключ
+    private static final String[] NORMALIZE_SHARED = {
+            "INSERT INTO airlines (name) " +
+                    "SELECT DISTINCT s.airline_name FROM staging_flights s " +
+                    "WHERE s.airline_name IS NOT NULL AND NOT EXISTS (SELECT 1 FROM airlines a WHERE a.name = s.airline_name)",
+            "INSERT INTO aircrafts (model) " +
+                    "SELECT DISTINCT s.aircraft_model FROM staging_flights s " +
+                    "WHERE s.aircraft_model IS NOT NULL AND NOT EXISTS (SELECT 1 FROM aircrafts a WHERE a.model = s.aircraft_model)",
+            "INSERT INTO airports (code, city) " +
+                    "SELECT DISTINCT ON (code) code, city FROM (" +
+                    "  SELECT dep_code AS code, dep_city AS city FROM staging_flights" +
+                    "  UNION ALL SELECT arr_code, arr_city FROM staging_flights) x " +
+                    "WHERE code IS NOT NULL " +
+                    "ON CONFLICT (code) DO NOTHING"
+    };
+
+    // Писатели шардированы по паспорту: один паспорт не вставляют два загрузчика сразу, блокировка не нужна
+    private static final String NORMALIZE_PASSENGERS =
+            "INSERT INTO passengers (passport_no, full_name) " +
+            "SELECT DISTINCT ON (s.passport_no) s.passport_no, s.passenger_name FROM staging_flights s " +
+            "WHERE s.passport_no IS NOT NULL AND NOT EXISTS (SELECT 1 FROM passengers p WHERE p.passport_no = s.passport_no)";
+
+    // Дата 'YYYY-MM-DD' существующего дня. В отличие от ::timestamp проверка не бросает исключений:
+    // плохая дата отклоняет свою строку, а не всю пачку
+    private static final String VALID_DATE =
+            "s.flight_date ~ '^[1-9][0-9]{3}-(0[1-9]|1[0-2])-(0[1-9]|[12][0-9]|3[01])$' " +
+            "AND substr(s.flight_date, 9, 2)::int <= extract(day from make_date(substr(s.flight_date, 1, 4)::int, " +
+            "substr(s.flight_date, 6, 2)::int, 1) + interval '1 month - 1 day')";
+
+    private static final String LOADABLE =
+            "flight_ts IS NOT NULL AND dep_code IS NOT NULL AND arr_code IS NOT NULL " +
+            "AND airline_id IS NOT NULL AND aircraft_id IS NOT NULL AND passenger_id IS NOT NULL";
+
+    // Сами рейсы. Уникальности name/model/passport_no в схеме нет: дубли справочников могли оставить
+    // построчная запись или старые версии, поэтому на значение берется наименьший id - иначе
+    // каждый дубль размножил бы рейс. Возвращает номера строк staging, которые не загружены:
+    // id справочника не нашелся, нет кода аэропорта или дата некорректна.
+    // CASE вычисляет приведение только для проверенной даты
+    private static final String INSERT_FLIGHTS =
+            "WITH resolved AS (" +
+            "  SELECT s.rn, s.flight_no, s.dep_code, s.arr_code, " +
+            "         CASE WHEN " + VALID_DATE + " THEN s.flight_date::timestamp END AS flight_ts, " +
+            "         al.id AS airline_id, ac.id AS aircraft_id, p.id AS passenger_id " +
+            "  FROM staging_flights s " +
+            "  LEFT JOIN (SELECT name, min(id) AS id FROM airlines " +
+            "             WHERE name IN (SELECT airline_name FROM staging_flights) GROUP BY name) al " +
+            "    ON al.name = s.airline_name " +
+            "  LEFT JOIN (SELECT model, min(id) AS id FROM aircrafts " +
+            "             WHERE model IN (SELECT aircraft_model FROM staging_flights) GROUP BY model) ac " +
+            "    ON ac.model = s.aircraft_model " +
+            "  LEFT JOIN (SELECT passport_no, min(id) AS id FROM passengers " +
+            "             WHERE passport_no IN (SELECT passport_no FROM staging_flights) GROUP BY passport_no) p " +
+            "    ON p.passport_no = s.passport_no" +
+            "), inserted AS (" +
+            "  INSERT INTO flights (flight_no, date, airline_id, aircraft_id, dep_airport_code, arr_airport_code, passenger_id) " +
+            "  SELECT flight_no, flight_ts, airline_id, aircraft_id, dep_code, arr_code, passenger_id " +
+            "  FROM resolved WHERE " + LOADABLE +
+            ") " +
+            "SELECT rn FROM resolved WHERE NOT (" + LOADABLE + ") ORDER BY rn";
+
+    private final Connection conn;
+    private final CopyManager copyManager;
+
+    public PostgresBulkLoader(Connection conn) throws SQLException {
+        this.conn = conn;
+        this.copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+
+        // Временная таблица не пишется в WAL и своя у каждого соединения,
+        // поэтому несколько загрузчиков не мешают друг другу. Строки переживают коммит
+        // справочников и очищаются перед каждой пачкой
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TEMP TABLE IF NOT EXISTS staging_flights (" +
+                    "rn int, flight_no text, airline_name text, aircraft_model text, " +
+                    "dep_city text, dep_code text, arr_city text, arr_code text, " +
+                    "passenger_name text, passport_no text, flight_date text" +
+                    ")");
+        }
+    }
+
+    // Три шага: COPY в staging; общие справочники под advisory-блокировкой, закоммиченные сразу;
+    // пассажиры и рейсы одной транзакцией без блокировки. Строки без авиакомпании, модели, паспорта,
+    // кода аэропорта или с некорректной датой не загружаются: остальные коммитятся,
+    // а эти возвращаются в RejectedRowsException
+    @Override
+    public synchronized void saveFlights(List<Flight> batch) throws SQLException {
+        if (batch.isEmpty()) return;
+        try (Statement st = conn.createStatement()) {
+            st.execute("TRUNCATE staging_flights");
+        }
+        copyToStaging(batch);
+
+        List<Flight> rejected = new ArrayList<>();
+        conn.setAutoCommit(false);
+        try (Statement st = conn.createStatement()) {
+            st.execute("SELECT pg_advisory_xact_lock(" + NORMALIZE_LOCK_KEY + ")");
+            for (String sql : NORMALIZE_SHARED) {
+                st.executeUpdate(sql);
+            }
+            conn.commit(); // блокировка снимается вместе с коммитом
+
+            st.executeUpdate(NORMALIZE_PASSENGERS);
+            try (ResultSet rs = st.executeQuery(INSERT_FLIGHTS)) {
+                while (rs.next()) {
+                    rejected.add(batch.get(rs.getInt(1)));
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        if (!rejected.isEmpty()) {
+            System.err.println("COPY: не загружены " + rejected.size() + " из " + batch.size()
+                    + " рейсов (пустая авиакомпания, модель, паспорт или код аэропорта, некорректная дата)");
+            throw new RejectedRowsException(rejected, null);
+        }
+    }
+
+    private void copyToStaging(List<Flight> batch) throws SQLException {
+        CopyIn copy = copyManager.copyIn("COPY staging_flights FROM STDIN WITH (FORMAT csv)");
+        try {
+            StringBuilder line = new StringBuilder(256);
+            for (int i = 0; i < batch.size(); i++) {
+                Flight f = batch.get(i);
+                line.setLength(0);
+                line.append(i).append(',');
+                appendCsv(line, f.flightNo()).append(',');
+                appendCsv(line, f.airlineName()).append(',');
+                appendCsv(line, f.aircraftModel()).append(',');
+                appendCsv(line, f.depCity()).append(',');
+                appendCsv(line, f.depCode()).append(',');
+                appendCsv(line, f.arrCity()).append(',');
+                appendCsv(line, f.arrCode()).append(',');
+                appendCsv(line, f.passengerName()).append(',');
+                appendCsv(line, f.passportNo()).append(',');
+                appendCsv(line, f.flightDate()).append('\n');
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                copy.writeToCopy(bytes, 0, bytes.length);
+            }
+            copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    // CSV: пустое поле без кавычек - NULL, остальное в кавычках с удвоением кавычек
+    private static StringBuilder appendCsv(StringBuilder sb, String value) {
+        if (value == null) return sb;
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+}
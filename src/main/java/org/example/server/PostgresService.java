@@ -1,91 +1,232 @@
 package org.example.server;
 
-import org.example.AppConfig;
 import org.example.model.Flight;
+import org.example.server.DimensionCache.Dimension;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PostgresService implements FlightWriter {
+    // Запись пачки одной транзакцией: все или ничего
+    @FunctionalInterface
+    interface Transaction {
+        void save(List<Flight> batch) throws SQLException;
+    }
+
+    // Общие справочники (авиакомпании, самолеты, аэропорты) нужны всем писателям:
+    // новые значения добавляются под этой блокировкой в отдельной короткой транзакции,
+    // чтобы параллельные писатели не плодили дубли и не ловили взаимные блокировки
+    private static final Object SHARED_DIMENSIONS_LOCK = new Object();
 
-public class PostgresService {
     private final Connection conn;
+    private final DimensionCache cache;
+
+    // Подготовленные запросы создаются один раз и переиспользуются для всех пачек
+    private final PreparedStatement selectAirline;
+    private final PreparedStatement insertAirline;
+    private final PreparedStatement selectAircraft;
+    private final PreparedStatement insertAircraft;
+    private final PreparedStatement insertAirport;
+    private final PreparedStatement selectPassenger;
+    private final PreparedStatement insertPassenger;
+    private final PreparedStatement insertFlight;
+
+    public PostgresService(Connection conn, DimensionCache cache) throws SQLException {
+        this.conn = conn;
+        this.cache = cache;
+
+        this.selectAirline = conn.prepareStatement("SELECT id FROM airlines WHERE name = ?");
+        this.insertAirline = conn.prepareStatement("INSERT INTO airlines (name) VALUES (?) RETURNING id");
+        this.selectAircraft = conn.prepareStatement("SELECT id FROM aircrafts WHERE model = ?");
+        this.insertAircraft = conn.prepareStatement("INSERT INTO aircrafts (model) VALUES (?) RETURNING id");
+        this.insertAirport = conn.prepareStatement("INSERT INTO airports (code, city) VALUES (?, ?) ON CONFLICT (code) DO NOTHING");
+        this.selectPassenger = conn.prepareStatement("SELECT id FROM passengers WHERE passport_no = ?");
+        this.insertPassenger = conn.prepareStatement("INSERT INTO passengers (passport_no, full_name) VALUES (?, ?) RETURNING id");
+        this.insertFlight = conn.prepareStatement("INSERT INTO flights (flight_no, date, airline_id, aircraft_id, dep_airport_code, arr_airport_code, passenger_id) VALUES (?, ?::timestamp, ?, ?, ?, ?, ?)");
+    }
+
+    public void saveFlight(Flight dto) {
+        try {
+            saveFlights(List.of(dto));
+        } catch (SQLException e) {
+            System.err.println("Error saving flight: " + e.getMessage());
+            e.printStackTrace(); // Полезно для отладки SQL
+        }
+    }
+
+    // Сохранение пачки рейсов одной транзакцией: справочники по строкам, рейсы через JDBC batch.
+    // Если пачка откатилась, она повторяется построчно (как до пакетной записи): корректные строки
+    // сохраняются, а плохие возвращаются в RejectedRowsException
+    @Override
+    public synchronized void saveFlights(List<Flight> batch) throws SQLException {
+        saveIsolated(batch, this::saveTransaction);
+    }
 
-    public PostgresService() throws SQLException {
-        AppConfig cfg = AppConfig.get();
-        this.conn = DriverManager.getConnection(cfg.pgUrl, cfg.pgUser, cfg.pgPass);
+    static void saveIsolated(List<Flight> batch, Transaction tx) throws SQLException {
+        if (batch.isEmpty()) return;
+        try {
+            tx.save(batch);
+        } catch (SQLException e) {
+            if (batch.size() == 1 || FlightWriter.connectionLost(e)) throw e;
+            saveRowByRow(batch, tx);
+        }
     }
 
-    public void saveFlight(Flight dto) throws SQLException {
+    private static void saveRowByRow(List<Flight> batch, Transaction tx) throws SQLException {
+        List<Flight> rejected = new ArrayList<>();
+        SQLException cause = null;
+        for (int i = 0; i < batch.size(); i++) {
+            Flight dto = batch.get(i);
+            try {
+                tx.save(List.of(dto));
+            } catch (SQLException e) {
+                System.err.println("Error saving flight " + dto.flightNo() + " " + dto.flightDate() + ": " + e.getMessage());
+                if (cause == null) cause = e;
+                rejected.add(dto);
+                if (FlightWriter.connectionLost(e)) {
+                    // Без соединения остаток пачки не записан; записанное до обрыва уже закоммичено
+                    rejected.addAll(batch.subList(i + 1, batch.size()));
+                    break;
+                }
+            }
+        }
+        if (!rejected.isEmpty()) throw new RejectedRowsException(rejected, cause);
+    }
+
+    private void saveTransaction(List<Flight> batch) throws SQLException {
+        // 1. Общие справочники - заранее и вне основной транзакции
+        Map<Dimension, Map<String, Integer>> shared = resolveSharedDimensions(batch);
+
         conn.setAutoCommit(false); // Транзакция
+        // Ключи, созданные в этой транзакции: попадут в кэш только после коммита
+        Map<Dimension, Map<String, Integer>> created = newDimensionMaps();
         try {
-            // 1. Нормализация справочников (находим ID или создаем новый)
-            int airlineId = getOrInsert(conn, "airlines", "name", dto.airlineName());
-            int aircraftId = getOrInsert(conn, "aircrafts", "model", dto.aircraftModel());
-
-            insertAirport(conn, dto.depCode(), dto.depCity());
-            insertAirport(conn, dto.arrCode(), dto.arrCity());
-
-            int passengerId = getOrInsertPassenger(conn, dto.passportNo(), dto.passengerName());
-
-            // 2. Вставка самого полета
-            String sql = "INSERT INTO flights (flight_no, date, airline_id, aircraft_id, dep_airport_code, arr_airport_code, passenger_id) VALUES (?, ?::timestamp, ?, ?, ?, ?, ?)";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, dto.flightNo());
-                ps.setString(2, dto.flightDate() + " 00:00:00");
-                ps.setInt(3, airlineId);
-                ps.setInt(4, aircraftId);
-                ps.setString(5, dto.depCode());
-                ps.setString(6, dto.arrCode());
-                ps.setInt(7, passengerId);
-                ps.executeUpdate();
+            for (Flight dto : batch) {
+                int airlineId = shared.get(Dimension.AIRLINE).get(dto.airlineName());
+                int aircraftId = shared.get(Dimension.AIRCRAFT).get(dto.aircraftModel());
+
+                // 2. Пассажир: писатель шардирован по паспорту, поэтому upsert идет в транзакции
+                int passengerId = resolve(Dimension.PASSENGER, dto.passportNo(), dto.passengerName(), created);
+
+                // 3. Сам полет копится в batch и уходит одним запросом
+                insertFlight.setString(1, dto.flightNo());
+                insertFlight.setString(2, dto.flightDate() + " 00:00:00");
+                insertFlight.setInt(3, airlineId);
+                insertFlight.setInt(4, aircraftId);
+                insertFlight.setString(5, dto.depCode());
+                insertFlight.setString(6, dto.arrCode());
+                insertFlight.setInt(7, passengerId);
+                insertFlight.addBatch();
             }
+            insertFlight.executeBatch();
             conn.commit();
-            System.out.println("Saved flight: " + dto.flightNo() + " (" + dto.passengerName() + ")");
-        } catch (Exception e) {
+            created.forEach(cache::putAll);
+        } catch (SQLException e) {
+            insertFlight.clearBatch();
             conn.rollback();
-            System.err.println("Error saving flight: " + e.getMessage());
-            e.printStackTrace(); // Полезно для отладки SQL
+            throw e;
         } finally {
             conn.setAutoCommit(true);
         }
     }
 
+    // Id авиакомпаний и самолетов пачки; отсутствующие в кэше значения (и аэропорты)
+    // добавляются под общей блокировкой с автокоммитом и сразу публикуются в кэш
+    private Map<Dimension, Map<String, Integer>> resolveSharedDimensions(List<Flight> batch) throws SQLException {
+        Map<Dimension, Map<String, Integer>> ids = newDimensionMaps();
+        Map<Dimension, Map<String, String>> missing = new EnumMap<>(Dimension.class);
+        for (Flight dto : batch) {
+            lookupShared(Dimension.AIRLINE, dto.airlineName(), null, ids, missing);
+            lookupShared(Dimension.AIRCRAFT, dto.aircraftModel(), null, ids, missing);
+            lookupShared(Dimension.AIRPORT, dto.depCode(), dto.depCity(), ids, missing);
+            lookupShared(Dimension.AIRPORT, dto.arrCode(), dto.arrCity(), ids, missing);
+        }
+        if (missing.isEmpty()) return ids;
+
+        synchronized (SHARED_DIMENSIONS_LOCK) {
+            Map<Dimension, Map<String, Integer>> created = newDimensionMaps();
+            for (Map.Entry<Dimension, Map<String, String>> e : missing.entrySet()) {
+                for (Map.Entry<String, String> value : e.getValue().entrySet()) {
+                    ids.get(e.getKey()).put(value.getKey(), resolve(e.getKey(), value.getKey(), value.getValue(), created));
+                }
+            }
+            created.forEach(cache::putAll);
+        }
+        return ids;
+    }
+
+    private void lookupShared(Dimension dim, String key, String extra,
+                              Map<Dimension, Map<String, Integer>> ids,
+                              Map<Dimension, Map<String, String>> missing) {
+        if (ids.get(dim).containsKey(key)) return;
+        Integer id = cache.get(dim, key);
+        if (id != null) {
+            ids.get(dim).put(key, id);
+        } else {
+            missing.computeIfAbsent(dim, d -> new HashMap<>()).putIfAbsent(key, extra);
+        }
+    }
+
+    private static Map<Dimension, Map<String, Integer>> newDimensionMaps() {
+        Map<Dimension, Map<String, Integer>> maps = new EnumMap<>(Dimension.class);
+        for (Dimension dim : Dimension.values()) {
+            maps.put(dim, new HashMap<>());
+        }
+        return maps;
+    }
+
+    // Ищем ключ сначала в кэше, затем среди созданных в текущей транзакции, и только потом в БД
+    private int resolve(Dimension dim, String key, String extra, Map<Dimension, Map<String, Integer>> created) throws SQLException {
+        Integer id = cache.get(dim, key);
+        if (id != null) return id;
+        Map<String, Integer> pending = created.get(dim);
+        id = pending.get(key);
+        if (id != null) return id;
+
+        id = switch (dim) {
+            case AIRLINE -> getOrInsert(selectAirline, insertAirline, key);
+            case AIRCRAFT -> getOrInsert(selectAircraft, insertAircraft, key);
+            case AIRPORT -> {
+                insertAirport(key, extra);
+                yield 0; // у аэропорта ключ - сам код
+            }
+            case PASSENGER -> getOrInsertPassenger(key, extra);
+        };
+        pending.put(key, id);
+        return id;
+    }
+
     // Хелпер: Найти ID или Вставить и вернуть ID
-    private int getOrInsert(Connection c, String table, String col, String val) throws SQLException {
-        String select = "SELECT id FROM " + table + " WHERE " + col + " = ?";
-        try (PreparedStatement ps = c.prepareStatement(select)) {
-            ps.setString(1, val);
-            ResultSet rs = ps.executeQuery();
+    private int getOrInsert(PreparedStatement select, PreparedStatement insert, String val) throws SQLException {
+        select.setString(1, val);
+        try (ResultSet rs = select.executeQuery()) {
             if (rs.next()) return rs.getInt(1);
         }
-        String insert = "INSERT INTO " + table + " (" + col + ") VALUES (?) RETURNING id";
-        try (PreparedStatement ps = c.prepareStatement(insert)) {
-            ps.setString(1, val);
-            ResultSet rs = ps.executeQuery();
+        insert.setString(1, val);
+        try (ResultSet rs = insert.executeQuery()) {
             rs.next();
             return rs.getInt(1);
         }
     }
 
-    private void insertAirport(Connection c, String code, String city) throws SQLException {
-        String sql = "INSERT INTO airports (code, city) VALUES (?, ?) ON CONFLICT (code) DO NOTHING";
-        try(PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, code);
-            ps.setString(2, city);
-            ps.executeUpdate();
-        }
+    private void insertAirport(String code, String city) throws SQLException {
+        insertAirport.setString(1, code);
+        insertAirport.setString(2, city);
+        insertAirport.executeUpdate();
     }
 
-    private int getOrInsertPassenger(Connection c, String passport, String name) throws SQLException {
-        String select = "SELECT id FROM passengers WHERE passport_no = ?";
-        try (PreparedStatement ps = c.prepareStatement(select)) {
-            ps.setString(1, passport);
-            ResultSet rs = ps.executeQuery();
+    private int getOrInsertPassenger(String passport, String name) throws SQLException {
+        selectPassenger.setString(1, passport);
+        try (ResultSet rs = selectPassenger.executeQuery()) {
             if (rs.next()) return rs.getInt(1);
         }
-        String insert = "INSERT INTO passengers (passport_no, full_name) VALUES (?, ?) RETURNING id";
-        try (PreparedStatement ps = c.prepareStatement(insert)) {
-            ps.setString(1, passport);
-            ps.setString(2, name);
-            ResultSet rs = ps.executeQuery();
+        insertPassenger.setString(1, passport);
+        insertPassenger.setString(2, name);
+        try (ResultSet rs = insertPassenger.executeQuery()) {
             rs.next();
             return rs.getInt(1);
         }
@@ -0,0 +1,105 @@
+package org.example.server;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Подтверждения доставок одного канала после коммита в БД.
+// Пачки писателей коммитятся не по порядку доставки, поэтому ack с multiple=true
+// отправляется только до последнего тега, перед которым все доставки уже закоммичены.
+// Незаписанное сообщение возвращается в очередь не больше maxDeliveries раз, затем перекладывается
+// в dead-letter очередь - иначе сообщение с плохой строкой крутилось бы вечно.
+public class RabbitAcker {
+    private enum State { PENDING, COMMITTED, REJECTED }
+
+    // Столько сообщений с неудачными попытками помним; самые старые забываются
+    private static final int MAX_TRACKED_FAILURES = 10_000;
+
+    private final Channel channel;
+    private final String deadLetterQueue;
+    private final int maxDeliveries;
+    private final TreeMap<Long, State> pending = new TreeMap<>();
+    // Неудачные попытки записи по id сообщения: после requeue у доставки новый тег, а id тот же
+    private final Map<String, Integer> failures = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_TRACKED_FAILURES;
+        }
+    };
+
+    public RabbitAcker(Channel channel, String deadLetterQueue, int maxDeliveries) {
+        this.channel = channel;
+        this.deadLetterQueue = deadLetterQueue;
+        this.maxDeliveries = Math.max(1, maxDeliveries);
+    }
+
+    // Регистрирует доставку; вызывается потоком консьюмера в порядке доставки
+    public synchronized void track(long deliveryTag) {
+        pending.put(deliveryTag, State.PENDING);
+    }
+
+    public synchronized void committed(long deliveryTag, String messageId) {
+        failures.remove(messageId);
+        settle(deliveryTag, State.COMMITTED);
+    }
+
+    // Рейсы сообщения не записаны: повтор, пока не исчерпаны попытки, затем dead-letter.
+    // Закоммиченные при прошлых попытках рейсы сообщения при повторе отсеет фильтр дублей
+    public synchronized void failed(long deliveryTag, String messageId, AMQP.BasicProperties props, byte[] body) {
+        int attempts = failures.merge(messageId, 1, Integer::sum);
+        if (attempts < maxDeliveries) {
+            rejected(deliveryTag, true);
+            return;
+        }
+        failures.remove(messageId);
+        System.err.println("RabbitMQ: сообщение не записано за " + attempts + " попыток");
+        deadLetter(deliveryTag, props, body);
+    }
+
+    // Сообщение, которое не записать, - в dead-letter очередь, из исходной оно подтверждается.
+    // Перекладывает сам консьюмер, а не x-dead-letter-exchange брокера: аргументы очереди не меняются
+    // (клиенты и старые очереди объявляют ее без них), и это работает на любом AMQP-брокере
+    public synchronized void deadLetter(long deliveryTag, AMQP.BasicProperties props, byte[] body) {
+        try {
+            channel.basicPublish("", deadLetterQueue, props, body);
+            System.err.println("RabbitMQ: сообщение перемещено в " + deadLetterQueue);
+        } catch (IOException e) {
+            // Не переложили - пусть брокер вернет его в очередь, чем потерять
+            System.err.println("RabbitMQ: ошибка публикации в " + deadLetterQueue + ": " + e.getMessage());
+            rejected(deliveryTag, true);
+            return;
+        }
+        settle(deliveryTag, State.COMMITTED);
+    }
+
+    private void settle(long deliveryTag, State state) {
+        pending.put(deliveryTag, state);
+        // Отклоненные уже получили nack: их тег нельзя подтверждать, но и ждать их не нужно
+        long ackUpTo = -1;
+        while (!pending.isEmpty() && pending.firstEntry().getValue() != State.PENDING) {
+            var done = pending.pollFirstEntry();
+            if (done.getValue() == State.COMMITTED) ackUpTo = done.getKey();
+        }
+        if (ackUpTo >= 0) {
+            try {
+                channel.basicAck(ackUpTo, true);
+            } catch (IOException e) {
+                System.err.println("RabbitMQ: ошибка ack: " + e.getMessage());
+            }
+        }
+    }
+
+    // Nack только этой доставки: requeue - вернуть в очередь для повтора
+    public synchronized void rejected(long deliveryTag, boolean requeue) {
+        try {
+            channel.basicNack(deliveryTag, false, requeue);
+        } catch (IOException e) {
+            System.err.println("RabbitMQ: ошибка nack: " + e.getMessage());
+        }
+        settle(deliveryTag, State.REJECTED);
+    }
+}
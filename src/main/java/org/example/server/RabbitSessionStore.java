@@ -0,0 +1,145 @@
+package org.example.server;
+
+import org.example.crypto.CryptoUtils;
+import org.example.protocol.Compression;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Ключи сессий RabbitMQ: билет -> AES ключ и кодек. Сообщение может пролежать в очереди дольше
+// билета в SessionTickets и пережить перезапуск сервера, поэтому ключи хранятся retention часов
+// в dir/sessions.properties, зашифрованные секретом сервера (AES-GCM). Секрет - app.rabbitMq.sessionSecret
+// или dir/secret.key, созданный при первом запуске. Оба файла доступны только владельцу (rw-------).
+// dir == null - ключи только в памяти процесса.
+public class RabbitSessionStore {
+    private static final String SESSIONS = "sessions.properties";
+    private static final String SECRET = "secret.key";
+
+    // line - запись файла: "выдан_мс iv шифротекст"; шифруется один раз при выдаче
+    private record Entry(SessionTickets.Session session, long issuedAt, String line) {}
+
+    private final Path dir;
+    private final SecretKey secret;
+    private final long retentionMs;
+    private final Map<String, Entry> sessions = new ConcurrentHashMap<>();
+
+    public RabbitSessionStore(Path dir, String secret, long retentionHours) throws Exception {
+        this.dir = dir;
+        this.retentionMs = TimeUnit.HOURS.toMillis(retentionHours);
+        if (dir == null) {
+            this.secret = null;
+            return;
+        }
+        Files.createDirectories(dir);
+        this.secret = secret.isEmpty() ? loadSecret(dir.resolve(SECRET)) : new SecretKeySpec(Base64.getDecoder().decode(secret), "AES");
+        load();
+    }
+
+    public synchronized void put(String ticket, SessionTickets.Session session) throws Exception {
+        long now = System.currentTimeMillis();
+        sessions.put(ticket, new Entry(session, now, dir == null ? null : encrypt(now, session)));
+        save();
+    }
+
+    // Сессия по билету или null, если билет не выдавался или хранился дольше retention
+    public SessionTickets.Session get(String ticket) {
+        if (ticket == null) return null;
+        Entry entry = sessions.get(ticket);
+        if (entry == null) return null;
+        if (System.currentTimeMillis() - entry.issuedAt() > retentionMs) {
+            sessions.remove(ticket);
+            return null;
+        }
+        return entry.session();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private void load() throws Exception {
+        Path file = dir.resolve(SESSIONS);
+        if (!Files.exists(file)) return;
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file)) {
+            props.load(in);
+        }
+        long border = System.currentTimeMillis() - retentionMs;
+        for (String ticket : props.stringPropertyNames()) {
+            // Истекшие записи не читаются и исчезнут при следующей записи файла
+            String line = props.getProperty(ticket);
+            String[] fields = line.split(" ");
+            long issuedAt = Long.parseLong(fields[0]);
+            if (issuedAt < border) continue;
+            try {
+                byte[] plain = CryptoUtils.decryptData(Base64.getDecoder().decode(fields[2]), secret, Base64.getDecoder().decode(fields[1]));
+                ByteBuffer buf = ByteBuffer.wrap(plain);
+                Compression compression = Compression.byId(buf.get());
+                byte[] key = new byte[buf.remaining()];
+                buf.get(key);
+                sessions.put(ticket, new Entry(new SessionTickets.Session(new SecretKeySpec(key, "AES"), compression), issuedAt, line));
+            } catch (Exception e) {
+                // Секрет сменился или запись повреждена: сообщения этой сессии останутся в очереди
+                System.err.println("RabbitMQ: не удалось расшифровать ключ сессии: " + e.getMessage());
+            }
+        }
+        System.out.println("RabbitMQ: загружено ключей сессий: " + sessions.size());
+    }
+
+    private void save() throws Exception {
+        if (dir == null) return;
+        long border = System.currentTimeMillis() - retentionMs;
+        sessions.values().removeIf(e -> e.issuedAt() < border);
+        Properties props = new Properties();
+        for (Map.Entry<String, Entry> e : sessions.entrySet()) {
+            props.setProperty(e.getKey(), e.getValue().line());
+        }
+        // Новый файл с правами владельца заменяет прежний целиком
+        Path tmp = Files.createTempFile(dir, SESSIONS, ".tmp", ownerOnly(dir));
+        try {
+            try (Writer out = Files.newBufferedWriter(tmp)) {
+                props.store(out, null);
+            }
+            Files.move(tmp, dir.resolve(SESSIONS), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private String encrypt(long issuedAt, SessionTickets.Session session) throws Exception {
+        byte[] key = session.key().getEncoded();
+        byte[] plain = ByteBuffer.allocate(1 + key.length).put(session.compression().id).put(key).array();
+        byte[] iv = CryptoUtils.generateIV(CryptoUtils.Mode.GCM);
+        return issuedAt + " " + Base64.getEncoder().encodeToString(iv)
+                + " " + Base64.getEncoder().encodeToString(CryptoUtils.encryptData(plain, secret, iv));
+    }
+
+    private static SecretKey loadSecret(Path file) throws Exception {
+        if (Files.exists(file)) {
+            return new SecretKeySpec(Base64.getDecoder().decode(Files.readString(file).trim()), "AES");
+        }
+        SecretKey key = CryptoUtils.generateAESKey();
+        Files.writeString(Files.createFile(file, ownerOnly(file.getParent())), Base64.getEncoder().encodeToString(key.getEncoded()));
+        System.out.println("RabbitMQ: создан секрет для ключей сессий " + file);
+        return key;
+    }
+
+    private static FileAttribute<?>[] ownerOnly(Path dir) {
+        return dir.getFileSystem().supportedFileAttributeViews().contains("posix")
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+                : new FileAttribute<?>[0];
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.server;
+
+import org.example.model.Flight;
+
+import java.sql.SQLException;
+import java.util.List;
+
+// Пачка записана частично: все рейсы, кроме rejected, закоммичены.
+// Причина - ошибка первой отклоненной строки
+public class RejectedRowsException extends SQLException {
+    private final transient List<Flight> rejected;
+
+    public RejectedRowsException(List<Flight> rejected, SQLException cause) {
+        super("Отклонено строк: " + rejected.size() + (cause != null ? " (" + cause.getMessage() + ")" : ""),
+                cause != null ? cause.getSQLState() : null, cause);
+        this.rejected = List.copyOf(rejected);
+    }
+
+    public List<Flight> rejected() {
+        return rejected;
+    }
+}
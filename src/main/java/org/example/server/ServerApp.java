@@ -1,34 +1,86 @@
 package org.example.server;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.DeliverCallback;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
 import org.apache.commons.lang3.SerializationUtils;
 import org.example.AppConfig;
 import org.example.crypto.CryptoUtils;
+import org.example.metrics.Metrics;
+import org.example.model.ClientHello;
 import org.example.model.EncryptedMessage;
 import org.example.model.Flight;
+import org.example.model.FlightBatch;
+import org.example.model.IngestAck;
+import org.example.model.ServerAccept;
+import org.example.model.ServerHello;
+import org.example.protocol.Compression;
+import org.example.protocol.Partitions;
 
 import javax.crypto.SecretKey;
 import java.io.EOFException;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.security.KeyPair;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class ServerApp {
-    private static PostgresService db;
+    private static WriterStage writers;
+    private static IngestCheckpoints checkpoints;
+    // Ключ RSA и билеты сессий общие для всех подключений и транспортов
+    private static ServerKeyManager serverKeys;
+    private static SessionTickets tickets;
+    private static volatile SessionTickets.Session legacyRabbitSession;
+    // Ключи сессий RabbitMQ на диске: сообщения в очереди переживают TTL билета и перезапуск сервера
+    private static RabbitSessionStore rabbitSessions;
+    // Отложенный возврат в очередь сообщений с неизвестным билетом
+    private static final ScheduledExecutorService rabbitRetries = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rabbit-retries");
+        t.setDaemon(true);
+        return t;
+    });
+    // Метка конца потока в очереди соединения (сравнивается по ссылке)
+    private static final FlightBatch END_OF_STREAM = new FlightBatch(new ArrayList<>());
+    // Сколько соединение после EOF клиента ждет коммита его пачек, чтобы отправить последние подтверждения
+    private static final long FINAL_ACK_TIMEOUT_MS = 60_000;
 
     public static void main(String[] args) {
         try {
-            db = new PostgresService();
             AppConfig config = AppConfig.get();
+            Metrics.start(config, "сервер", config.metricsServerHttpPort);
+            writers = new WriterStage(config);
+            checkpoints = new IngestCheckpoints(config);
+            serverKeys = new ServerKeyManager(config.rsaRotationMinutes);
+            tickets = new SessionTickets(config.sessionTicketTtlMinutes, config.maxSessionTickets);
             System.out.println("Сервер запущен. Режим: " + config.transportMode);
-            System.out.println("Подключение к БД PostgreSQL успешно.");
+            if (!"STUB".equalsIgnoreCase(config.dbSink)) {
+                System.out.println("Подключение к БД PostgreSQL успешно.");
+            }
 
             if ("SOCKET".equalsIgnoreCase(config.transportMode)) {
-                runSocketServer(config.socketPort);
+                runSocketServer(config);
+            } else if ("NIO".equalsIgnoreCase(config.transportMode)) {
+                new NioSocketServer(config.socketPort, writers, checkpoints, serverKeys, tickets, config.socketWorkerThreads).run();
+            } else if ("GRPC".equalsIgnoreCase(config.transportMode)) {
+                runGrpcServer(config);
             } else {
                 runRabbitMqServer(config);
             }
@@ -37,66 +89,207 @@ public class ServerApp {
         }
     }
 
-    private static void runSocketServer(int port) throws Exception {
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            while (true) {
-                System.out.println("Ждем клиента...");
-                Socket client = serverSocket.accept();
-                new Thread(() -> handleClient(client)).start();
+    // На каждое соединение - поток чтения и поток сохранения; по умолчанию виртуальные, поэтому тысячи
+    // клиентов не исчерпывают потоки ОС. Больше maxSessions соединений одновременно не обслуживается:
+    // следующие ждут в backlog сокета, пока не освободится место.
+    private static void runSocketServer(AppConfig config) throws Exception {
+        IngestMetrics metrics = new IngestMetrics("socket");
+        ThreadFactory threads = socketThreads(config.socketVirtualThreads);
+        AtomicInteger active = new AtomicInteger();
+        Metrics.gauge("server_socket_sessions", active::get);
+
+        // Очередь accept под всплеск подключений, а не стандартные 50
+        try (ServerSocket serverSocket = new ServerSocket(config.socketPort, Math.min(config.socketMaxSessions, 4096))) {
+            System.out.println("Сокет-сервер слушает порт " + config.socketPort + " (потоки "
+                    + (config.socketVirtualThreads ? "виртуальные" : "платформенные") + ", сессий до " + config.socketMaxSessions + ")");
+            serve(serverSocket, threads, config.socketMaxSessions, active,
+                    client -> handleClient(client, metrics, threads, config.socketConnectionQueue));
+        }
+    }
+
+    static ThreadFactory socketThreads(boolean virtual) {
+        return virtual
+                ? Thread.ofVirtual().name("socket-", 0).factory()
+                : Thread.ofPlatform().name("socket-", 0).factory();
+    }
+
+    // Цикл accept до закрытия serverSocket: новое соединение принимается, только когда активных
+    // (active) меньше maxSessions; каждое обслуживает handler в своем потоке threads
+    static void serve(ServerSocket serverSocket, ThreadFactory threads, int maxSessions, AtomicInteger active,
+                      Consumer<Socket> handler) throws Exception {
+        Semaphore sessions = new Semaphore(maxSessions);
+        while (true) {
+            sessions.acquire();
+            Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (Exception e) {
+                sessions.release();
+                throw e;
             }
+            threads.newThread(() -> {
+                active.incrementAndGet();
+                try {
+                    handler.accept(client);
+                } finally {
+                    active.decrementAndGet();
+                    sessions.release();
+                }
+            }).start();
         }
     }
 
-    private static void handleClient(Socket socket) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
+    // Чтение и расшифровка отделены от сохранения очередью соединения (queueCapacity пачек):
+    // пока WriterStage занят, сокет продолжает вычитываться, пока очередь не заполнится.
+    // Подтверждения сохраненных позиций (IngestAck) идут клиенту по тому же сокету
+    private static void handleClient(Socket socket, IngestMetrics metrics, ThreadFactory threads, int queueCapacity) {
+        // Потоки объектов закрываются вместе с сокетом: close() после неудачной отправки ack
+        // пытался бы дописать остаток буфера в уже закрытое соединение
+        try (socket) {
+            ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+            ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
 
-            KeyPair rsaPair = CryptoUtils.generateRSAKeys();
-            oos.writeObject(rsaPair.getPublic());
-            oos.flush();
+            SessionTickets.Session session = acceptHandshake(ois, oos).session();
+            System.out.println("Клиент подключен, ключ согласован, сжатие " + session.compression() + ".");
 
-            byte[] wrappedAesKey = (byte[]) ois.readObject();
-            SecretKey aesKey = CryptoUtils.unwrapAESKey(wrappedAesKey, rsaPair.getPrivate());
-            System.out.println("Клиент подключен, ключ согласован.");
+            IngestCheckpoints.Link link = checkpoints.link((stream, seq) -> sendAck(oos, new IngestAck(stream, seq)));
+            BlockingQueue<FlightBatch> decoded = new ArrayBlockingQueue<>(queueCapacity);
+            Thread persister = threads.newThread(() -> persist(decoded, link));
+            persister.start();
 
             // 3. Читаем данные в цикле
-            while (true) {
+            try {
+                while (true) {
+                    try {
+                        long start = System.nanoTime();
+                        EncryptedMessage msg = (EncryptedMessage) ois.readObject();
+                        metrics.receive.recordSince(start);
+                        metrics.messages.increment();
+                        metrics.bytes.add(msg.iv().length + msg.encryptedData().length);
+
+                        // РАСШИФРОВКА: используем IV из сообщения
+                        start = System.nanoTime();
+                        byte[] decryptedBytes = CryptoUtils.decryptData(msg.encryptedData(), session.key(), msg.iv());
+                        metrics.decrypt.recordSince(start);
+
+                        FlightBatch batch = batchOf(deserialize(session.compression(), decryptedBytes, metrics));
+                        metrics.records.add(batch.flights().size());
+                        decoded.put(batch);
+                    } catch (EOFException e) {
+                        System.out.println("Клиент отключился.");
+                        break;
+                    }
+                }
+            } finally {
+                // Уже расшифрованные пачки дописываются и после обрыва соединения
                 try {
-                    EncryptedMessage msg = (EncryptedMessage) ois.readObject();
-                    // РАСШИФРОВКА: используем IV из сообщения
-                    byte[] decryptedBytes = CryptoUtils.decryptData(msg.encryptedData(), aesKey, msg.iv());
-
-                    Flight dto = SerializationUtils.deserialize(decryptedBytes);
-                    db.saveFlight(dto);
-                } catch (EOFException e) {
-                    System.out.println("Клиент отключился.");
-                    break;
+                    decoded.put(END_OF_STREAM);
+                    persister.join();
+                } catch (InterruptedException e) {
+                    persister.interrupt();
+                    Thread.currentThread().interrupt();
                 }
             }
+
+            // Клиент закрыл свою сторону: ждем коммита его пачек и отправляем последние подтверждения
+            if (link.awaitCommitted(FINAL_ACK_TIMEOUT_MS)) {
+                checkpoints.flush();
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    private static void persist(BlockingQueue<FlightBatch> decoded, IngestCheckpoints.Link link) {
+        try {
+            FlightBatch batch;
+            while ((batch = decoded.take()) != END_OF_STREAM) {
+                IngestCheckpoints.Admission admission = link.admit(batch);
+                writers.submitRows(admission.flights(), admission.callback());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Потоки сброса подтверждений пишут в сокет соединения конкурентно
+    private static void sendAck(ObjectOutputStream oos, IngestAck ack) {
+        synchronized (oos) {
+            try {
+                oos.writeObject(ack);
+                oos.reset();
+                oos.flush();
+            } catch (IOException e) {
+                // Клиент уже отключился: позиция сохранена в ingest_checkpoints, он получит ее при повторе
+            }
+        }
+    }
+
+    // ServerHello с текущим ключом RSA, затем ClientHello: билет прошлой сессии (без RSA)
+    // или обернутый AES ключ. На неизвестный билет отвечаем отказом и ждем полный обмен.
+    // Кодек сжатия фиксируется при выдаче билета; неизвестный серверу кодек заменяется на NONE.
+    private record Accepted(String ticket, SessionTickets.Session session) {}
+
+    private static Accepted acceptHandshake(ObjectInputStream ois, ObjectOutputStream oos) throws Exception {
+        ServerKeyManager.ServerKey current = serverKeys.current();
+        oos.writeObject(new ServerHello(current.id(), current.pair().getPublic()));
+        oos.flush();
+
+        while (true) {
+            ClientHello hello = (ClientHello) ois.readObject();
+            if (hello.ticket() != null) {
+                SessionTickets.Session resumed = tickets.resume(hello.ticket());
+                oos.writeObject(resumed != null
+                        ? new ServerAccept(true, hello.ticket(), resumed.compression().name())
+                        : new ServerAccept(false, null, null));
+                oos.flush();
+                if (resumed != null) return new Accepted(hello.ticket(), resumed);
+                continue;
+            }
+            SessionTickets.Session session = new SessionTickets.Session(
+                    serverKeys.unwrap(hello.keyId(), hello.wrappedKey()), Compression.byName(hello.compression()));
+            String ticket = tickets.issue(session);
+            oos.writeObject(new ServerAccept(true, ticket, session.compression().name()));
+            oos.flush();
+            return new Accepted(ticket, session);
+        }
+    }
+
+    // --- ЛОГИКА GRPC ---
+    private static void runGrpcServer(AppConfig config) throws Exception {
+        FlightGrpcService service = new FlightGrpcService(writers, checkpoints, serverKeys, tickets, config);
+        Server server = ServerBuilder.forPort(config.socketPort)
+                .addService(ServerInterceptors.intercept(service, service.sessionInterceptor()))
+                .build()
+                .start();
+        System.out.println("gRPC сервер слушает порт " + config.socketPort);
+        server.awaitTermination();
+    }
+
     // --- ЛОГИКА RABBITMQ ---
     private static void runRabbitMqServer(AppConfig config) throws Exception {
         // Даже для RabbitMQ нужен канал обмена ключами.
         // Используем сокет для handshake, а данные пойдут через очередь.
-        final SecretKey[] sessionKey = {null};
-
-        // Поток для получения ключа
+        // Клиентов может быть несколько: каждое сообщение несет билет своей сессии в заголовке.
+        rabbitSessions = new RabbitSessionStore(config.rmqSessionDir.isEmpty() ? null : Path.of(config.rmqSessionDir),
+                config.rmqSessionSecret, config.rmqSessionRetentionHours);
         new Thread(() -> {
             try (ServerSocket ss = new ServerSocket(config.socketPort)) {
                 System.out.println("Ожидание ключа AES через side-channel порт " + config.socketPort);
-                Socket s = ss.accept();
-                try (ObjectOutputStream oos = new ObjectOutputStream(s.getOutputStream());
-                     ObjectInputStream ois = new ObjectInputStream(s.getInputStream())) {
-
-                    KeyPair kp = CryptoUtils.generateRSAKeys();
-                    oos.writeObject(kp.getPublic());
-                    byte[] wrapped = (byte[]) ois.readObject();
-                    sessionKey[0] = CryptoUtils.unwrapAESKey(wrapped, kp.getPrivate());
-                    System.out.println("RabbitMQ: Ключ AES получен.");
+                while (true) {
+                    Socket s = ss.accept();
+                    new Thread(() -> {
+                        try (s; ObjectOutputStream oos = new ObjectOutputStream(s.getOutputStream());
+                             ObjectInputStream ois = new ObjectInputStream(s.getInputStream())) {
+                            Accepted accepted = acceptHandshake(ois, oos);
+                            // Сохраняется и возобновленная сессия: срок хранения отсчитывается от последнего подключения
+                            rabbitSessions.put(accepted.ticket(), accepted.session());
+                            legacyRabbitSession = accepted.session();
+                            System.out.println("RabbitMQ: Ключ AES получен.");
+                        } catch (Exception e) { e.printStackTrace(); }
+                    }).start();
                 }
             } catch (Exception e) { e.printStackTrace(); }
         }).start();
@@ -108,24 +301,91 @@ public class ServerApp {
         factory.setPassword(config.rmqPass);
 
         com.rabbitmq.client.Connection connection = factory.newConnection();
-        Channel channel = connection.createChannel();
-        channel.queueDeclare(config.rmqQueue, true, false, false, null);
-        System.out.println("Слушаем очередь: " + config.rmqQueue);
+        IngestMetrics metrics = new IngestMetrics("rabbitmq");
+        // Своя очередь, канал и консьюмер на каждую партицию: партиции обрабатываются параллельно,
+        // рейсы одного пассажира - всегда в одной партиции и по порядку
+        for (int i = 0; i < config.rmqPartitions; i++) {
+            consumePartition(connection.createChannel(), Partitions.queueName(config.rmqQueue, i, config.rmqPartitions), config, metrics);
+        }
+    }
+
+    private static void consumePartition(Channel channel, String queue, AppConfig config, IngestMetrics metrics) throws Exception {
+        channel.queueDeclare(queue, true, false, false, null);
+        // Сообщения, которые не удалось прочитать или записать за rabbitMq.maxDeliveries попыток
+        String deadLetterQueue = queue + ".dead";
+        channel.queueDeclare(deadLetterQueue, true, false, false, null);
+        // Брокер держит у консьюмера не больше prefetch неподтвержденных сообщений
+        channel.basicQos(config.rmqPrefetch);
+        RabbitAcker acker = new RabbitAcker(channel, deadLetterQueue, config.rmqMaxDeliveries);
+        System.out.println("Слушаем очередь: " + queue);
 
+        // Ack только после коммита пачек с рейсами сообщения: при падении сервера сообщение вернется в очередь
         DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-            if (sessionKey[0] == null) {
-                System.err.println("Ошибка: Сообщение пришло, но ключ шифрования еще не согласован!");
+            long tag = delivery.getEnvelope().getDeliveryTag();
+            acker.track(tag);
+            SessionTickets.Session session = rabbitSession(delivery.getProperties());
+            if (session == null) {
+                // Ключ может быть еще не согласован (клиент опередил handshake) - сообщение не битое:
+                // возвращаем его в очередь с паузой, чтобы не крутить повторную доставку вхолостую
+                System.err.println("RabbitMQ: ключ сессии сообщения неизвестен, повтор через " + config.rmqUnknownSessionRetryMs + " мс");
+                rabbitRetries.schedule(() -> acker.rejected(tag, true), config.rmqUnknownSessionRetryMs, TimeUnit.MILLISECONDS);
                 return;
             }
+            List<Flight> flights;
+            String messageId;
             try {
+                long start = System.nanoTime();
                 EncryptedMessage msg = SerializationUtils.deserialize(delivery.getBody());
-                byte[] data = CryptoUtils.decryptData(msg.encryptedData(), sessionKey[0], msg.iv());
-                Flight dto = SerializationUtils.deserialize(data);
-                db.saveFlight(dto);
+                // IV случаен для каждого сообщения и не меняется при повторной доставке
+                messageId = Base64.getEncoder().encodeToString(msg.iv());
+                metrics.receive.recordSince(start);
+                metrics.messages.increment();
+                metrics.bytes.add(delivery.getBody().length);
+
+                start = System.nanoTime();
+                byte[] data = CryptoUtils.decryptData(msg.encryptedData(), session.key(), msg.iv());
+                metrics.decrypt.recordSince(start);
+                flights = batchOf(deserialize(session.compression(), data, metrics)).flights();
+                metrics.records.add(flights.size());
             } catch (Exception e) {
                 e.printStackTrace();
+                acker.deadLetter(tag, delivery.getProperties(), delivery.getBody());
+                return;
+            }
+            try {
+                // Писатели отклоняют только группы с плохими строками, соседние сообщения не страдают
+                writers.submitAll(flights, ok -> {
+                    if (ok) acker.committed(tag, messageId);
+                    else acker.failed(tag, messageId, delivery.getProperties(), delivery.getBody());
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acker.rejected(tag, true);
             }
         };
-        channel.basicConsume(config.rmqQueue, true, deliverCallback, consumerTag -> { });
+        channel.basicConsume(queue, false, deliverCallback, consumerTag -> { });
+    }
+
+    // Сессия по билету из заголовка "session"; сообщения без заголовка (старые клиенты) - последней сессией
+    private static SessionTickets.Session rabbitSession(AMQP.BasicProperties props) {
+        Object ticket = props.getHeaders() != null ? props.getHeaders().get("session") : null;
+        return ticket != null ? rabbitSessions.get(ticket.toString()) : legacyRabbitSession;
+    }
+
+    // Распаковка и Java-десериализация расшифрованного сообщения (SOCKET, RabbitMQ)
+    private static Object deserialize(Compression compression, byte[] data, IngestMetrics metrics) throws Exception {
+        long start = System.nanoTime();
+        byte[] plain = compression.decompress(data);
+        metrics.decompress.recordSince(start);
+
+        start = System.nanoTime();
+        Object payload = SerializationUtils.deserialize(plain);
+        metrics.deserialize.recordSince(start);
+        return payload;
+    }
+
+    // Сообщение содержит либо пачку рейсов, либо один рейс (старые клиенты)
+    private static FlightBatch batchOf(Object payload) {
+        return payload instanceof FlightBatch batch ? batch : new FlightBatch(List.of((Flight) payload));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package org.example.server;
+
+import org.example.crypto.CryptoUtils;
+
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Пара RSA сервера: генерируется один раз и меняется по расписанию, а не на каждое подключение
+public class ServerKeyManager {
+    public record ServerKey(long id, KeyPair pair) {}
+
+    private final AtomicLong ids = new AtomicLong();
+    private volatile ServerKey current;
+    // Предыдущий ключ принимается до следующей ротации: клиент мог получить его прямо перед сменой
+    private volatile ServerKey previous;
+
+    public ServerKeyManager(long rotationMinutes) throws Exception {
+        this.current = new ServerKey(ids.incrementAndGet(), CryptoUtils.generateRSAKeys());
+        if (rotationMinutes > 0) {
+            ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "rsa-rotation");
+                t.setDaemon(true);
+                return t;
+            });
+            timer.scheduleAtFixedRate(this::rotate, rotationMinutes, rotationMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    public ServerKey current() {
+        return current;
+    }
+
+    // Ключ с неизвестным id (клиент без поддержки keyId) разворачиваем текущим
+    public SecretKey unwrap(long keyId, byte[] wrappedKey) throws Exception {
+        ServerKey prev = previous;
+        ServerKey key = prev != null && prev.id() == keyId ? prev : current;
+        return CryptoUtils.unwrapAESKey(wrappedKey, key.pair().getPrivate());
+    }
+
+    private void rotate() {
+        try {
+            ServerKey next = new ServerKey(ids.incrementAndGet(), CryptoUtils.generateRSAKeys());
+            previous = current;
+            current = next;
+            System.out.println("Ключ RSA сервера обновлен, id " + next.id());
+        } catch (Exception e) {
+            System.err.println("Ошибка ротации ключа RSA: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.server;
+
+import org.example.crypto.CryptoUtils;
+import org.example.protocol.Compression;
+
+import javax.crypto.SecretKey;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Билеты сессий: после полного обмена ключом клиент получает билет и при переподключении
+// предъявляет его вместо нового AES ключа - без RSA на сервере
+public class SessionTickets {
+    // Параметры, согласованные при полном обмене ключом: AES ключ и кодек сжатия пачек
+    public record Session(SecretKey key, Compression compression) {}
+
+    private record Entry(Session session, AtomicLong lastUsed) {}
+
+    private final Map<String, Entry> tickets = new ConcurrentHashMap<>();
+    private final long ttlMs;
+    private final int maxTickets;
+
+    public SessionTickets(long ttlMinutes, int maxTickets) {
+        this.ttlMs = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        this.maxTickets = maxTickets;
+
+        ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-tickets-cleaner");
+            t.setDaemon(true);
+            return t;
+        });
+        cleaner.scheduleAtFixedRate(this::evictExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public String issue(Session session) {
+        if (tickets.size() >= maxTickets) {
+            evictExpired();
+            if (tickets.size() >= maxTickets) evictOldest();
+        }
+        String ticket = Base64.getUrlEncoder().withoutPadding().encodeToString(CryptoUtils.randomBytes(16));
+        tickets.put(ticket, new Entry(session, new AtomicLong(System.currentTimeMillis())));
+        return ticket;
+    }
+
+    // Сессия по билету или null, если билет неизвестен или истек
+    public Session resume(String ticket) {
+        if (ticket == null) return null;
+        Entry entry = tickets.get(ticket);
+        if (entry == null) return null;
+        long now = System.currentTimeMillis();
+        if (now - entry.lastUsed().get() > ttlMs) {
+            tickets.remove(ticket);
+            return null;
+        }
+        entry.lastUsed().set(now);
+        return entry.session();
+    }
+
+    private void evictExpired() {
+        long border = System.currentTimeMillis() - ttlMs;
+        tickets.values().removeIf(e -> e.lastUsed().get() < border);
+    }
+
+    private void evictOldest() {
+        tickets.entrySet().stream()
+                .min((a, b) -> Long.compare(a.getValue().lastUsed().get(), b.getValue().lastUsed().get()))
+                .ifPresent(e -> tickets.remove(e.getKey()));
+    }
+}
@@ -0,0 +1,13 @@
+package org.example.server;
+
+import org.example.model.Flight;
+
+import java.util.List;
+
+// Заглушка вместо PostgreSQL (database.sink = "STUB"): рейсы только учитываются в метриках писателей.
+// Для нагрузочных тестов транспорта и расшифровки без ограничения со стороны БД
+public class StubFlightWriter implements FlightWriter {
+    @Override
+    public void saveFlights(List<Flight> batch) {
+    }
+}
@@ -0,0 +1,328 @@
+package org.example.server;
+
+import org.example.AppConfig;
+import org.example.metrics.Counter;
+import org.example.metrics.Histogram;
+import org.example.metrics.Metrics;
+import org.example.model.Flight;
+import org.example.protocol.Partitions;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Стадия записи в БД: N писателей, у каждого своя очередь и свое соединение из пула.
+// Рейсы шардируются по номеру паспорта, поэтому upsert одного пассажира всегда идет
+// через одного писателя и транзакции разных писателей не блокируют друг друга.
+// Перед записью пачка проходит фильтр дублей (FlightDedup), если он включен.
+// С журналом (FlightJournal) пачки сначала дописываются в него, а писателям их отдает поток журнала.
+public class WriterStage implements AutoCloseable {
+    // Уведомление о судьбе группы рейсов (например, одного сообщения очереди):
+    // вызывается один раз, когда все рейсы группы закоммичены или хотя бы один из них отклонен
+    @FunctionalInterface
+    public interface CommitCallback {
+        void onCommit(boolean success);
+    }
+
+    // То же с точностью до рейса: rejected - незаписанные рейсы группы (пусто - все закоммичены)
+    @FunctionalInterface
+    public interface RowsCallback {
+        void onCommit(List<Flight> rejected);
+    }
+
+    // enqueuedAt - System.nanoTime() постановки в очередь, для метрики ожидания писателя
+    private record Pending(Flight flight, Commit commit, long enqueuedAt) {}
+
+    private static final Histogram QUEUE_WAIT = Metrics.histogram("server_stage_seconds", "stage", "queue");
+    private static final Histogram DB_WRITE = Metrics.histogram("server_stage_seconds", "stage", "db_write");
+    private static final Counter WRITTEN = Metrics.counter("server_written_total");
+    private static final Counter FAILED = Metrics.counter("server_write_failed_total");
+
+    private final ConnectionPool pool;
+    private final Worker[] workers;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long startedAt = System.nanoTime();
+    // null - журнал выключен, пачки сразу идут в очереди писателей
+    private final FlightJournal journal;
+
+    public WriterStage(AppConfig cfg) throws SQLException, InterruptedException, IOException {
+        int writers = cfg.dbPoolSize;
+        boolean stub = "STUB".equalsIgnoreCase(cfg.dbSink);
+        this.pool = stub ? null : new ConnectionPool(cfg, writers);
+        this.batchSize = cfg.dbBatchSize;
+        this.flushIntervalMs = cfg.dbBatchFlushMs;
+
+        DimensionCache cache = new DimensionCache(cfg.cachePassengerCapacity);
+        boolean copyMode = "COPY".equalsIgnoreCase(cfg.dbWriteMode);
+        // Без БД подтверждать возможные совпадения нечем - фильтр только для POSTGRES
+        FlightDedup dedup = cfg.dedupEnabled && !stub ? new FlightDedup(cfg.dedupMemoryMb, cfg.dedupHashes) : null;
+        int queuePerWorker = Math.max(batchSize, cfg.dbQueueCapacity / writers);
+
+        this.workers = new Worker[writers];
+        for (int i = 0; i < writers; i++) {
+            FlightWriter writer;
+            FlightDedup.Checker checker = null;
+            if (stub) {
+                writer = new StubFlightWriter();
+            } else {
+                Connection conn = pool.take();
+                if (i == 0 && cfg.cacheWarmUp && !copyMode) {
+                    cache.warmUp(conn);
+                }
+                if (dedup != null) {
+                    if (i == 0) dedup.warmUp(conn);
+                    checker = dedup.checker(conn);
+                }
+                writer = copyMode ? new PostgresBulkLoader(conn) : new PostgresService(conn, cache);
+            }
+            workers[i] = new Worker(i, writer, checker, new ArrayBlockingQueue<>(queuePerWorker));
+            workers[i].start();
+        }
+
+        // Глубина очередей и загрузка писателей видны в сводке метрик, JMX и /metrics
+        Metrics.gauge("server_writer_queue_depth", this::queueDepth);
+        Metrics.gauge("server_writer_utilization", this::utilization);
+        for (DimensionCache.Dimension dim : DimensionCache.Dimension.values()) {
+            Metrics.gauge("server_cache_hit_ratio", () -> {
+                long hits = cache.hits(dim);
+                long total = hits + cache.misses(dim);
+                return total == 0 ? 0 : (double) hits / total;
+            }, "dimension", dim.name().toLowerCase());
+        }
+        System.out.println("Стадия записи запущена: писателей " + writers + ", режим " + (stub ? "STUB (без БД)" : cfg.dbWriteMode));
+        // Журнал открывается после запуска писателей: незагруженные записи прошлого запуска идут в них сразу
+        this.journal = cfg.journalEnabled ? new FlightJournal(cfg, this::enqueueRows) : null;
+    }
+
+    // Писатели без пула, фильтра дублей и журнала (тесты)
+    WriterStage(List<FlightWriter> writers, int batchSize, long flushIntervalMs, int queuePerWorker) {
+        this.pool = null;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.journal = null;
+        this.workers = new Worker[writers.size()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, writers.get(i), null, new ArrayBlockingQueue<>(queuePerWorker));
+            workers[i].start();
+        }
+    }
+
+    // Блокируется, если очередь писателя заполнена - это и есть backpressure для стадий расшифровки
+    public void submit(Flight dto) throws InterruptedException {
+        if (journal != null) {
+            journal.append(List.of(dto), ok -> { });
+            return;
+        }
+        workers[shard(dto)].queue.put(new Pending(dto, null, System.nanoTime()));
+    }
+
+    public void submitAll(List<Flight> batch) throws InterruptedException {
+        for (Flight dto : batch) {
+            submit(dto);
+        }
+    }
+
+    // Рейсы группы расходятся по разным писателям; callback сработает после коммита последнего из них,
+    // а с журналом - после fsync журнала
+    public void submitAll(List<Flight> batch, CommitCallback callback) throws InterruptedException {
+        submitRows(batch, rejected -> callback.onCommit(rejected.isEmpty()));
+    }
+
+    // То же с точностью до рейса. С журналом группа принимается или отклоняется целиком:
+    // отклоненные БД рейсы журнал повторяет сам
+    public void submitRows(List<Flight> batch, RowsCallback callback) throws InterruptedException {
+        if (batch.isEmpty()) {
+            callback.onCommit(List.of());
+            return;
+        }
+        if (journal != null) {
+            journal.append(batch, ok -> callback.onCommit(ok ? List.of() : batch));
+            return;
+        }
+        enqueueRows(batch, callback);
+    }
+
+    private void enqueueRows(List<Flight> batch, RowsCallback callback) throws InterruptedException {
+        Commit commit = new Commit(batch.size(), callback);
+        for (Flight dto : batch) {
+            workers[shard(dto)].queue.put(new Pending(dto, commit, System.nanoTime()));
+        }
+    }
+
+    private int shard(Flight dto) {
+        return Partitions.of(dto, workers.length);
+    }
+
+    public int queueDepth() {
+        int depth = 0;
+        for (Worker w : workers) depth += w.queue.size();
+        return depth;
+    }
+
+    // Доля времени, которую писатели провели в работе с БД
+    public double utilization() {
+        long elapsed = System.nanoTime() - startedAt;
+        long busy = 0;
+        for (Worker w : workers) busy += w.busyNanos.get();
+        return elapsed == 0 ? 0 : (double) busy / ((double) elapsed * workers.length);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        if (journal != null) journal.close();
+        for (Worker w : workers) w.interrupt();
+        for (Worker w : workers) w.join();
+        if (pool != null) pool.close();
+    }
+
+    private static class Commit {
+        private final AtomicInteger remaining;
+        private final RowsCallback callback;
+        private final List<Flight> rejected = Collections.synchronizedList(new ArrayList<>());
+
+        Commit(int size, RowsCallback callback) {
+            this.remaining = new AtomicInteger(size);
+            this.callback = callback;
+        }
+
+        void done(Flight flight, boolean success) {
+            if (!success) rejected.add(flight);
+            if (remaining.decrementAndGet() == 0) callback.onCommit(List.copyOf(rejected));
+        }
+    }
+
+    private class Worker extends Thread {
+        final FlightWriter writer;
+        // null - фильтр дублей выключен
+        final FlightDedup.Checker dedup;
+        final BlockingQueue<Pending> queue;
+        final AtomicLong busyNanos = new AtomicLong();
+
+        Worker(int index, FlightWriter writer, FlightDedup.Checker dedup, BlockingQueue<Pending> queue) {
+            super("db-writer-" + index);
+            this.writer = writer;
+            this.dedup = dedup;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            List<Pending> batch = new ArrayList<>(batchSize);
+            long deadline = 0;
+            try {
+                while (true) {
+                    Pending next = batch.isEmpty()
+                            ? queue.take()
+                            : queue.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        if (batch.isEmpty()) deadline = System.currentTimeMillis() + flushIntervalMs;
+                        batch.add(next);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                    // Коммит по размеру пачки или по истечении окна
+                    if (batch.size() >= batchSize || System.currentTimeMillis() >= deadline) {
+                        write(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+                write(batch);
+            }
+        }
+
+        // Писатель не должен умирать: иначе его очередь заполнится, submitAll заблокирует все транспорты,
+        // а callback групп не сработают никогда. Непредвиденная ошибка (не SQLException) проваливает
+        // группы этой пачки, ошибка в callback одной группы не мешает остальным
+        private void write(List<Pending> batch) {
+            if (batch.isEmpty()) return;
+            Set<Flight> rejected;
+            try {
+                rejected = saveBatch(batch);
+            } catch (RuntimeException e) {
+                rejected = null;
+                FAILED.add(batch.size());
+                System.err.println("Error saving batch of " + batch.size() + " flights: " + e);
+                e.printStackTrace();
+            }
+            for (Pending p : batch) {
+                if (p.commit() == null) continue;
+                try {
+                    p.commit().done(p.flight(), rejected != null && !rejected.contains(p.flight()));
+                } catch (RuntimeException e) {
+                    System.err.println("Ошибка в обработчике коммита: " + e);
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        // Незаписанные рейсы пачки: неудачу получат только их группы, остальные закоммичены
+        private Set<Flight> saveBatch(List<Pending> batch) {
+            long start = System.nanoTime();
+            List<Flight> flights = new ArrayList<>(batch.size());
+            for (Pending p : batch) {
+                flights.add(p.flight());
+                QUEUE_WAIT.record(start - p.enqueuedAt());
+            }
+
+            // Отброшенные дубли считаются сохраненными: callback группы получит success
+            if (dedup != null) flights = dedup.filter(flights);
+            Set<Flight> rejected = new HashSet<>();
+            try {
+                save(flights, rejected);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                busyNanos.addAndGet(elapsed);
+                DB_WRITE.record(elapsed);
+            }
+            int failed = 0;
+            for (Flight f : flights) {
+                if (rejected.contains(f)) failed++;
+            }
+            WRITTEN.add(flights.size() - failed);
+            if (failed > 0) {
+                FAILED.add(failed);
+                System.err.println("Error saving batch of " + flights.size() + " flights: rejected " + failed);
+            }
+            return rejected;
+        }
+
+        // Пачка одной записью; если она упала не из-за соединения - делим пополам, пока плохая строка
+        // не останется одна. Корректные строки закоммичены, плохие попадают в rejected
+        private void save(List<Flight> flights, Set<Flight> rejected) {
+            if (flights.isEmpty()) return;
+            try {
+                writer.saveFlights(flights);
+                if (dedup != null) dedup.committed(flights);
+            } catch (RejectedRowsException e) {
+                rejected.addAll(e.rejected());
+                if (dedup != null) {
+                    List<Flight> committed = new ArrayList<>(flights);
+                    committed.removeAll(e.rejected());
+                    dedup.committed(committed);
+                }
+            } catch (SQLException e) {
+                if (flights.size() == 1 || FlightWriter.connectionLost(e)) {
+                    rejected.addAll(flights);
+                    System.err.println("Error saving " + flights.size() + " flights: " + e.getMessage());
+                    e.printStackTrace();
+                    return;
+                }
+                int half = flights.size() / 2;
+                save(flights.subList(0, half), rejected);
+                save(flights.subList(half, flights.size()), rejected);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.client;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Файл контрольной точки во временном каталоге
+class ExportCheckpointTest {
+    private static final String SOURCE = "jdbc:sqlite:flights.sqlite -> localhost:8899";
+    private static final List<ExportCheckpoint.Range> PLAN =
+            List.of(new ExportCheckpoint.Range(1, 100), new ExportCheckpoint.Range(101, 200));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void newExportStartsBeforeEachRange() throws Exception {
+        ExportCheckpoint checkpoint = ExportCheckpoint.open(dir.resolve("export.checkpoint"), SOURCE, PLAN);
+
+        assertFalse(checkpoint.resumed());
+        assertEquals(PLAN, checkpoint.ranges());
+        assertEquals(0, checkpoint.acked(0));
+        assertEquals(100, checkpoint.acked(1));
+        assertTrue(Files.exists(dir.resolve("export.checkpoint")));
+    }
+
+    @Test
+    void resumeContinuesFromAckedPositions() throws Exception {
+        Path file = dir.resolve("export.checkpoint");
+        ExportCheckpoint first = ExportCheckpoint.open(file, SOURCE, PLAN);
+        first.acked(0, 40);
+        first.acked(1, 150);
+
+        // Новый план (таблица выросла) не меняет диапазоны незавершенной выгрузки
+        ExportCheckpoint resumed = ExportCheckpoint.open(file, SOURCE, List.of(new ExportCheckpoint.Range(1, 500)));
+
+        assertTrue(resumed.resumed());
+        assertEquals(first.exportId(), resumed.exportId());
+        assertEquals(PLAN, resumed.ranges());
+        assertEquals(40, resumed.acked(0));
+        assertEquals(150, resumed.acked(1));
+    }
+
+    @Test
+    void ackNeverMovesBack() throws Exception {
+        ExportCheckpoint checkpoint = ExportCheckpoint.open(dir.resolve("export.checkpoint"), SOURCE, PLAN);
+
+        checkpoint.acked(0, 40);
+        checkpoint.acked(0, 30);
+        // Неизвестный поток игнорируется
+        checkpoint.acked(5, 1000);
+
+        assertEquals(40, checkpoint.acked(0));
+        assertEquals(40, ExportCheckpoint.open(dir.resolve("export.checkpoint"), SOURCE, PLAN).acked(0));
+    }
+
+    @Test
+    void otherSourceStartsNewExport() throws Exception {
+        Path file = dir.resolve("export.checkpoint");
+        ExportCheckpoint first = ExportCheckpoint.open(file, SOURCE, PLAN);
+        first.acked(0, 40);
+
+        ExportCheckpoint other = ExportCheckpoint.open(file, "jdbc:sqlite:other.sqlite -> localhost:8899", PLAN);
+
+        assertFalse(other.resumed());
+        assertNotEquals(first.exportId(), other.exportId());
+        assertEquals(0, other.acked(0));
+    }
+
+    @Test
+    void finishKeepsFileUntilEverythingIsAcked() throws Exception {
+        Path file = dir.resolve("export.checkpoint");
+        ExportCheckpoint checkpoint = ExportCheckpoint.open(file, SOURCE, PLAN);
+        checkpoint.sent(0, 100);
+        checkpoint.sent(1, 200);
+        checkpoint.acked(0, 100);
+
+        assertFalse(checkpoint.complete());
+        checkpoint.finish();
+        assertTrue(Files.exists(file));
+
+        checkpoint.acked(1, 200);
+        assertTrue(checkpoint.complete());
+        checkpoint.finish();
+        assertFalse(Files.exists(file));
+    }
+}
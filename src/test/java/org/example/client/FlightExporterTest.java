@@ -0,0 +1,206 @@
+package org.example.client;
+
+import com.typesafe.config.ConfigFactory;
+import org.example.AppConfig;
+import org.example.crypto.CryptoUtils;
+import org.example.model.EncryptedMessage;
+import org.example.model.Flight;
+import org.example.protocol.Compression;
+import org.example.protocol.FlightProto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Выгрузка из временной SQLite: отправленные пачки расшифровываются и декодируются обратно
+class FlightExporterTest {
+    @TempDir
+    Path dir;
+
+    private String url;
+    private SqliteReader reader;
+    private SecretKey key;
+    private Compression codec = Compression.NONE;
+    private final List<List<Flight>> sent = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = SqliteReaderTest.createTable(dir);
+        reader = new SqliteReader(url, 16);
+        key = CryptoUtils.generateAESKey();
+    }
+
+    @Test
+    void singleWorkerReadsOneRange() throws Exception {
+        SqliteReaderTest.insert(url, 100);
+
+        assertEquals(List.of(new ExportCheckpoint.Range(1, 100)), FlightExporter.planRanges(reader, 1));
+    }
+
+    @Test
+    void rangesCoverTableWithoutGapsOrOverlaps() throws Exception {
+        SqliteReaderTest.insert(url, 100);
+        try (Connection conn = DriverManager.getConnection(url); Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM raw_flights WHERE id <= 10");
+        }
+
+        List<ExportCheckpoint.Range> ranges = FlightExporter.planRanges(reader, 2);
+
+        // Диапазонов больше, чем потоков; границы - по фактическим min/max rowid
+        assertEquals(8, ranges.size());
+        assertEquals(11, ranges.get(0).from());
+        assertEquals(100, ranges.get(ranges.size() - 1).to());
+        for (int i = 1; i < ranges.size(); i++) {
+            assertEquals(ranges.get(i - 1).to() + 1, ranges.get(i).from());
+            assertTrue(ranges.get(i).from() <= ranges.get(i).to());
+        }
+    }
+
+    @Test
+    void emptyTableGetsOneEmptyRange() throws Exception {
+        assertEquals(List.of(new ExportCheckpoint.Range(1, 0)), FlightExporter.planRanges(reader, 4));
+    }
+
+    @Test
+    void parallelExportSendsEveryRowOnceInRangeOrder() throws Exception {
+        SqliteReaderTest.insert(url, 500);
+        codec = Compression.DEFLATE;
+        FlightExporter exporter = new FlightExporter(reader, key, codec,
+                config(Map.of("client.exportWorkers", 4, "client.batchSize", 7, "client.batchFlushMs", 60_000)));
+
+        long count = exporter.export(batch -> FlightProto.encodeBatch(batch), this::receive);
+
+        assertEquals(500, count);
+        List<Long> seqs = new ArrayList<>();
+        for (List<Flight> batch : sent) {
+            assertTrue(batch.size() <= 7);
+            for (Flight f : batch) seqs.add(f.seq());
+        }
+        assertEquals(500, seqs.size());
+        assertEquals(500, new HashSet<>(seqs).size());
+
+        // Пачки одного диапазона уходят в порядке чтения
+        List<ExportCheckpoint.Range> ranges = FlightExporter.planRanges(reader, 4);
+        for (ExportCheckpoint.Range range : ranges) {
+            long last = 0;
+            for (long seq : seqs) {
+                if (seq < range.from() || seq > range.to()) continue;
+                assertTrue(seq > last, "диапазон " + range + ": " + seq + " после " + last);
+                last = seq;
+            }
+        }
+    }
+
+    @Test
+    void sequentialExportKeepsTableOrder() throws Exception {
+        SqliteReaderTest.insert(url, 20);
+        FlightExporter exporter = new FlightExporter(reader, key, codec,
+                config(Map.of("client.exportWorkers", 1, "client.batchSize", 3, "client.batchFlushMs", 60_000)));
+
+        assertEquals(20, exporter.export(batch -> FlightProto.encodeBatch(batch), this::receive));
+
+        List<Long> seqs = new ArrayList<>();
+        for (List<Flight> batch : sent) {
+            for (Flight f : batch) seqs.add(f.seq());
+        }
+        List<Long> expected = new ArrayList<>();
+        for (long i = 1; i <= 20; i++) expected.add(i);
+        assertEquals(expected, seqs);
+        assertEquals(7, sent.size());
+    }
+
+    @Test
+    void staleBatchIsFlushedBeforeItFills() throws Exception {
+        SqliteReaderTest.insert(url, 5);
+        FlightExporter exporter = new FlightExporter(reader, key, codec,
+                config(Map.of("client.exportWorkers", 1, "client.batchSize", 100, "client.batchFlushMs", 0)));
+
+        assertEquals(5, exporter.export(batch -> FlightProto.encodeBatch(batch), this::receive));
+
+        // batchFlushMs = 0: пачка старше порога уходит с первой же записью
+        assertEquals(5, sent.size());
+    }
+
+    @Test
+    void tailSendsRowsAddedAfterInitialExport() throws Exception {
+        SqliteReaderTest.insert(url, 10);
+        FlightExporter exporter = new FlightExporter(reader, key, codec, config(Map.of("client.exportWorkers", 2,
+                "client.batchSize", 4, "client.batchFlushMs", 60_000, "client.tail.enabled", true, "client.tail.pollMs", 20)));
+        long[] count = {-1};
+        Thread exporting = new Thread(() -> {
+            try {
+                count[0] = exporter.export(batch -> FlightProto.encodeBatch(batch), this::receive);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        exporting.start();
+
+        await(() -> sentSeqs().size() == 10);
+        // Новые строки уходят очередным опросом, не дожидаясь batchSize
+        SqliteReaderTest.insert(url, 3);
+        await(() -> sentSeqs().size() == 13);
+        SqliteReaderTest.insert(url, 5);
+        await(() -> sentSeqs().size() == 18);
+
+        exporter.stop();
+        exporting.join(5_000);
+        assertFalse(exporting.isAlive());
+        assertEquals(18, count[0]);
+        List<Long> seqs = sentSeqs();
+        assertEquals(18, new HashSet<>(seqs).size());
+        // Хвост продолжает последний диапазон по порядку rowid
+        assertEquals(List.of(11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L), seqs.subList(10, 18));
+    }
+
+    private List<Long> sentSeqs() {
+        List<Long> seqs = new ArrayList<>();
+        synchronized (sent) {
+            for (List<Flight> batch : sent) {
+                for (Flight f : batch) seqs.add(f.seq());
+            }
+        }
+        return seqs;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 10 с");
+            Thread.sleep(10);
+        }
+    }
+
+    // Как сервер: расшифровка по IV, распаковка, декодирование пачки
+    void receive(EncryptedMessage msg) throws Exception {
+        byte[] plain = CryptoUtils.decryptData(msg.encryptedData(), key, msg.iv());
+        sent.add(FlightProto.decodeBatch(codec.decompress(plain)));
+    }
+
+    static AppConfig config(Map<String, Object> overrides) {
+        return new AppConfig(ConfigFactory.parseMap(prefixed(overrides)).withFallback(ConfigFactory.load()));
+    }
+
+    private static Map<String, Object> prefixed(Map<String, Object> overrides) {
+        Map<String, Object> result = new HashMap<>();
+        overrides.forEach((k, v) -> result.put("app." + k, v));
+        return result;
+    }
+}
@@ -0,0 +1,177 @@
+package org.example.client;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.example.grpc.EncryptedPacket;
+import org.example.grpc.FlightServiceGrpc;
+import org.example.grpc.StatusResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Сервер-заглушка на свободном порту localhost: пакеты не расшифровываются, только считаются
+class GrpcUploaderTest {
+    private final FakeService service = new FakeService();
+    private Server server;
+    private ManagedChannel channel;
+    private FlightServiceGrpc.FlightServiceStub stub;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = ServerBuilder.forPort(0).addService(service).build().start();
+        channel = ManagedChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build();
+        stub = FlightServiceGrpc.newStub(channel);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void packetsAreSpreadOverCallsAndResultsAggregated() throws Exception {
+        service.open();
+        GrpcUploader uploader = new GrpcUploader(stub, 3, 4);
+
+        for (int i = 0; i < 30; i++) {
+            uploader.send(packet(100));
+        }
+        StatusResponse result = uploader.finish(10, TimeUnit.SECONDS);
+
+        assertTrue(result.getSuccess(), result.getMessage());
+        assertEquals(3, service.calls.size());
+        assertEquals(30, service.received.get());
+        for (FakeService.Call call : service.calls) {
+            assertTrue(call.received > 0, "вызов без пакетов: " + result.getMessage());
+        }
+        assertEquals(3, result.getMessage().split("Imported").length - 1);
+    }
+
+    @Test
+    void slowServerBlocksSender() throws Exception {
+        // Сервер не запрашивает пакеты: HTTP/2 окно и очередь вызова заполняются, send блокируется
+        GrpcUploader uploader = new GrpcUploader(stub, 1, 2);
+        AtomicInteger sent = new AtomicInteger();
+        int total = 200;
+        CompletableFuture<Void> sender = CompletableFuture.runAsync(() -> {
+            try {
+                for (int i = 0; i < total; i++) {
+                    uploader.send(packet(64 * 1024));
+                    sent.incrementAndGet();
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(1_000);
+        int stalled = sent.get();
+        Thread.sleep(500);
+        assertFalse(sender.isDone());
+        assertTrue(stalled < total);
+        assertEquals(stalled, sent.get());
+
+        service.open();
+        sender.get(30, TimeUnit.SECONDS);
+        assertTrue(uploader.finish(10, TimeUnit.SECONDS).getSuccess());
+        assertEquals(total, service.received.get());
+    }
+
+    @Test
+    void serverEndingCallEarlyFailsSend() throws Exception {
+        service.rejectCalls = true;
+        GrpcUploader uploader = new GrpcUploader(stub, 2, 4);
+
+        IOException e = assertThrows(IOException.class, () -> {
+            for (int i = 0; i < 1_000; i++) {
+                uploader.send(packet(100));
+                Thread.sleep(5);
+            }
+        });
+
+        assertTrue(e.getMessage().contains("No Session Key"), e.getMessage());
+        assertFalse(uploader.finish(5, TimeUnit.SECONDS).getSuccess());
+    }
+
+    private static EncryptedPacket packet(int size) {
+        return EncryptedPacket.newBuilder()
+                .setIv(ByteString.copyFrom(new byte[12]))
+                .setEncryptedData(ByteString.copyFrom(new byte[size]))
+                .setBatch(true)
+                .build();
+    }
+
+    // StreamFlights с ручным flow control: пока сервер не открыт, пакеты не запрашиваются
+    private static final class FakeService extends FlightServiceGrpc.FlightServiceImplBase {
+        final List<Call> calls = new ArrayList<>();
+        final AtomicInteger received = new AtomicInteger();
+        volatile boolean rejectCalls;
+        private boolean open;
+
+        synchronized void open() {
+            open = true;
+            for (Call call : calls) call.stream.request(1);
+        }
+
+        @Override
+        public StreamObserver<EncryptedPacket> streamFlights(StreamObserver<StatusResponse> responseObserver) {
+            ServerCallStreamObserver<StatusResponse> stream = (ServerCallStreamObserver<StatusResponse>) responseObserver;
+            stream.disableAutoRequest();
+            if (rejectCalls) {
+                stream.onNext(StatusResponse.newBuilder().setSuccess(false).setMessage("No Session Key").build());
+                stream.onCompleted();
+            }
+            Call call = new Call(stream);
+            synchronized (this) {
+                calls.add(call);
+                if (open && !rejectCalls) stream.request(1);
+            }
+            return call;
+        }
+
+        private final class Call implements StreamObserver<EncryptedPacket> {
+            final ServerCallStreamObserver<StatusResponse> stream;
+            volatile int received;
+
+            Call(ServerCallStreamObserver<StatusResponse> stream) {
+                this.stream = stream;
+            }
+
+            @Override
+            public void onNext(EncryptedPacket packet) {
+                received++;
+                FakeService.this.received.incrementAndGet();
+                stream.request(1);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+                if (rejectCalls) return;
+                stream.onNext(StatusResponse.newBuilder().setSuccess(true).setMessage("Imported " + received + " flights").build());
+                stream.onCompleted();
+            }
+        }
+    }
+}
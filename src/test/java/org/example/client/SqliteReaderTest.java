@@ -0,0 +1,132 @@
+package org.example.client;
+
+import org.example.model.Flight;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Таблица raw_flights во временном файле SQLite
+class SqliteReaderTest {
+    @TempDir
+    Path dir;
+
+    private String url;
+    private SqliteReader reader;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        url = createTable(dir);
+        reader = new SqliteReader(url, 2);
+    }
+
+    @Test
+    void streamsAllRowsWithRowidAsSeq() throws Exception {
+        insert(url, 5);
+        List<Flight> read = new ArrayList<>();
+
+        assertEquals(5, reader.forEach(read::add));
+
+        assertEquals(5, read.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, read.get(i).seq());
+            assertEquals("SU-" + (i + 1), read.get(i).flightNo());
+        }
+    }
+
+    @Test
+    void keepsNullFields() throws Exception {
+        try (Connection conn = DriverManager.getConnection(url); Statement st = conn.createStatement()) {
+            st.execute("INSERT INTO raw_flights (flight_no, passport_no) VALUES ('SU-1', NULL)");
+        }
+        List<Flight> read = new ArrayList<>();
+        reader.forEach(read::add);
+
+        assertEquals("SU-1", read.get(0).flightNo());
+        assertNull(read.get(0).passportNo());
+        assertNull(read.get(0).flightDate());
+    }
+
+    @Test
+    void handlerErrorStopsReading() throws Exception {
+        insert(url, 10);
+        List<Long> seen = new ArrayList<>();
+
+        Exception e = assertThrows(IllegalStateException.class, () -> reader.forEach(f -> {
+            seen.add(f.seq());
+            if (f.seq() == 3) throw new IllegalStateException("stop");
+        }));
+
+        // Строки отдаются по мере чтения курсора, а не после загрузки всей таблицы
+        assertEquals("stop", e.getMessage());
+        assertEquals(List.of(1L, 2L, 3L), seen);
+    }
+
+    @Test
+    void rangeIsInclusiveAndOrdered() throws Exception {
+        insert(url, 10);
+        List<Long> seen = new ArrayList<>();
+
+        assertEquals(4, reader.forEachInRange(4, 7, f -> seen.add(f.seq())));
+
+        assertEquals(List.of(4L, 5L, 6L, 7L), seen);
+        assertEquals(0, reader.forEachInRange(11, Long.MAX_VALUE, f -> seen.add(f.seq())));
+    }
+
+    @Test
+    void idRangeOfEmptyTableIsEmpty() throws Exception {
+        long[] empty = reader.idRange();
+        assertTrue(empty[1] < empty[0]);
+
+        insert(url, 3);
+        assertArrayEquals(new long[]{1, 3}, reader.idRange());
+    }
+
+    // Схема клиентской базы; возвращает JDBC URL
+    static String createTable(Path dir) throws SQLException {
+        String url = "jdbc:sqlite:" + dir.resolve("flights.sqlite");
+        try (Connection conn = DriverManager.getConnection(url); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE raw_flights (id INTEGER PRIMARY KEY AUTOINCREMENT, flight_no TEXT, " +
+                    "airline_name TEXT, aircraft_model TEXT, dep_city TEXT, dep_code TEXT, arr_city TEXT, " +
+                    "arr_code TEXT, passenger_name TEXT, passport_no TEXT, flight_date TEXT)");
+        }
+        return url;
+    }
+
+    // count новых рейсов с номерами по их будущему rowid
+    static void insert(String url, int count) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url);
+             Statement st = conn.createStatement()) {
+            long next;
+            try (ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM raw_flights")) {
+                rs.next();
+                next = rs.getLong(1);
+            }
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO raw_flights (flight_no, airline_name, " +
+                    "aircraft_model, dep_city, dep_code, arr_city, arr_code, passenger_name, passport_no, flight_date) " +
+                    "VALUES (?, 'Aeroflot', 'A320', 'Moscow', 'SVO', 'Sochi', 'AER', ?, ?, '2024-05-01')")) {
+                for (long id = next; id < next + count; id++) {
+                    insert.setString(1, "SU-" + id);
+                    insert.setString(2, "Passenger " + id);
+                    insert.setString(3, "P" + id);
+                    insert.executeUpdate();
+                }
+            }
+        }
+    }
+}
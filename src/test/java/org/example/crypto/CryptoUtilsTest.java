@@ -0,0 +1,132 @@
+package org.example.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CryptoUtilsTest {
+    private static final byte[] PLAIN = "SU-1;Aeroflot;A320;Moscow;SVO;Sochi;AER".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void cbcRoundTrip() throws Exception {
+        SecretKey key = CryptoUtils.generateAESKey();
+        byte[] iv = CryptoUtils.generateIV(CryptoUtils.Mode.CBC);
+
+        byte[] encrypted = CryptoUtils.encryptData(PLAIN, key, iv);
+
+        assertEquals(16, iv.length);
+        // PKCS5: дополнение до целого числа блоков
+        assertEquals(0, encrypted.length % 16);
+        assertArrayEquals(PLAIN, CryptoUtils.decryptData(encrypted, key, iv));
+    }
+
+    @Test
+    void gcmRoundTrip() throws Exception {
+        SecretKey key = CryptoUtils.generateAESKey();
+        byte[] iv = CryptoUtils.generateIV(CryptoUtils.Mode.GCM);
+
+        byte[] encrypted = CryptoUtils.encryptData(PLAIN, key, iv);
+
+        assertEquals(12, iv.length);
+        // Без дополнения, плюс 16 байт тега
+        assertEquals(PLAIN.length + 16, encrypted.length);
+        assertArrayEquals(PLAIN, CryptoUtils.decryptData(encrypted, key, iv));
+    }
+
+    @Test
+    void receiverPicksModeByIvLength() throws Exception {
+        SecretKey key = CryptoUtils.generateAESKey();
+        byte[] gcmIv = CryptoUtils.generateIV(CryptoUtils.Mode.GCM);
+        byte[] gcm = CryptoUtils.encryptData(PLAIN, key, gcmIv);
+
+        // Тот же шифротекст под IV длины CBC не расшифровывается
+        byte[] cbcIv = new byte[16];
+        System.arraycopy(gcmIv, 0, cbcIv, 0, gcmIv.length);
+        assertThrows(GeneralSecurityException.class, () -> CryptoUtils.decryptData(gcm, key, cbcIv));
+        assertArrayEquals(PLAIN, CryptoUtils.decryptData(gcm, key, gcmIv));
+    }
+
+    @Test
+    void ivsAreFresh() {
+        assertFalse(Arrays.equals(CryptoUtils.generateIV(CryptoUtils.Mode.GCM), CryptoUtils.generateIV(CryptoUtils.Mode.GCM)));
+    }
+
+    @Test
+    void modeIsParsedIgnoringCase() {
+        assertEquals(CryptoUtils.Mode.GCM, CryptoUtils.Mode.of("gcm"));
+        assertEquals(CryptoUtils.Mode.CBC, CryptoUtils.Mode.of("Cbc"));
+        assertThrows(IllegalArgumentException.class, () -> CryptoUtils.Mode.of("CTR"));
+    }
+
+    @Test
+    void tamperedGcmMessageIsRejected() throws Exception {
+        SecretKey key = CryptoUtils.generateAESKey();
+        byte[] iv = CryptoUtils.generateIV(CryptoUtils.Mode.GCM);
+        byte[] encrypted = CryptoUtils.encryptData(PLAIN, key, iv);
+
+        encrypted[3] ^= 1;
+
+        assertThrows(AEADBadTagException.class, () -> CryptoUtils.decryptData(encrypted, key, iv));
+    }
+
+    @Test
+    void bufferApiMatchesArrayApi() throws Exception {
+        SecretKey key = CryptoUtils.generateAESKey();
+        for (CryptoUtils.Mode mode : CryptoUtils.Mode.values()) {
+            byte[] iv = CryptoUtils.generateIV(mode);
+            ByteBuffer encrypted = ByteBuffer.allocateDirect(CryptoUtils.maxOutputSize(PLAIN.length));
+
+            int written = CryptoUtils.encrypt(ByteBuffer.wrap(PLAIN), encrypted, key, iv);
+            encrypted.flip();
+            assertEquals(written, encrypted.remaining());
+
+            // Буфер и массив взаимозаменяемы на разных сторонах
+            byte[] array = new byte[written];
+            encrypted.duplicate().get(array);
+            assertArrayEquals(PLAIN, CryptoUtils.decryptData(array, key, iv));
+
+            ByteBuffer plain = ByteBuffer.allocate(CryptoUtils.maxOutputSize(written));
+            CryptoUtils.decrypt(encrypted, plain, key, iv);
+            assertEquals(ByteBuffer.wrap(PLAIN), plain.flip());
+        }
+    }
+
+    @Test
+    void wrappedKeyUnwrapsWithPrivateKey() throws Exception {
+        KeyPair rsa = CryptoUtils.generateRSAKeys();
+        SecretKey key = CryptoUtils.generateAESKey();
+
+        SecretKey unwrapped = CryptoUtils.unwrapAESKey(CryptoUtils.wrapAESKey(key, rsa.getPublic()), rsa.getPrivate());
+
+        assertArrayEquals(key.getEncoded(), unwrapped.getEncoded());
+    }
+
+    @Test
+    void gcmLimitStopsEncryptionOnly() throws Exception {
+        SecretKey key = CryptoUtils.generateAESKey();
+        byte[] iv = CryptoUtils.generateIV(CryptoUtils.Mode.GCM);
+        byte[] encrypted = CryptoUtils.encryptData(PLAIN, key, iv);
+        assertEquals(1, CryptoUtils.gcmMessages(key));
+
+        // Остаток лимита израсходован другими процессами, работавшими с тем же ключом
+        CryptoUtils.addGcmMessages(key, CryptoUtils.GCM_MESSAGES_PER_KEY - 1);
+
+        assertThrows(GeneralSecurityException.class,
+                () -> CryptoUtils.encryptData(PLAIN, key, CryptoUtils.generateIV(CryptoUtils.Mode.GCM)));
+        // Уже отправленное по-прежнему расшифровывается, CBC лимитом не считается
+        assertArrayEquals(PLAIN, CryptoUtils.decryptData(encrypted, key, iv));
+        byte[] cbcIv = CryptoUtils.generateIV(CryptoUtils.Mode.CBC);
+        assertArrayEquals(PLAIN, CryptoUtils.decryptData(CryptoUtils.encryptData(PLAIN, key, cbcIv), key, cbcIv));
+    }
+}
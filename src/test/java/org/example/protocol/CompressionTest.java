@@ -0,0 +1,83 @@
+package org.example.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionTest {
+    private static final byte[] BATCH = "SU-1;Aeroflot;A320;Moscow;SVO;Sochi;AER\n".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void deflateRoundTrip() throws IOException {
+        byte[] compressed = Compression.DEFLATE.compress(BATCH);
+
+        assertTrue(compressed.length < BATCH.length / 10);
+        assertArrayEquals(BATCH, Compression.DEFLATE.decompress(compressed));
+        assertEquals(ByteBuffer.wrap(BATCH), Compression.DEFLATE.decompress(ByteBuffer.wrap(compressed)));
+    }
+
+    @Test
+    void emptyAndIncompressibleInputRoundTrip() throws IOException {
+        byte[] random = new byte[10_000];
+        new Random(1).nextBytes(random);
+
+        assertArrayEquals(new byte[0], Compression.DEFLATE.decompress(Compression.DEFLATE.compress(new byte[0])));
+        assertArrayEquals(random, Compression.DEFLATE.decompress(Compression.DEFLATE.compress(random)));
+    }
+
+    @Test
+    void noneIsPassthrough() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(BATCH);
+
+        assertSame(BATCH, Compression.NONE.compress(BATCH));
+        assertSame(BATCH, Compression.NONE.decompress(BATCH));
+        assertSame(buf, Compression.NONE.decompress(buf));
+    }
+
+    @Test
+    void unknownCodecFallsBackToNone() {
+        assertEquals(Compression.DEFLATE, Compression.byName("deflate"));
+        assertEquals(Compression.NONE, Compression.byName("zstd"));
+        assertEquals(Compression.NONE, Compression.byName(""));
+        assertEquals(Compression.NONE, Compression.byName(null));
+        assertEquals(Compression.DEFLATE, Compression.byId((byte) 1));
+        assertEquals(Compression.NONE, Compression.byId((byte) 42));
+    }
+
+    @Test
+    void inflatedSizeIsCapped() throws IOException {
+        // Меньше мегабайта, которые распаковываются в 64 МБ + 1 байт
+        byte[] bomb = Compression.DEFLATE.compress(new byte[64 * 1024 * 1024 + 1]);
+        assertTrue(bomb.length < 1024 * 1024);
+
+        IOException e = assertThrows(IOException.class, () -> Compression.DEFLATE.decompress(bomb));
+        assertTrue(e.getMessage().startsWith("Распакованная пачка больше"), e.getMessage());
+
+        // Ровно лимит - допустимая пачка
+        assertEquals(64 * 1024 * 1024, Compression.DEFLATE.decompress(Compression.DEFLATE.compress(new byte[64 * 1024 * 1024])).length);
+
+        // Поток распаковки после отказа пригоден для следующей пачки
+        assertArrayEquals(BATCH, Compression.DEFLATE.decompress(Compression.DEFLATE.compress(BATCH)));
+    }
+
+    @Test
+    void truncatedOrCorruptDataIsRejected() {
+        byte[] compressed = Compression.DEFLATE.compress(BATCH);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        byte[] corrupt = compressed.clone();
+        corrupt[0] = (byte) 0xFF;
+
+        assertThrows(IOException.class, () -> Compression.DEFLATE.decompress(truncated));
+        assertThrows(IOException.class, () -> Compression.DEFLATE.decompress(corrupt));
+    }
+}
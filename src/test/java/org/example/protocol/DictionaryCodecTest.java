@@ -0,0 +1,111 @@
+package org.example.protocol;
+
+import org.example.model.Flight;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// DictionaryEncoder -> DictionaryDecoder: пачки возвращаются теми же рейсами в том же порядке
+class DictionaryCodecTest {
+
+    @Test
+    void batchScopedRoundTripKeepsOrder() throws Exception {
+        DictionaryEncoder encoder = new DictionaryEncoder(0);
+        DictionaryDecoder decoder = new DictionaryDecoder();
+        List<Flight> first = FlightProtoTest.flights(1, 300);
+        List<Flight> second = FlightProtoTest.flights(301, 310);
+
+        assertEquals(first, decode(decoder, encoder.encode(first)));
+        // scope 0: каждая пачка самодостаточна, декодер может быть новым
+        assertEquals(second, decode(new DictionaryDecoder(), encoder.encode(second)));
+    }
+
+    @Test
+    void streamScopedDictionarySpansBatches() throws Exception {
+        DictionaryEncoder encoder = new DictionaryEncoder(1);
+        DictionaryDecoder decoder = new DictionaryDecoder();
+        List<Flight> first = FlightProtoTest.flights(1, 50);
+        List<Flight> second = FlightProtoTest.flights(51, 100);
+
+        assertEquals(first, decode(decoder, encoder.encode(first)));
+        byte[] bytes = encoder.encode(second);
+        // Значения уже в словаре: во второй пачке только id
+        assertEquals(0, org.example.grpc.FlightBatch.parseFrom(bytes).getDictCount());
+        assertEquals(second, decode(decoder, bytes));
+    }
+
+    @Test
+    void nullAndEmptyFieldsSurvive() throws Exception {
+        List<Flight> flights = List.of(
+                new Flight(null, null, null, null, null, null, null, null, null, null, 1),
+                new Flight("", "", "", "", "", "", "", "", "", "", 2),
+                new Flight("SU-3", "Aeroflot", null, "", "SVO", null, "AER", null, "P3", null, 3));
+
+        assertEquals(flights, decode(new DictionaryDecoder(), new DictionaryEncoder(0).encode(flights)));
+        assertEquals(flights, FlightProto.decodeBatch(FlightProto.encodeBatch(flights)));
+    }
+
+    @Test
+    void overflowingBatchGoesPlainAndKeepsOrder() throws Exception {
+        DictionaryEncoder encoder = new DictionaryEncoder(1);
+        DictionaryDecoder decoder = new DictionaryDecoder();
+        // 6 новых значений на рейс: словарь почти заполнен
+        List<Flight> filler = unique(0, (DictionaryEncoder.MAX_ENTRIES - 100) / 6);
+        assertEquals(filler, decode(decoder, encoder.encode(filler)));
+
+        // Словарь кончается посреди пачки: вся пачка уходит обычными FlightData
+        List<Flight> mixed = new ArrayList<>(FlightProtoTest.flights(1, 10));
+        mixed.addAll(unique(100_000, 50));
+        mixed.addAll(FlightProtoTest.flights(11, 20));
+        byte[] bytes = encoder.encode(mixed);
+        org.example.grpc.FlightBatch proto = org.example.grpc.FlightBatch.parseFrom(bytes);
+        assertEquals(mixed.size(), proto.getFlightsCount());
+        assertEquals(0, proto.getEncodedCount());
+        assertEquals(mixed, decode(decoder, bytes));
+
+        // Значения отброшенной пачки не заняли словарь: следующая пачка снова кодируется
+        List<Flight> next = FlightProtoTest.flights(21, 30);
+        bytes = encoder.encode(next);
+        assertEquals(next.size(), org.example.grpc.FlightBatch.parseFrom(bytes).getEncodedCount());
+        assertEquals(next, decode(decoder, bytes));
+    }
+
+    @Test
+    void reorderedStreamBatchIsRejected() throws Exception {
+        DictionaryEncoder encoder = new DictionaryEncoder(1);
+        encoder.encode(FlightProtoTest.flights(1, 5));
+        byte[] second = encoder.encode(unique(0, 1));
+
+        // Первая пачка потока не дошла: id словаря во второй начинаются не с 1
+        assertThrows(IOException.class, () -> decode(new DictionaryDecoder(), second));
+    }
+
+    @Test
+    void decodedValuesAreCanonical() throws Exception {
+        List<Flight> a = decode(new DictionaryDecoder(), new DictionaryEncoder(0).encode(FlightProtoTest.flights(1, 2)));
+        List<Flight> b = decode(new DictionaryDecoder(), new DictionaryEncoder(0).encode(FlightProtoTest.flights(3, 4)));
+
+        assertSame(a.get(0).airlineName(), b.get(1).airlineName());
+        assertSame(a.get(0).depCode(), DictionaryDecoder.canonical(new String("SVO")));
+    }
+
+    private static List<Flight> decode(DictionaryDecoder decoder, byte[] bytes) throws IOException {
+        return FlightProto.decodeBatch(bytes, decoder);
+    }
+
+    // count рейсов, у которых все словарные поля уникальны
+    private static List<Flight> unique(int from, int count) {
+        List<Flight> flights = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            flights.add(new Flight("SU-" + i, "Airline " + i, "Model " + i, "City " + i, "D" + i,
+                    "Arr " + i, "A" + i, "Passenger " + i, "P" + i, "2024-05-01", i));
+        }
+        return flights;
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.protocol;
+
+import org.example.model.Flight;
+import org.example.model.FlightBatch;
+import org.example.model.StreamPosition;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightProtoTest {
+
+    @Test
+    void batchRoundTripKeepsOrderAndSeq() throws Exception {
+        List<Flight> flights = flights(1, 500);
+
+        byte[] bytes = FlightProto.encodeBatch(flights);
+
+        assertEquals(flights, FlightProto.decodeBatch(bytes));
+        assertEquals(flights, FlightProto.decodeBatch(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    void batchIsSmallerThanSeparateMessages() {
+        List<Flight> flights = flights(1, 100);
+        int separate = 0;
+        for (Flight f : flights) {
+            separate += FlightProto.encodeBatch(List.of(f)).length;
+        }
+
+        // Одна пачка дешевле сотни конвертов даже без сжатия: выигрыш - на заголовках сообщений
+        assertTrue(FlightProto.encodeBatch(flights).length <= separate);
+    }
+
+    @Test
+    void emptyBatchRoundTrips() throws Exception {
+        byte[] bytes = FlightProto.encodeBatch(List.of());
+
+        assertEquals(List.of(), FlightProto.decodeBatch(bytes));
+    }
+
+    @Test
+    void positionTravelsWithBatch() throws Exception {
+        List<Flight> flights = flights(11, 15);
+        StreamPosition position = new StreamPosition("export-1", 2, 10, 10);
+
+        byte[] bytes = FlightProto.encodeBatch(new FlightBatch(flights, position));
+        FlightBatch decoded = FlightProto.decodeFlightBatch(ByteBuffer.wrap(bytes), new DictionaryDecoder());
+
+        assertEquals(flights, decoded.flights());
+        assertEquals(position, decoded.position());
+    }
+
+    @Test
+    void batchWithoutPositionDecodesToNull() throws Exception {
+        byte[] bytes = FlightProto.encodeBatch(flights(1, 3));
+
+        assertNull(FlightProto.decodeFlightBatch(bytes, new DictionaryDecoder()).position());
+    }
+
+    @Test
+    void truncatedBatchIsRejected() {
+        byte[] bytes = FlightProto.encodeBatch(flights(1, 10));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+
+        assertThrows(IOException.class, () -> FlightProto.decodeBatch(truncated));
+    }
+
+    static List<Flight> flights(long from, long to) {
+        List<Flight> flights = new ArrayList<>();
+        for (long seq = from; seq <= to; seq++) {
+            flights.add(new Flight("SU-" + seq, "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER",
+                    "Passenger " + seq, "P" + seq, "2024-05-01", seq));
+        }
+        return flights;
+    }
+}
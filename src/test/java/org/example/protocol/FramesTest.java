@@ -0,0 +1,117 @@
+package org.example.protocol;
+
+import org.example.model.EncryptedMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FramesTest {
+
+    @Test
+    void framesRoundTripInOrder() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Frames.write(out, Frames.RESUME, "ticket".getBytes(StandardCharsets.UTF_8));
+        Frames.write(out, Frames.RESUME_REJECTED, new byte[0]);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Frames.Frame first = Frames.read(in);
+        Frames.Frame second = Frames.read(in);
+
+        assertEquals(Frames.RESUME, first.type());
+        assertEquals("ticket", new String(first.body(), StandardCharsets.UTF_8));
+        assertEquals(Frames.RESUME_REJECTED, second.type());
+        assertEquals(0, second.body().length);
+        assertThrows(EOFException.class, () -> Frames.read(in));
+    }
+
+    @Test
+    void encodeMatchesStreamFormat() throws IOException {
+        byte[] body = {1, 2, 3};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Frames.write(new DataOutputStream(bytes), Frames.ACK, body);
+
+        ByteBuffer encoded = Frames.encode(Frames.ACK, body);
+
+        assertEquals(Frames.HEADER_SIZE + body.length, encoded.remaining());
+        byte[] array = new byte[encoded.remaining()];
+        encoded.get(array);
+        assertArrayEquals(bytes.toByteArray(), array);
+    }
+
+    @Test
+    void dataFrameCarriesIvBeforeCiphertext() throws IOException {
+        byte[] iv = new byte[12];
+        iv[0] = 42;
+        byte[] ciphertext = {7, 8, 9, 10};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Frames.writeData(new DataOutputStream(bytes), new EncryptedMessage(iv, ciphertext));
+
+        Frames.Frame frame = Frames.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        ByteBuffer body = ByteBuffer.wrap(frame.body());
+
+        assertEquals(Frames.DATA, frame.type());
+        assertArrayEquals(iv, Frames.readIv(body));
+        // Буфер остается на начале шифротекста
+        byte[] rest = new byte[body.remaining()];
+        body.get(rest);
+        assertArrayEquals(ciphertext, rest);
+    }
+
+    @Test
+    void malformedDataFrameIsRejected() {
+        assertThrows(IOException.class, () -> Frames.readIv(ByteBuffer.allocate(0)));
+        assertThrows(IOException.class, () -> Frames.readIv(ByteBuffer.wrap(new byte[]{16, 1, 2, 3})));
+    }
+
+    @Test
+    void lengthIsChecked() {
+        assertDoesNotThrow(() -> Frames.checkLength(0));
+        assertDoesNotThrow(() -> Frames.checkLength(Frames.MAX_BODY_SIZE));
+        assertThrows(IOException.class, () -> Frames.checkLength(Frames.MAX_BODY_SIZE + 1));
+        assertThrows(IOException.class, () -> Frames.checkLength(-1));
+    }
+
+    @Test
+    void oversizedFrameIsRejectedBeforeAllocation() {
+        // Заголовок обещает тело больше лимита; само тело не приходит
+        byte[] header = ByteBuffer.allocate(Frames.HEADER_SIZE).putInt(Frames.MAX_BODY_SIZE + 1).put(Frames.DATA).array();
+
+        assertThrows(IOException.class, () -> Frames.read(new DataInputStream(new ByteArrayInputStream(header))));
+    }
+
+    @Test
+    void bodiesParseBackAsServerReadsThem() {
+        byte[] wrapped = {5, 6, 7};
+        ByteBuffer sessionKey = ByteBuffer.wrap(Frames.sessionKeyBody(99L, Compression.DEFLATE, wrapped));
+        assertEquals(99L, sessionKey.getLong());
+        assertEquals(Compression.DEFLATE, Compression.byId(sessionKey.get()));
+        byte[] key = new byte[sessionKey.remaining()];
+        sessionKey.get(key);
+        assertArrayEquals(wrapped, key);
+
+        ByteBuffer ticket = ByteBuffer.wrap(Frames.ticketBody(Compression.NONE, "билет-1"));
+        assertEquals(Compression.NONE, Compression.byId(ticket.get()));
+        assertEquals("билет-1", StandardCharsets.UTF_8.decode(ticket).toString());
+
+        ByteBuffer ack = ByteBuffer.wrap(Frames.ackBody(3, 1_000_000_000_000L));
+        assertEquals(3, ack.getInt());
+        assertEquals(1_000_000_000_000L, ack.getLong());
+
+        ByteBuffer publicKey = ByteBuffer.wrap(Frames.withKeyId(-1L, new byte[]{1}));
+        assertEquals(-1L, publicKey.getLong());
+        assertEquals(1, publicKey.get());
+    }
+}
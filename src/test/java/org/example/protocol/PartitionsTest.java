@@ -0,0 +1,66 @@
+package org.example.protocol;
+
+import org.example.model.Flight;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionsTest {
+
+    @Test
+    void partitionDependsOnlyOnPassport() {
+        Flight first = new Flight("SU-1", "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER", "Ivan", "P1", "2024-05-01", 1);
+        Flight second = new Flight("S7-9", "S7", "B737", "Novosibirsk", "OVB", "Kazan", "KZN", "Ivan", "P1", "2024-06-01", 9);
+
+        assertEquals(Partitions.of(first, 8), Partitions.of(second, 8));
+    }
+
+    @Test
+    void partitionIsStableAcrossProcesses() {
+        // Клиент и сервер считают партицию независимо: значение зависит от String.hashCode,
+        // который задан спецификацией, а не от процесса. "P1".hashCode() = 2529
+        assertEquals(1, Partitions.of(flight("P1"), 4));
+        assertEquals(2529 % 7, Partitions.of(flight("P1"), 7));
+    }
+
+    @Test
+    void partitionIsInRangeForNegativeHashes() {
+        assertTrue("polygenelubricants".hashCode() < 0);
+        for (int partitions = 2; partitions <= 16; partitions++) {
+            int p = Partitions.of(flight("polygenelubricants"), partitions);
+            assertTrue(p >= 0 && p < partitions, "партиция " + p + " из " + partitions);
+        }
+    }
+
+    @Test
+    void singlePartitionAndMissingPassport() {
+        assertEquals(0, Partitions.of(flight("P1"), 1));
+        assertEquals(0, Partitions.of(flight("P1"), 0));
+        assertEquals(Partitions.of(flight(""), 4), Partitions.of(flight(null), 4));
+    }
+
+    @Test
+    void passportsSpreadEvenly() {
+        int[] counts = new int[4];
+        for (int i = 0; i < 10_000; i++) {
+            counts[Partitions.of(flight(String.format("%04d %06d", i % 9000 + 1000, i * 7919 % 1_000_000)), 4)]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 2_000 && count < 3_000, "неравномерно: " + Arrays.toString(counts));
+        }
+    }
+
+    @Test
+    void queueNames() {
+        assertEquals("flights_queue", Partitions.queueName("flights_queue", 0, 1));
+        assertEquals("flights_queue.0", Partitions.queueName("flights_queue", 0, 4));
+        assertEquals("flights_queue.3", Partitions.queueName("flights_queue", 3, 4));
+    }
+
+    private static Flight flight(String passportNo) {
+        return new Flight("SU-1", "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER", "Passenger", passportNo, "2024-05-01", 1);
+    }
+}
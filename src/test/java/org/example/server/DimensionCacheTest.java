@@ -0,0 +1,170 @@
+package org.example.server;
+
+import org.example.model.Flight;
+import org.example.server.DimensionCache.Dimension;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DimensionCacheTest {
+
+    @Test
+    void passengersAreEvictedLeastRecentlyUsedFirst() {
+        DimensionCache cache = new DimensionCache(2);
+        cache.putAll(Dimension.PASSENGER, Map.of("P1", 1));
+        cache.putAll(Dimension.PASSENGER, Map.of("P2", 2));
+        // Обращение делает P1 свежим: вытесняется P2
+        assertEquals(1, cache.get(Dimension.PASSENGER, "P1"));
+        cache.putAll(Dimension.PASSENGER, Map.of("P3", 3));
+
+        assertEquals(1, cache.get(Dimension.PASSENGER, "P1"));
+        assertNull(cache.get(Dimension.PASSENGER, "P2"));
+        assertEquals(3, cache.get(Dimension.PASSENGER, "P3"));
+    }
+
+    @Test
+    void sharedDimensionsAreNotBounded() {
+        DimensionCache cache = new DimensionCache(1);
+        Map<String, Integer> airlines = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            airlines.put("Airline " + i, i);
+        }
+        cache.putAll(Dimension.AIRLINE, airlines);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, cache.get(Dimension.AIRLINE, "Airline " + i));
+        }
+    }
+
+    @Test
+    void countsHitsAndMissesPerDimension() {
+        DimensionCache cache = new DimensionCache(10);
+        Map<String, Integer> withNull = new HashMap<>();
+        withNull.put("A320", 7);
+        withNull.put(null, 8);
+        cache.putAll(Dimension.AIRCRAFT, withNull);
+
+        assertEquals(7, cache.get(Dimension.AIRCRAFT, "A320"));
+        assertNull(cache.get(Dimension.AIRCRAFT, "B737"));
+        // Ключ null не кэшируется и всегда промах
+        assertNull(cache.get(Dimension.AIRCRAFT, null));
+
+        assertEquals(1, cache.hits(Dimension.AIRCRAFT));
+        assertEquals(2, cache.misses(Dimension.AIRCRAFT));
+        assertEquals(0, cache.hits(Dimension.AIRLINE) + cache.misses(Dimension.AIRLINE));
+    }
+
+    @Test
+    void committedKeysArePublished() throws SQLException {
+        DimensionCache cache = new DimensionCache(10);
+        FakeDb db = new FakeDb();
+        PostgresService service = new PostgresService(db.connection(), cache);
+
+        service.saveFlights(List.of(flight("P1")));
+
+        assertEquals(1, db.commits);
+        assertNotNull(cache.get(Dimension.PASSENGER, "P1"));
+        assertNotNull(cache.get(Dimension.AIRLINE, "Aeroflot"));
+        assertNotNull(cache.get(Dimension.AIRPORT, "SVO"));
+    }
+
+    @Test
+    void rolledBackPassengerIsNotPublished() throws SQLException {
+        DimensionCache cache = new DimensionCache(10);
+        FakeDb db = new FakeDb();
+        db.failFlights = true;
+        PostgresService service = new PostgresService(db.connection(), cache);
+
+        assertThrows(SQLException.class, () -> service.saveFlights(List.of(flight("P1"))));
+
+        assertEquals(1, db.rollbacks);
+        // id пассажира из откаченной транзакции недействителен
+        assertNull(cache.get(Dimension.PASSENGER, "P1"));
+        // Общие справочники записаны отдельной транзакцией до рейсов и остаются в кэше
+        assertNotNull(cache.get(Dimension.AIRLINE, "Aeroflot"));
+    }
+
+    private static Flight flight(String passportNo) {
+        return new Flight("SU-1", "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER",
+                "Passenger " + passportNo, passportNo, "2024-05-01");
+    }
+
+    // Соединение-заглушка: SELECT ничего не находит, INSERT ... RETURNING выдает следующий id,
+    // пачка рейсов падает при failFlights
+    private static final class FakeDb implements InvocationHandler {
+        boolean failFlights;
+        int commits;
+        int rollbacks;
+        private int nextId = 100;
+
+        Connection connection() {
+            return proxy(Connection.class, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return statement((String) args[0]);
+                case "commit":
+                    commits++;
+                    return null;
+                case "rollback":
+                    rollbacks++;
+                    return null;
+                default:
+                    return defaultValue(method);
+            }
+        }
+
+        private PreparedStatement statement(String sql) {
+            return proxy(PreparedStatement.class, (p, method, args) -> switch (method.getName()) {
+                case "executeQuery" -> resultSet(sql.startsWith("SELECT") ? null : nextId++);
+                case "executeBatch" -> {
+                    if (failFlights) throw new SQLException("date/time field value out of range", "22008");
+                    yield new int[0];
+                }
+                default -> defaultValue(method);
+            });
+        }
+
+        private static ResultSet resultSet(Integer id) {
+            boolean[] read = {false};
+            return proxy(ResultSet.class, (p, method, args) -> switch (method.getName()) {
+                case "next" -> {
+                    boolean next = id != null && !read[0];
+                    read[0] = true;
+                    yield next;
+                }
+                case "getInt" -> id;
+                default -> defaultValue(method);
+            });
+        }
+
+        private static Object defaultValue(Method method) {
+            Class<?> type = method.getReturnType();
+            if (type == boolean.class) return false;
+            if (type == int.class) return 0;
+            if (type == long.class) return 0L;
+            return null;
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(DimensionCacheTest.class.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.server;
+
+import org.example.model.Flight;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Фильтр с подмененной проверкой по БД: "таблица flights" - множество table
+class FlightDedupTest {
+    private final Set<List<String>> table = new HashSet<>();
+    private final List<Flight> looked = new ArrayList<>();
+
+    private final FlightDedup.Lookup lookup = suspects -> {
+        looked.addAll(suspects);
+        Set<List<String>> found = new HashSet<>();
+        for (Flight f : suspects) {
+            if (table.contains(FlightDedup.keyOf(f))) found.add(FlightDedup.keyOf(f));
+        }
+        return found;
+    };
+
+    @Test
+    void dropsRepeatsInsideBatchWithoutDatabase() {
+        FlightDedup.Checker checker = new FlightDedup(1, 7).checker(lookup);
+
+        List<Flight> fresh = checker.filter(List.of(flight("SU-1", "P1"), flight("SU-2", "P2"), flight("SU-1", "P1")));
+
+        assertEquals(List.of(flight("SU-1", "P1"), flight("SU-2", "P2")), fresh);
+        // Фильтр пуст - ни один рейс не похож на сохраненный
+        assertTrue(looked.isEmpty());
+    }
+
+    @Test
+    void dropsFlightsCommittedInEarlierBatch() {
+        FlightDedup.Checker checker = new FlightDedup(1, 7).checker(lookup);
+        List<Flight> first = List.of(flight("SU-1", "P1"), flight("SU-2", "P2"));
+        checker.committed(checker.filter(first));
+        store(first);
+
+        List<Flight> fresh = checker.filter(List.of(flight("SU-2", "P2"), flight("SU-3", "P3")));
+
+        assertEquals(List.of(flight("SU-3", "P3")), fresh);
+        assertEquals(List.of(flight("SU-2", "P2")), looked);
+    }
+
+    @Test
+    void letsThroughFalsePositives() {
+        FlightDedup.Checker checker = new FlightDedup(1, 7).checker(lookup);
+        // Ключ в фильтре, а в таблице рейса нет (ложное срабатывание): рейс пишется
+        checker.committed(List.of(flight("SU-1", "P1")));
+
+        assertEquals(List.of(flight("SU-1", "P1")), checker.filter(List.of(flight("SU-1", "P1"))));
+        assertEquals(1, looked.size());
+    }
+
+    @Test
+    void failedLookupLetsSuspectsThrough() {
+        FlightDedup.Checker checker = new FlightDedup(1, 7).checker(suspects -> {
+            throw new SQLException("date/time field value out of range");
+        });
+        checker.committed(List.of(flight("SU-1", "P1")));
+
+        List<Flight> fresh = checker.filter(List.of(flight("SU-1", "P1"), flight("SU-2", "P2"), flight("SU-2", "P2")));
+
+        assertEquals(Set.of(flight("SU-1", "P1"), flight("SU-2", "P2")), new HashSet<>(fresh));
+        assertEquals(2, fresh.size());
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegativesAndFewFalsePositives() {
+        FlightDedup dedup = new FlightDedup(1, 7);
+        FlightDedup.Checker checker = dedup.checker(lookup);
+        List<Flight> committed = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            committed.add(flight("SU-" + i, "P" + i));
+        }
+        checker.committed(committed);
+
+        // Каждый сохраненный рейс - кандидат на проверку
+        checker.filter(committed);
+        assertEquals(10_000, looked.size());
+
+        // Новые рейсы почти никогда не доходят до БД: 1 МБ на 10 000 ключей
+        looked.clear();
+        List<Flight> unseen = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            unseen.add(flight("SU-" + i, "X" + i));
+        }
+        assertEquals(10_000, checker.filter(unseen).size());
+        assertTrue(looked.size() < 10, "ложных срабатываний: " + looked.size());
+        assertTrue(dedup.fill() > 0);
+    }
+
+    private void store(List<Flight> flights) {
+        for (Flight f : flights) {
+            table.add(FlightDedup.keyOf(f));
+        }
+    }
+
+    private static Flight flight(String flightNo, String passportNo) {
+        return new Flight(flightNo, "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER",
+                "Passenger " + passportNo, passportNo, "2024-05-01");
+    }
+}
@@ -0,0 +1,206 @@
+package org.example.server;
+
+import com.google.protobuf.ByteString;
+import com.typesafe.config.ConfigFactory;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+import org.example.AppConfig;
+import org.example.crypto.CryptoUtils;
+import org.example.grpc.EncryptedPacket;
+import org.example.grpc.Empty;
+import org.example.grpc.FlightServiceGrpc;
+import org.example.grpc.PublicKeyResponse;
+import org.example.grpc.SessionKeyRequest;
+import org.example.grpc.StatusResponse;
+import org.example.model.Flight;
+import org.example.protocol.FlightProto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// gRPC-сервер на свободном порту localhost; писатель вместо БД складывает рейсы в список
+class FlightGrpcServiceTest {
+    private final List<Flight> committed = Collections.synchronizedList(new ArrayList<>());
+
+    private WriterStage writers;
+    private IngestCheckpoints checkpoints;
+    private Server server;
+    private ManagedChannel channel;
+    private FlightServiceGrpc.FlightServiceBlockingStub blocking;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AppConfig cfg = new AppConfig(ConfigFactory.parseMap(Map.of(
+                "app.grpcServer.inboundWindow", 2,
+                "app.grpcServer.decryptThreads", 2)).withFallback(ConfigFactory.load()));
+        writers = new WriterStage(List.of(committed::addAll), 16, 5, 64);
+        checkpoints = new IngestCheckpoints(null, 3_600_000, 3, null);
+        FlightGrpcService service = new FlightGrpcService(writers, checkpoints, new ServerKeyManager(60),
+                new SessionTickets(30, 100), cfg);
+        server = ServerBuilder.forPort(0)
+                .addService(ServerInterceptors.intercept(service, service.sessionInterceptor()))
+                .build()
+                .start();
+        channel = ManagedChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build();
+        blocking = FlightServiceGrpc.newBlockingStub(channel);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        writers.close();
+        checkpoints.close();
+    }
+
+    @Test
+    void streamedBatchesReachWriters() throws Exception {
+        SecretKey key = CryptoUtils.generateAESKey();
+        StatusResponse session = handshake(key);
+        assertTrue(session.getSuccess());
+        assertEquals("NONE", session.getCompression());
+
+        // Пакетов больше окна: сервер дозапрашивает их по одному по мере расшифровки
+        List<EncryptedPacket> packets = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            packets.add(packet(key, flights(i * 10 + 1, i * 10 + 10)));
+        }
+        StatusResponse result = stream(session.getSessionId(), packets);
+
+        assertTrue(result.getSuccess(), result.getMessage());
+        assertEquals("Imported 200 flights", result.getMessage());
+        awaitCommitted(200);
+        Set<Long> seqs = new HashSet<>();
+        for (Flight f : committed) seqs.add(f.seq());
+        assertEquals(200, seqs.size());
+    }
+
+    @Test
+    void sessionIsResumedByTicket() throws Exception {
+        SecretKey key = CryptoUtils.generateAESKey();
+        String ticket = handshake(key).getSessionId();
+
+        StatusResponse resumed = blocking.setSessionKey(SessionKeyRequest.newBuilder().setSessionId(ticket).build());
+        assertTrue(resumed.getSuccess());
+        assertEquals(ticket, resumed.getSessionId());
+
+        // Прежний ключ сессии действует в новом вызове
+        assertTrue(stream(ticket, List.of(packet(key, flights(1, 3)))).getSuccess());
+        awaitCommitted(3);
+    }
+
+    @Test
+    void unknownTicketIsRejected() throws Exception {
+        assertFalse(blocking.setSessionKey(SessionKeyRequest.newBuilder().setSessionId("нет-такого").build()).getSuccess());
+
+        StatusResponse result = stream("нет-такого", List.of(packet(CryptoUtils.generateAESKey(), flights(1, 1))));
+        assertFalse(result.getSuccess());
+        assertEquals("No Session Key", result.getMessage());
+    }
+
+    @Test
+    void packetUnderAnotherKeyFailsTheCall() throws Exception {
+        String ticket = handshake(CryptoUtils.generateAESKey()).getSessionId();
+
+        StatusResponse result = stream(ticket, List.of(packet(CryptoUtils.generateAESKey(), flights(1, 3))));
+
+        assertFalse(result.getSuccess());
+        assertNotEquals("No Session Key", result.getMessage());
+        assertTrue(committed.isEmpty());
+    }
+
+    // Как ClientAppGRPC: публичный ключ сервера, обертка ключа AES, билет сессии
+    private StatusResponse handshake(SecretKey key) throws Exception {
+        PublicKeyResponse pk = blocking.getPublicKey(Empty.getDefaultInstance());
+        PublicKey serverPublic = KeyFactory.getInstance("RSA")
+                .generatePublic(new X509EncodedKeySpec(pk.getPemKey().toByteArray()));
+        return blocking.setSessionKey(SessionKeyRequest.newBuilder()
+                .setWrappedKey(ByteString.copyFrom(CryptoUtils.wrapAESKey(key, serverPublic)))
+                .setKeyId(pk.getKeyId())
+                .setCompression("NONE")
+                .build());
+    }
+
+    // Один вызов StreamFlights; возвращает итоговый ответ сервера
+    private StatusResponse stream(String ticket, List<EncryptedPacket> packets) throws Exception {
+        Metadata headers = new Metadata();
+        headers.put(FlightGrpcService.SESSION_HEADER, ticket);
+        FlightServiceGrpc.FlightServiceStub stub = FlightServiceGrpc.newStub(channel)
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(headers));
+
+        CompletableFuture<StatusResponse> result = new CompletableFuture<>();
+        StreamObserver<EncryptedPacket> requests = stub.streamFlights(new StreamObserver<>() {
+            private StatusResponse last;
+
+            @Override
+            public void onNext(StatusResponse value) {
+                last = value;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                result.complete(last);
+            }
+        });
+        for (EncryptedPacket packet : packets) {
+            requests.onNext(packet);
+        }
+        requests.onCompleted();
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private static EncryptedPacket packet(SecretKey key, List<Flight> flights) throws Exception {
+        byte[] iv = CryptoUtils.generateIV(CryptoUtils.Mode.GCM);
+        return EncryptedPacket.newBuilder()
+                .setIv(ByteString.copyFrom(iv))
+                .setEncryptedData(ByteString.copyFrom(CryptoUtils.encryptData(FlightProto.encodeBatch(flights), key, iv)))
+                .setBatch(true)
+                .build();
+    }
+
+    private void awaitCommitted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (committed.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, committed.size());
+    }
+
+    private static List<Flight> flights(long from, long to) {
+        List<Flight> flights = new ArrayList<>();
+        for (long seq = from; seq <= to; seq++) {
+            flights.add(new Flight("SU-" + seq, "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER",
+                    "Passenger " + seq, "P" + seq, "2024-05-01", seq));
+        }
+        return flights;
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.server;
+
+import org.example.model.Flight;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Журнал на крошечных сегментах во временном каталоге; вместо писателей - sink в памяти
+class FlightJournalTest {
+    private static final int SEGMENT = 512;
+
+    @TempDir
+    Path dir;
+
+    private final List<FlightJournal> opened = new ArrayList<>();
+    private final List<Flight> written = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (FlightJournal journal : opened) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void segmentsRollOverAndAreTruncatedAfterCommit() throws Exception {
+        FlightJournal journal = open(2, (flights, callback) -> {
+            written.addAll(flights);
+            callback.onCommit(List.of());
+        });
+
+        // Больше записей, чем помещается в два сегмента: append ждет очистки, иначе тест зависнет
+        for (int i = 0; i < 40; i++) {
+            append(journal, List.of(flight(i, "P" + i)));
+        }
+
+        await(() -> written.size() == 40);
+        assertEquals(flight(0, "P0"), written.get(0));
+        assertEquals(flight(39, "P39"), written.get(39));
+        await(() -> segments() == 1);
+        // Метка - конец последней записи, она уже в головном сегменте
+        long mark = committedMark();
+        assertTrue(mark > headBase() && mark <= headBase() + SEGMENT, "метка " + mark);
+    }
+
+    @Test
+    void uncommittedRecordsAreReplayedAfterRestart() throws Exception {
+        // Писатели "упали": ни одна запись не подтверждена
+        FlightJournal crashed = open(16, (flights, callback) -> {
+        });
+        for (int i = 0; i < 10; i++) {
+            append(crashed, List.of(flight(i, "P" + i), flight(i, "Q" + i)));
+        }
+        crashed.close();
+        assertEquals(0, committedMark());
+        assertTrue(segments() > 1);
+
+        open(16, (flights, callback) -> {
+            written.addAll(flights);
+            callback.onCommit(List.of());
+        });
+
+        await(() -> written.size() == 20);
+        assertEquals(flight(0, "P0"), written.get(0));
+        assertEquals(flight(9, "Q9"), written.get(19));
+        await(() -> segments() == 1);
+    }
+
+    @Test
+    void badRecordIsDeadLetteredAfterRetries() throws Exception {
+        FlightJournal crashed = open(16, (flights, callback) -> {
+        });
+        Flight bad = new Flight("SU-1", "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER",
+                "Tab\tPassenger", "P\\1", "2024-13-45", 1);
+        append(crashed, List.of(flight(0, "P0")));
+        append(crashed, List.of(flight(1, "P1"), bad, flight(2, "P2")));
+        append(crashed, List.of(flight(3, "P3")));
+        crashed.close();
+
+        // Повтор после рестарта: БД отклоняет только плохую строку
+        AtomicInteger badAttempts = new AtomicInteger();
+        open(16, (flights, callback) -> {
+            List<Flight> rejected = new ArrayList<>();
+            for (Flight f : flights) {
+                if (f.equals(bad)) {
+                    badAttempts.incrementAndGet();
+                    rejected.add(f);
+                } else {
+                    written.add(f);
+                }
+            }
+            callback.onCommit(rejected);
+        });
+
+        await(() -> segments() == 1);
+        // Первая попытка и maxRetries повторов
+        assertEquals(1 + 2, badAttempts.get());
+        assertEquals(4, written.size());
+
+        List<String> lines = Files.readAllLines(dir.resolve("dead-letter.tsv"), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        String[] fields = lines.get(0).split("\t", -1);
+        assertEquals(12, fields.length);
+        assertEquals("Tab\\tPassenger", fields[8]);
+        assertEquals("P\\\\1", fields[9]);
+        assertEquals("2024-13-45", fields[10]);
+        assertEquals("1", fields[11]);
+
+        // Метка дошла до нового головного сегмента: старые записи не загрузятся повторно
+        assertEquals(headBase(), committedMark());
+    }
+
+    private FlightJournal open(int maxSegments, FlightJournal.Sink sink) throws IOException {
+        FlightJournal journal = new FlightJournal(dir, SEGMENT, maxSegments, 0, 2, 1, sink);
+        opened.add(journal);
+        return journal;
+    }
+
+    // Дописывает пачку и ждет ее fsync
+    private static void append(FlightJournal journal, List<Flight> flights) throws InterruptedException {
+        CountDownLatch synced = new CountDownLatch(1);
+        journal.append(flights, success -> {
+            assertTrue(success);
+            synced.countDown();
+        });
+        assertTrue(synced.await(10, TimeUnit.SECONDS));
+    }
+
+    private long segments() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".wal")).count();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Имя сегмента - смещение его начала
+    private long headBase() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(".wal"))
+                    .mapToLong(n -> Long.parseLong(n.substring(0, n.length() - 4))).max().orElseThrow();
+        }
+    }
+
+    private long committedMark() throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(dir.resolve("committed.mark"))).getLong();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 10 с");
+            Thread.sleep(10);
+        }
+    }
+
+    private static Flight flight(int i, String passportNo) {
+        return new Flight("SU-" + i, "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER",
+                "Passenger " + passportNo, passportNo, "2024-05-01", i);
+    }
+}
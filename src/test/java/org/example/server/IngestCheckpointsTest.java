@@ -0,0 +1,211 @@
+package org.example.server;
+
+import org.example.model.Flight;
+import org.example.model.FlightBatch;
+import org.example.model.StreamPosition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Позиции потока в памяти (без БД): сброс подтверждений вызывается вручную через flush()
+class IngestCheckpointsTest {
+    private static final String EXPORT = "export-1";
+
+    @TempDir
+    Path dir;
+
+    private IngestCheckpoints checkpoints;
+    private IngestCheckpoints.Link link;
+    private final List<Long> acks = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        checkpoints = new IngestCheckpoints(null, 3_600_000, 2, dir.resolve("dead-letter.tsv"));
+        link = checkpoints.link((stream, committedSeq) -> acks.add(committedSeq));
+    }
+
+    @AfterEach
+    void tearDown() {
+        checkpoints.close();
+    }
+
+    @Test
+    void committedAdvancesOnlyOverContiguousIntervals() throws Exception {
+        IngestCheckpoints.Admission first = link.admit(batch(0, 1, 3));
+        IngestCheckpoints.Admission second = link.admit(batch(3, 4, 6));
+        IngestCheckpoints.Admission third = link.admit(batch(6, 7, 9));
+
+        // Вторая пачка закоммичена раньше первой: позиция не двигается через незакоммиченный интервал
+        second.callback().onCommit(List.of());
+        checkpoints.flush();
+        assertEquals(List.of(0L), acks);
+
+        // Первая закрывает дыру: позиция сразу доходит до конца второй
+        first.callback().onCommit(List.of());
+        checkpoints.flush();
+        assertEquals(List.of(0L, 6L), acks);
+
+        third.callback().onCommit(List.of());
+        checkpoints.flush();
+        assertEquals(List.of(0L, 6L, 9L), acks);
+    }
+
+    @Test
+    void failedBatchIsForgottenAndAcceptedAgain() throws Exception {
+        IngestCheckpoints.Admission first = link.admit(batch(0, 1, 3));
+        IngestCheckpoints.Admission second = link.admit(batch(3, 4, 6));
+
+        fail(first);
+        second.callback().onCommit(List.of());
+        checkpoints.flush();
+        // Позиция осталась перед упавшей пачкой
+        assertEquals(List.of(0L), acks);
+
+        // Повтор упавшей пачки принимается целиком и после коммита сдвигает позицию за обе пачки
+        IngestCheckpoints.Admission retry = link.admit(batch(0, 1, 3));
+        assertEquals(3, retry.flights().size());
+        retry.callback().onCommit(List.of());
+        checkpoints.flush();
+        assertEquals(List.of(0L, 6L), acks);
+    }
+
+    @Test
+    void committedRecordsAreDroppedOnResend() throws Exception {
+        link.admit(batch(0, 1, 3)).callback().onCommit(List.of());
+
+        // Пачка с частью уже сохраненных записей: до писателей доходят только новые
+        IngestCheckpoints.Admission overlap = link.admit(batch(2, 3, 5));
+        assertEquals(List.of(4L, 5L), seqs(overlap.flights()));
+
+        // Полный повтор подтверждается сразу, без записи
+        IngestCheckpoints.Admission resend = link.admit(batch(0, 1, 3));
+        assertTrue(resend.flights().isEmpty());
+        checkpoints.flush();
+        assertEquals(List.of(3L), acks);
+    }
+
+    @Test
+    void recordsInFlightAreNotAdmittedTwice() throws Exception {
+        IngestCheckpoints.Admission first = link.admit(batch(0, 1, 3));
+        IngestCheckpoints.Admission resend = link.admit(batch(0, 1, 3));
+        assertEquals(3, first.flights().size());
+        assertTrue(resend.flights().isEmpty());
+
+        // Повтор не сдвигает позицию, пока исходная пачка не закоммичена
+        checkpoints.flush();
+        assertEquals(List.of(0L), acks);
+
+        first.callback().onCommit(List.of());
+        checkpoints.flush();
+        assertEquals(List.of(0L, 3L), acks);
+        assertTrue(link.awaitCommitted(1000));
+    }
+
+    @Test
+    void failedOriginalRollsBackResentOverlap() throws Exception {
+        IngestCheckpoints.Admission first = link.admit(batch(0, 1, 3));
+        // Повтор после переподключения: записи 1..3 еще пишутся, новые только 4..5
+        IngestCheckpoints.Admission resend = link.admit(batch(0, 1, 5));
+        assertEquals(List.of(4L, 5L), seqs(resend.flights()));
+
+        resend.callback().onCommit(List.of());
+        fail(first);
+        checkpoints.flush();
+        // Рейсы 1..3 не записаны: позиция не проходит через них
+        assertEquals(List.of(0L), acks);
+
+        // 4..5 уже в БД: повтор пишет только рейсы упавшей пачки
+        IngestCheckpoints.Admission retry = link.admit(batch(0, 1, 5));
+        assertEquals(List.of(1L, 2L, 3L), seqs(retry.flights()));
+        retry.callback().onCommit(List.of());
+        checkpoints.flush();
+        assertEquals(List.of(0L, 5L), acks);
+    }
+
+    @Test
+    void partiallyRejectedBatchKeepsWrittenRows() throws Exception {
+        IngestCheckpoints.Admission first = link.admit(batch(0, 1, 3));
+        first.callback().onCommit(List.of(first.flights().get(1)));
+        checkpoints.flush();
+        assertTrue(acks.isEmpty());
+
+        // Повтор пишет только отклоненный рейс
+        IngestCheckpoints.Admission retry = link.admit(batch(0, 1, 3));
+        assertEquals(List.of(2L), seqs(retry.flights()));
+        retry.callback().onCommit(List.of());
+        checkpoints.flush();
+        assertEquals(List.of(3L), acks);
+        assertFalse(Files.exists(dir.resolve("dead-letter.tsv")));
+    }
+
+    @Test
+    void permanentlyRejectedRowIsDeadLetteredAndPositionMoves() throws Exception {
+        IngestCheckpoints.Admission next = link.admit(batch(3, 4, 6));
+        next.callback().onCommit(List.of());
+
+        // maxRetries = 2: после первой попытки и первого повтора позиция стоит, второй повтор ее отпускает
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            IngestCheckpoints.Admission admission = link.admit(batch(0, 1, 3));
+            assertEquals(attempt == 1 ? List.of(1L, 2L, 3L) : List.of(2L), seqs(admission.flights()));
+            admission.callback().onCommit(List.of(admission.flights().get(attempt == 1 ? 1 : 0)));
+            checkpoints.flush();
+            assertEquals(List.of(0L), acks);
+        }
+        IngestCheckpoints.Admission last = link.admit(batch(0, 1, 3));
+        assertEquals(List.of(2L), seqs(last.flights()));
+        last.callback().onCommit(last.flights());
+
+        checkpoints.flush();
+        assertEquals(List.of(0L, 6L), acks);
+        List<String> lines = Files.readAllLines(dir.resolve("dead-letter.tsv"), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).startsWith(EXPORT + "\t0\tSU-2\t"), lines.get(0));
+        assertTrue(lines.get(0).endsWith("\t2"), lines.get(0));
+        assertTrue(link.admit(batch(0, 1, 3)).flights().isEmpty());
+    }
+
+    @Test
+    void rowsOfForgottenOverlapAreNotWrittenAgain() throws Exception {
+        IngestCheckpoints.Admission first = link.admit(batch(0, 1, 3));
+        IngestCheckpoints.Admission resend = link.admit(batch(0, 1, 5));
+        // Повтор еще пишется, когда исходная пачка падает
+        fail(first);
+        resend.callback().onCommit(List.of(resend.flights().get(1)));
+
+        // 4 записан повтором, 5 отклонен
+        IngestCheckpoints.Admission retry = link.admit(batch(0, 1, 5));
+        assertEquals(List.of(1L, 2L, 3L, 5L), seqs(retry.flights()));
+        retry.callback().onCommit(List.of());
+        checkpoints.flush();
+        assertEquals(List.of(5L), acks);
+    }
+
+    private static void fail(IngestCheckpoints.Admission admission) {
+        admission.callback().onCommit(admission.flights());
+    }
+
+    // Пачка потока 0 с рейсами seq from..to после prevSeq
+    private static FlightBatch batch(long prevSeq, long from, long to) {
+        List<Flight> flights = new ArrayList<>();
+        for (long seq = from; seq <= to; seq++) {
+            flights.add(new Flight("SU-" + seq, "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER",
+                    "Passenger " + seq, "P" + seq, "2024-05-01", seq));
+        }
+        return new FlightBatch(flights, new StreamPosition(EXPORT, 0, 0, prevSeq));
+    }
+
+    private static List<Long> seqs(List<Flight> flights) {
+        return flights.stream().map(Flight::seq).toList();
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.server;
+
+import org.example.model.Flight;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Построчный откат пачки без БД: "транзакция" отклоняет рейсы с некорректной датой
+class PostgresServiceTest {
+    private final List<List<Flight>> transactions = new ArrayList<>();
+    private final List<Flight> committed = new ArrayList<>();
+
+    private final PostgresService.Transaction tx = batch -> {
+        transactions.add(batch);
+        for (Flight f : batch) {
+            if (f.flightDate().startsWith("2024-13")) {
+                throw new SQLException("date/time field value out of range", "22008");
+            }
+        }
+        committed.addAll(batch);
+    };
+
+    @Test
+    void validBatchIsOneTransaction() throws SQLException {
+        List<Flight> batch = List.of(flight(1, "2024-05-01"), flight(2, "2024-05-02"));
+
+        PostgresService.saveIsolated(batch, tx);
+
+        assertEquals(List.of(batch), transactions);
+        assertEquals(batch, committed);
+    }
+
+    @Test
+    void rolledBackBatchKeepsValidRows() {
+        Flight bad = flight(2, "2024-13-45");
+        List<Flight> batch = List.of(flight(1, "2024-05-01"), bad, flight(3, "2024-05-03"));
+
+        RejectedRowsException e = assertThrows(RejectedRowsException.class, () -> PostgresService.saveIsolated(batch, tx));
+
+        assertEquals(List.of(bad), e.rejected());
+        assertEquals("22008", e.getSQLState());
+        assertEquals(List.of(flight(1, "2024-05-01"), flight(3, "2024-05-03")), committed);
+        // Пачка целиком и затем по одной транзакции на строку
+        assertEquals(1 + 3, transactions.size());
+    }
+
+    @Test
+    void singleRowFailureIsRethrownAsIs() {
+        List<Flight> batch = List.of(flight(1, "2024-13-45"));
+
+        SQLException e = assertThrows(SQLException.class, () -> PostgresService.saveIsolated(batch, tx));
+
+        assertFalse(e instanceof RejectedRowsException);
+        assertEquals(1, transactions.size());
+    }
+
+    @Test
+    void lostConnectionIsNotRetriedRowByRow() {
+        SQLException lost = new SQLException("connection reset", "08006");
+        List<Flight> batch = List.of(flight(1, "2024-05-01"), flight(2, "2024-05-02"));
+
+        SQLException e = assertThrows(SQLException.class, () -> PostgresService.saveIsolated(batch, b -> {
+            transactions.add(b);
+            throw lost;
+        }));
+
+        assertSame(lost, e);
+        assertEquals(1, transactions.size());
+    }
+
+    @Test
+    void connectionLostMidwayRejectsRemainingRows() {
+        List<Flight> batch = List.of(flight(1, "2024-05-01"), flight(2, "2024-13-45"),
+                flight(3, "2024-05-03"), flight(4, "2024-05-04"));
+
+        RejectedRowsException e = assertThrows(RejectedRowsException.class, () -> PostgresService.saveIsolated(batch, b -> {
+            if (b.size() == 1 && b.get(0).seq() == 3) throw new SQLException("connection reset", "08006");
+            tx.save(b);
+        }));
+
+        // Первая строка закоммичена до обрыва, вторая отклонена, третья оборвала соединение, четвертая не пробовалась
+        assertEquals(List.of(flight(1, "2024-05-01")), committed);
+        assertEquals(List.of(flight(2, "2024-13-45"), flight(3, "2024-05-03"), flight(4, "2024-05-04")), e.rejected());
+        assertEquals("22008", e.getSQLState());
+        assertEquals(1 + 2, transactions.size());
+    }
+
+    @Test
+    void connectionLostIsSqlStateClass08() {
+        assertTrue(FlightWriter.connectionLost(new SQLException("reset", "08006")));
+        assertTrue(FlightWriter.connectionLost(new SQLException("refused", "08001")));
+        assertFalse(FlightWriter.connectionLost(new SQLException("out of range", "22008")));
+        assertFalse(FlightWriter.connectionLost(new SQLException("no state")));
+    }
+
+    private static Flight flight(long seq, String date) {
+        return new Flight("SU-" + seq, "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER",
+                "Passenger " + seq, "P" + seq, date, seq);
+    }
+}
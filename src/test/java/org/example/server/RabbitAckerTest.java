@@ -0,0 +1,125 @@
+package org.example.server;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Канал-заглушка записывает ack/nack/publish в порядке вызова
+class RabbitAckerTest {
+    private static final AMQP.BasicProperties PROPS = new AMQP.BasicProperties();
+
+    private final List<String> calls = new ArrayList<>();
+    private boolean failPublish;
+
+    @Test
+    void ackCoversOnlyCommittedPrefix() {
+        RabbitAcker acker = acker(5);
+        acker.track(1);
+        acker.track(2);
+        acker.track(3);
+
+        // Вторая закоммичена раньше первой: ack ждет первую
+        acker.committed(2, "m2");
+        assertEquals(List.of(), calls);
+
+        acker.committed(1, "m1");
+        assertEquals(List.of("ack 2 multiple"), calls);
+
+        acker.committed(3, "m3");
+        assertEquals(List.of("ack 2 multiple", "ack 3 multiple"), calls);
+    }
+
+    @Test
+    void failedMessageIsRequeuedThenDeadLettered() {
+        RabbitAcker acker = acker(3);
+
+        // После requeue у той же доставки новый тег, попытки считаются по id сообщения
+        for (long tag = 1; tag <= 3; tag++) {
+            acker.track(tag);
+            acker.failed(tag, "m", PROPS, new byte[]{1});
+        }
+
+        assertEquals(List.of("nack 1 requeue", "nack 2 requeue", "publish flights.dead", "ack 3 multiple"), calls);
+    }
+
+    @Test
+    void nackedTagDoesNotHoldBackAck() {
+        RabbitAcker acker = acker(5);
+        acker.track(1);
+        acker.track(2);
+
+        acker.rejected(1, true);
+        acker.committed(2, "m2");
+
+        assertEquals(List.of("nack 1 requeue", "ack 2 multiple"), calls);
+    }
+
+    @Test
+    void deadLetterPublishFailureRequeues() {
+        RabbitAcker acker = acker(1);
+        failPublish = true;
+        acker.track(1);
+
+        acker.failed(1, "m", PROPS, new byte[]{1});
+
+        // Не переложили - сообщение остается в исходной очереди
+        assertEquals(List.of("nack 1 requeue"), calls);
+    }
+
+    @Test
+    void commitResetsAttempts() {
+        RabbitAcker acker = acker(2);
+        acker.track(1);
+        acker.failed(1, "m", PROPS, new byte[]{1});
+        acker.track(2);
+        acker.committed(2, "m");
+        acker.track(3);
+
+        acker.failed(3, "m", PROPS, new byte[]{1});
+
+        assertEquals(List.of("nack 1 requeue", "ack 2 multiple", "nack 3 requeue"), calls);
+    }
+
+    @Test
+    void oldestFailuresAreForgotten() {
+        RabbitAcker acker = acker(2);
+        long tag = 0;
+        acker.track(++tag);
+        acker.failed(tag, "first", PROPS, new byte[]{1});
+        // Счетчики попыток ограничены 10 000 сообщений: самые старые вытесняются
+        for (int i = 0; i < 10_000; i++) {
+            acker.track(++tag);
+            acker.failed(tag, "m" + i, PROPS, new byte[]{1});
+        }
+        calls.clear();
+
+        acker.track(++tag);
+        acker.failed(tag, "first", PROPS, new byte[]{1});
+
+        assertEquals(List.of("nack " + tag + " requeue"), calls);
+    }
+
+    private RabbitAcker acker(int maxDeliveries) {
+        Channel channel = (Channel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Channel.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "basicAck" -> calls.add("ack " + args[0] + ((boolean) args[1] ? " multiple" : ""));
+                        case "basicNack" -> calls.add("nack " + args[0] + ((boolean) args[2] ? " requeue" : ""));
+                        case "basicPublish" -> {
+                            if (failPublish) throw new IOException("broker unavailable");
+                            calls.add("publish " + args[1]);
+                        }
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }
+                    return null;
+                });
+        return new RabbitAcker(channel, "flights.dead", maxDeliveries);
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.server;
+
+import org.example.crypto.CryptoUtils;
+import org.example.protocol.Compression;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RabbitSessionStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void sessionSurvivesRestart() throws Exception {
+        SessionTickets.Session session = session();
+        new RabbitSessionStore(dir, "", 168).put("ticket-1", session);
+
+        RabbitSessionStore restarted = new RabbitSessionStore(dir, "", 168);
+
+        SessionTickets.Session loaded = restarted.get("ticket-1");
+        assertArrayEquals(session.key().getEncoded(), loaded.key().getEncoded());
+        assertEquals(Compression.DEFLATE, loaded.compression());
+        assertNull(restarted.get("ticket-2"));
+    }
+
+    @Test
+    void keysAreEncryptedAndOwnerOnly() throws Exception {
+        SessionTickets.Session session = session();
+        new RabbitSessionStore(dir, "", 168).put("ticket-1", session);
+
+        String stored = Files.readString(dir.resolve("sessions.properties"));
+        assertFalse(stored.contains(Base64.getEncoder().encodeToString(session.key().getEncoded())));
+        if (dir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.resolve("sessions.properties"))));
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.resolve("secret.key"))));
+        }
+    }
+
+    @Test
+    void expiredSessionIsDropped() throws Exception {
+        new RabbitSessionStore(dir, "", 168).put("old", session());
+        // Запись выдана трое суток назад
+        Path file = dir.resolve("sessions.properties");
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(file)) {
+            props.load(in);
+        }
+        String line = props.getProperty("old");
+        long issuedAt = System.currentTimeMillis() - 72 * 3_600_000L;
+        props.setProperty("old", issuedAt + line.substring(line.indexOf(' ')));
+        try (Writer out = Files.newBufferedWriter(file)) {
+            props.store(out, null);
+        }
+
+        assertNull(new RabbitSessionStore(dir, "", 48).get("old"));
+        assertEquals(1, new RabbitSessionStore(dir, "", 168).size());
+    }
+
+    @Test
+    void wrongSecretSkipsEntries() throws Exception {
+        String secret = Base64.getEncoder().encodeToString(CryptoUtils.generateAESKey().getEncoded());
+        new RabbitSessionStore(dir, secret, 168).put("ticket-1", session());
+
+        String other = Base64.getEncoder().encodeToString(CryptoUtils.generateAESKey().getEncoded());
+        assertNull(new RabbitSessionStore(dir, other, 168).get("ticket-1"));
+        assertEquals(1, new RabbitSessionStore(dir, secret, 168).size());
+    }
+
+    @Test
+    void memoryOnlyStoreKeepsSessions() throws Exception {
+        RabbitSessionStore store = new RabbitSessionStore(null, "", 168);
+        SessionTickets.Session session = session();
+
+        store.put("ticket-1", session);
+
+        assertEquals(session, store.get("ticket-1"));
+    }
+
+    private static SessionTickets.Session session() throws Exception {
+        return new SessionTickets.Session(CryptoUtils.generateAESKey(), Compression.DEFLATE);
+    }
+}
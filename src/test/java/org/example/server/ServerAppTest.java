@@ -0,0 +1,120 @@
+package org.example.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Цикл accept сокет-сервера: сессия живет, пока клиент не закроет соединение
+class ServerAppTest {
+    private final List<Boolean> virtual = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger active = new AtomicInteger();
+    private final List<Socket> clients = new ArrayList<>();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (Socket client : clients) client.close();
+        if (serverSocket != null) serverSocket.close();
+        if (acceptor != null) acceptor.join(5_000);
+    }
+
+    @Test
+    void sessionsAboveCapWaitForAFreeSlot() throws Exception {
+        start(true, 2);
+
+        for (int i = 0; i < 3; i++) connect();
+        await(() -> virtual.size() == 2);
+        Thread.sleep(200);
+        // Третье соединение ждет в backlog, а не обслуживается сверх лимита
+        assertEquals(2, virtual.size());
+        assertEquals(2, active.get());
+
+        clients.get(0).close();
+        await(() -> virtual.size() == 3);
+        await(() -> active.get() == 2);
+        assertEquals(List.of(true, true, true), virtual);
+    }
+
+    @Test
+    void manyIdleSessionsOnVirtualThreads() throws Exception {
+        start(true, 1000);
+
+        for (int i = 0; i < 500; i++) connect();
+        await(() -> active.get() == 500);
+
+        assertFalse(virtual.contains(false));
+        for (Socket client : clients) client.close();
+        await(() -> active.get() == 0);
+    }
+
+    @Test
+    void platformThreadsOnRequest() throws Exception {
+        start(false, 4);
+
+        connect();
+        await(() -> virtual.size() == 1);
+
+        assertEquals(List.of(false), virtual);
+    }
+
+    @Test
+    void closedServerSocketStopsLoop() throws Exception {
+        start(true, 4);
+
+        serverSocket.close();
+        acceptor.join(5_000);
+
+        assertFalse(acceptor.isAlive());
+    }
+
+    private void start(boolean virtualThreads, int maxSessions) throws IOException {
+        serverSocket = new ServerSocket(0, 1000, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(() -> {
+            try {
+                ServerApp.serve(serverSocket, ServerApp.socketThreads(virtualThreads), maxSessions, active, this::handle);
+            } catch (Exception e) {
+                // Сокет закрыт в tearDown
+            }
+        });
+        acceptor.start();
+    }
+
+    // Как handleClient: поток сессии блокируется на чтении, пока клиент не отключится
+    private void handle(Socket socket) {
+        virtual.add(Thread.currentThread().isVirtual());
+        try (socket) {
+            while (socket.getInputStream().read() != -1) {
+                // ждем конца потока
+            }
+        } catch (IOException e) {
+            // соединение оборвано
+        }
+    }
+
+    private void connect() throws IOException {
+        clients.add(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 10 с");
+            Thread.sleep(10);
+        }
+    }
+}
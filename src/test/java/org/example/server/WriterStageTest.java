@@ -0,0 +1,120 @@
+package org.example.server;
+
+import org.example.model.Flight;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Один писатель без БД: пачки копятся до batchSize или 20 мс
+class WriterStageTest {
+    private final List<Flight> committed = Collections.synchronizedList(new ArrayList<>());
+    private WriterStage stage;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (stage != null) stage.close();
+    }
+
+    @Test
+    void throwingWriterDoesNotWedgeStage() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        stage = stage(batch -> {
+            if (calls.incrementAndGet() == 1) throw new IllegalStateException("writer bug");
+            committed.addAll(batch);
+        });
+
+        assertFalse(submit(List.of(flight(1))).get(5, TimeUnit.SECONDS));
+
+        // Писатель жив: очередь (на 4 рейса) разбирается дальше, группы коммитятся
+        List<CompletableFuture<Boolean>> groups = new ArrayList<>();
+        for (int i = 2; i < 50; i++) {
+            groups.add(submit(List.of(flight(i))));
+        }
+        for (CompletableFuture<Boolean> group : groups) {
+            assertTrue(group.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(48, committed.size());
+    }
+
+    @Test
+    void throwingCallbackDoesNotKillWriter() throws Exception {
+        stage = stage(committed::addAll);
+
+        stage.submitAll(List.of(flight(1)), ok -> {
+            throw new IllegalStateException("callback bug");
+        });
+
+        assertTrue(submit(List.of(flight(2))).get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(flight(1), flight(2)), committed);
+    }
+
+    @Test
+    void rejectedRowFailsOnlyItsGroup() throws Exception {
+        Flight bad = flight(2, "2024-13-45");
+        stage = stage(batch -> {
+            List<Flight> rejected = new ArrayList<>();
+            for (Flight f : batch) {
+                if (f.equals(bad)) rejected.add(f);
+                else committed.add(f);
+            }
+            if (!rejected.isEmpty()) throw new RejectedRowsException(rejected, null);
+        });
+
+        CompletableFuture<Boolean> good = submit(List.of(flight(1), flight(3)));
+        CompletableFuture<Boolean> withBad = submit(List.of(bad, flight(4)));
+
+        assertTrue(good.get(5, TimeUnit.SECONDS));
+        assertFalse(withBad.get(5, TimeUnit.SECONDS));
+        assertEquals(3, committed.size());
+    }
+
+    @Test
+    void failedBatchIsBisectedDownToTheBadRow() throws Exception {
+        Flight bad = flight(3, "2024-13-45");
+        List<Integer> attempts = Collections.synchronizedList(new ArrayList<>());
+        // Писатель "все или ничего", как транзакция без построчного отката
+        stage = stage(batch -> {
+            attempts.add(batch.size());
+            if (batch.contains(bad)) throw new SQLException("date/time field value out of range", "22008");
+            committed.addAll(batch);
+        });
+
+        List<Flight> flights = List.of(flight(1), flight(2), bad, flight(4));
+        assertFalse(submit(flights).get(5, TimeUnit.SECONDS));
+
+        assertEquals(3, committed.size());
+        assertFalse(committed.contains(bad));
+        // 4 -> 2 + 2 -> 1 + 1
+        assertEquals(List.of(4, 2, 2, 1, 1), attempts);
+    }
+
+    private WriterStage stage(FlightWriter writer) {
+        return new WriterStage(List.of(writer), 4, 20, 4);
+    }
+
+    private CompletableFuture<Boolean> submit(List<Flight> group) throws InterruptedException {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        stage.submitAll(group, result::complete);
+        return result;
+    }
+
+    private static Flight flight(long seq) {
+        return flight(seq, "2024-05-01");
+    }
+
+    private static Flight flight(long seq, String date) {
+        return new Flight("SU-" + seq, "Aeroflot", "A320", "Moscow", "SVO", "Sochi", "AER",
+                "Passenger " + seq, "P" + seq, date, seq);
+    }
+}